@@ -122,6 +122,99 @@ public class Settings
         }
     }
 
+    /**
+     * How long, in seconds, a remote manifest is considered fresh after it was last checked.
+     *
+     * @return The TTL. {@code 0} to always check.
+     */
+    public static long getManifestTtl() {
+        try {
+            return Long.parseLong(settings.getOrDefault("manifestTtl", "3600"));
+        } catch (NumberFormatException ignored) {
+            return 3600;
+        }
+    }
+
+    /**
+     * If stale manifests which exist on disk should be used immediately, and revalidated in the background.
+     *
+     * @return If stale-while-revalidate is enabled.
+     */
+    public static boolean getManifestStaleWhileRevalidate() {
+        return Boolean.parseBoolean(settings.getOrDefault("manifestStaleWhileRevalidate", "true"));
+    }
+
+    /**
+     * How many Forge installer processors may run at the same time.
+     * <p>
+     * Processors are CPU heavy, so this defaults to a fraction of the available cores.
+     *
+     * @return The processor thread limit.
+     */
+    public static int getForgeProcessorThreads() {
+        int defaultThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        try {
+            return Math.max(1, Integer.parseInt(settings.getOrDefault("forgeProcessorThreads", String.valueOf(defaultThreads))));
+        } catch (NumberFormatException ignored) {
+            return defaultThreads;
+        }
+    }
+
+    /**
+     * If Forge installer processors may run inside the launcher, instead of in a child JVM each.
+     * <p>
+     * Opt-in, processors run this way share the launcher's JVM and run one at a time.
+     *
+     * @return If in-process processors are enabled.
+     */
+    public static boolean getForgeInProcessProcessors() {
+        return Boolean.parseBoolean(settings.getOrDefault("forgeInProcessProcessors", "false"));
+    }
+
+    /**
+     * If large region files are uploaded to cloud saves as deduplicated chunks.
+     * <p>
+     * Chunked files can only be downloaded by launcher versions which understand them.
+     *
+     * @return If chunked uploads are enabled.
+     */
+    public static boolean getCloudSaveChunking() {
+        return Boolean.parseBoolean(settings.getOrDefault("cloudSaveChunking", "false"));
+    }
+
+    /**
+     * If small compressible files are uploaded to cloud saves gzipped.
+     * <p>
+     * Compressed files can only be downloaded by launcher versions which understand them.
+     *
+     * @return If compressed uploads are enabled.
+     */
+    public static boolean getCloudSaveCompression() {
+        return Boolean.parseBoolean(settings.getOrDefault("cloudSaveCompression", "false"));
+    }
+
+    /**
+     * If cloud save instances are watched for changes between syncs, see {@link net.creeperhost.creeperlauncher.instance.cloud.DirtyTracker}.
+     * <p>
+     * Syncs then only look at the files which changed, instead of walking the whole instance.
+     *
+     * @return If change tracking is enabled.
+     */
+    public static boolean getCloudSaveWatch() {
+        return Boolean.parseBoolean(settings.getOrDefault("cloudSaveWatch", "false"));
+    }
+
+    /**
+     * If changed files are uploaded to cloud saves in the background while an instance is running.
+     * <p>
+     * The sync when the instance exits then only has the final changes to upload.
+     *
+     * @return If trickle syncing is enabled.
+     */
+    public static boolean getCloudSaveTrickle() {
+        return Boolean.parseBoolean(settings.getOrDefault("cloudSaveTrickle", "false"));
+    }
+
     public static int getThreadLimit() {
         return Integer.parseInt(Settings.settings.computeIfAbsent("threadLimit", Settings::getDefaultThreadLimit));
     }
@@ -51,6 +51,8 @@ public class WebSocketMessengerHandler {
         register("installedInstances", InstalledInstancesData.class, new InstalledInstancesHandler());
         register("launchInstance", LaunchInstanceData.class, new LaunchInstanceHandler());
         register("instance.kill", KillInstanceData.class, new KillInstanceHandler());
+        register("instance.prewarm", PrewarmInstanceHandler.Data.class, new PrewarmInstanceHandler());
+        register("instance.launchTimelines", InstanceLaunchTimelinesHandler.Data.class, new InstanceLaunchTimelinesHandler());
         register("installInstance", InstallInstanceData.class, new InstallInstanceHandler());
         register("cancelInstallInstance", CancelInstallInstanceData.class, new CancelInstallInstanceHandler());
         register("updateInstance", UpdateInstanceData.class, new UpdateInstanceHandler());
@@ -0,0 +1,26 @@
+package net.creeperhost.creeperlauncher.api.data.instances;
+
+import net.creeperhost.creeperlauncher.api.data.BaseData;
+
+import java.util.UUID;
+
+/**
+ * Sent when a background version poll finds a newer version of an instance's modpack.
+ */
+public class InstanceUpdateAvailableData extends BaseData {
+
+    public final UUID uuid;
+    public final long currentVersionId;
+    public final long latestVersionId;
+    public final String latestVersionName;
+    public final String latestVersionType;
+
+    public InstanceUpdateAvailableData(UUID uuid, long currentVersionId, long latestVersionId, String latestVersionName, String latestVersionType) {
+        type = "instanceUpdateAvailable";
+        this.uuid = uuid;
+        this.currentVersionId = currentVersionId;
+        this.latestVersionId = latestVersionId;
+        this.latestVersionName = latestVersionName;
+        this.latestVersionType = latestVersionType;
+    }
+}
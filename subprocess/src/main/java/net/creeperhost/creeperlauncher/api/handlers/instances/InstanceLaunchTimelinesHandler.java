@@ -0,0 +1,46 @@
+package net.creeperhost.creeperlauncher.api.handlers.instances;
+
+import net.creeperhost.creeperlauncher.Instances;
+import net.creeperhost.creeperlauncher.Settings;
+import net.creeperhost.creeperlauncher.api.data.BaseData;
+import net.creeperhost.creeperlauncher.api.handlers.IMessageHandler;
+import net.creeperhost.creeperlauncher.pack.Instance;
+import net.creeperhost.creeperlauncher.pack.LaunchTimeline;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Returns the recorded launch timelines for an instance, oldest first.
+ */
+public class InstanceLaunchTimelinesHandler implements IMessageHandler<InstanceLaunchTimelinesHandler.Data> {
+
+    @Override
+    public void handle(Data data) {
+        Instance instance = Instances.getInstance(data.uuid);
+        if (instance == null) {
+            Settings.webSocketAPI.sendMessage(new Reply(data, "error", List.of()));
+            return;
+        }
+
+        Settings.webSocketAPI.sendMessage(new Reply(data, "success", LaunchTimeline.load(instance)));
+    }
+
+    public static class Data extends BaseData {
+
+        public UUID uuid;
+    }
+
+    private static class Reply extends BaseData {
+
+        public final String status;
+        public final List<LaunchTimeline> timelines;
+
+        public Reply(Data data, String status, List<LaunchTimeline> timelines) {
+            requestId = data.requestId;
+            type = "instance.launchTimelines.reply";
+            this.status = status;
+            this.timelines = timelines;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package net.creeperhost.creeperlauncher.api.handlers.instances;
+
+import net.creeperhost.creeperlauncher.Instances;
+import net.creeperhost.creeperlauncher.Settings;
+import net.creeperhost.creeperlauncher.api.data.BaseData;
+import net.creeperhost.creeperlauncher.api.handlers.IMessageHandler;
+import net.creeperhost.creeperlauncher.pack.Instance;
+
+import java.util.UUID;
+
+/**
+ * Called by the frontend when an instance is likely to be launched soon, such as
+ * when its page is opened. Prepares the instance in the background so Play is fast.
+ */
+public class PrewarmInstanceHandler implements IMessageHandler<PrewarmInstanceHandler.Data> {
+
+    @Override
+    public void handle(Data data) {
+        Instance instance = Instances.getInstance(data.uuid);
+        if (instance == null) {
+            Settings.webSocketAPI.sendMessage(new Reply(data, "error", "Instance does not exist"));
+            return;
+        }
+
+        if (!instance.prewarm()) {
+            Settings.webSocketAPI.sendMessage(new Reply(data, "skipped", "Instance can not be pre-warmed right now"));
+            return;
+        }
+        Settings.webSocketAPI.sendMessage(new Reply(data, "success", ""));
+    }
+
+    public static class Data extends BaseData {
+
+        public UUID uuid;
+    }
+
+    private static class Reply extends BaseData {
+
+        public final String status;
+        public final String message;
+
+        public Reply(Data data, String status, String message) {
+            requestId = data.requestId;
+            type = "instance.prewarm.reply";
+            this.status = status;
+            this.message = message;
+        }
+    }
+}
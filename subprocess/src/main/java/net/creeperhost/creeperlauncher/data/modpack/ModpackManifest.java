@@ -93,6 +93,7 @@ public class ModpackManifest {
     public String getSynopsis() { return requireNonNull(synopsis); }
     public List<Author> getAuthors() { return authors; }
     public List<Art> getArt() { return art; }
+    public List<Version> getVersions() { return versions; }
     // @formatter:on
 
     public static class Author {
@@ -6,6 +6,7 @@ import net.covers1624.quack.gson.JsonUtils;
 import net.covers1624.quack.io.IOUtils;
 import net.covers1624.quack.util.MultiHasher;
 import net.covers1624.quack.util.MultiHasher.HashFunc;
+import net.covers1624.quack.util.SneakyUtils;
 import net.creeperhost.creeperlauncher.CreeperLauncher;
 import net.creeperhost.creeperlauncher.data.InstanceModifications;
 import net.creeperhost.creeperlauncher.data.InstanceModifications.ModOverride;
@@ -31,6 +32,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -250,10 +252,23 @@ public class InstanceInstaller extends InstanceOperation {
             }
 
             tracker.nextStage(InstallStage.MOD_LOADER);
+            CompletableFuture<Void> modLoaderFuture = null;
             if (modLoaderInstallTask != null) {
-                LOGGER.info("Installing ModLoader..");
-                modLoaderInstallTask.execute(cancelToken, null);
-                instance.props.modLoader = modLoaderInstallTask.getResult();
+                if (canOverlapModLoader(modLoaderInstallTask)) {
+                    LOGGER.info("Installing ModLoader alongside file downloads..");
+                    ModLoaderInstallTask task = modLoaderInstallTask;
+                    modLoaderFuture = CompletableFuture.runAsync(() -> {
+                        try {
+                            task.execute(cancelToken, null);
+                        } catch (Throwable ex) {
+                            throw new CompletionException(ex);
+                        }
+                    }, CreeperLauncher.INSTANCE_LAUNCHER_POOL);
+                } else {
+                    LOGGER.info("Installing ModLoader..");
+                    modLoaderInstallTask.execute(cancelToken, null);
+                    instance.props.modLoader = modLoaderInstallTask.getResult();
+                }
             } else {
                 // Mod loader doesn't exist. This must be vanilla
                 instance.props.modLoader = manifest.getTargetVersion("game");
@@ -270,7 +285,27 @@ public class InstanceInstaller extends InstanceOperation {
             rootListener.start(totalSize);
             TaskProgressAggregator progressAggregator = new ParallelTaskProgressAggregator(rootListener);
 
-            ParallelTaskHelper.executeInParallel(cancelToken, Task.TASK_POOL, tasks, progressAggregator);
+            Throwable downloadFailure = null;
+            try {
+                ParallelTaskHelper.executeInParallel(cancelToken, Task.TASK_POOL, tasks, progressAggregator);
+            } catch (Throwable ex) {
+                downloadFailure = ex;
+                throw ex;
+            } finally {
+                // Always wait for the ModLoader, it must not be left running if the downloads fail.
+                if (modLoaderFuture != null) {
+                    try {
+                        modLoaderFuture.join();
+                        instance.props.modLoader = modLoaderInstallTask.getResult();
+                    } catch (CompletionException ex) {
+                        if (downloadFailure == null) {
+                            SneakyUtils.throwUnchecked(ex.getCause());
+                        }
+                        // Don't hide the download failure.
+                        downloadFailure.addSuppressed(ex.getCause());
+                    }
+                }
+            }
 
             rootListener.finish(progressAggregator.getProcessed());
 
@@ -313,6 +348,27 @@ public class InstanceInstaller extends InstanceOperation {
         }
     }
 
+    /**
+     * Checks if the ModLoader can be installed while pack files are downloaded.
+     * <p>
+     * This is only the case if none of the pack files are inside directories the ModLoader writes to.
+     *
+     * @param task The ModLoader install task.
+     * @return If the two can overlap.
+     */
+    private boolean canOverlapModLoader(ModLoaderInstallTask task) {
+        List<Path> outputDirs = task.getInstanceOutputDirs();
+        for (Path file : filesToDownload) {
+            for (Path dir : outputDirs) {
+                if (file.toAbsolutePath().startsWith(dir.toAbsolutePath())) {
+                    LOGGER.info("Pack file {} is inside ModLoader output {}, installing ModLoader first.", file, dir);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public void cancel(CompletableFuture<?> future) {
         cancelToken.cancel(future);
     }
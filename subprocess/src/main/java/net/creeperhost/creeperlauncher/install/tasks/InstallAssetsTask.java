@@ -1,5 +1,6 @@
 package net.creeperhost.creeperlauncher.install.tasks;
 
+import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
 import net.creeperhost.creeperlauncher.Constants;
 import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask.DownloadValidation;
@@ -12,6 +13,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static net.creeperhost.creeperlauncher.Constants.MC_RESOURCES;
 import static net.creeperhost.creeperlauncher.Constants.MC_RESOURCES_MIRROR;
@@ -56,6 +58,37 @@ public class InstallAssetsTask implements Task<AssetIndexManifest> {
         return subTasks.isEmpty();
     }
 
+    /**
+     * @return The number of asset objects which need to be downloaded.
+     */
+    public int getPendingCount() {
+        return subTasks.size();
+    }
+
+    /**
+     * @return The number of asset objects which already existed and passed validation.
+     */
+    public int getValidatedCount() {
+        return (int) uniqueObjects().count() - subTasks.size();
+    }
+
+    /**
+     * @return The total size of the asset objects which already existed and passed validation.
+     */
+    public long getValidatedBytes() {
+        long total = uniqueObjects().mapToLong(AssetIndexManifest.AssetObject::getSize).sum();
+        long pending = subTasks.stream()
+                .mapToLong(e -> e.getValidation().expectedSize)
+                .sum();
+        return total - pending;
+    }
+
+    private Stream<AssetIndexManifest.AssetObject> uniqueObjects() {
+        Set<HashCode> seen = new HashSet<>();
+        return manifest.objects.values().stream()
+                .filter(e -> seen.add(e.getHash()));
+    }
+
     @Nullable
     @Override
     public AssetIndexManifest getResult() {
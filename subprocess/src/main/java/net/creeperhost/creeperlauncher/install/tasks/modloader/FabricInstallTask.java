@@ -3,6 +3,7 @@ package net.creeperhost.creeperlauncher.install.tasks.modloader;
 import net.covers1624.quack.gson.JsonUtils;
 import net.creeperhost.creeperlauncher.Constants;
 import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask;
+import net.creeperhost.creeperlauncher.install.tasks.Task;
 import net.creeperhost.creeperlauncher.install.tasks.TaskProgressListener;
 import net.creeperhost.creeperlauncher.minecraft.jsons.VersionManifest;
 import net.creeperhost.creeperlauncher.pack.CancellationToken;
@@ -10,6 +11,8 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by covers1624 on 28/1/22.
@@ -65,10 +68,11 @@ public abstract class FabricInstallTask extends ModLoaderInstallTask {
         VersionManifest loaderManifest = downloadLoaderManifest(versionJson, cancelToken);
         downloadVanilla(versionsDir, mcVersion);
 
+        List<Task<?>> libraryTasks = new ArrayList<>(loaderManifest.libraries.size());
         for (VersionManifest.Library library : loaderManifest.libraries) {
-            if (cancelToken != null) cancelToken.throwIfCancelled();
-            processLibrary(cancelToken, librariesDir, library);
+            libraryTasks.add((token, l) -> processLibrary(token, librariesDir, library));
         }
+        executeInParallel(cancelToken, libraryTasks);
     }
 
     @Nullable
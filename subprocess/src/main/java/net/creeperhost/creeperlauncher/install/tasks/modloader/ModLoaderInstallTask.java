@@ -1,18 +1,27 @@
 package net.creeperhost.creeperlauncher.install.tasks.modloader;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask;
+import net.creeperhost.creeperlauncher.install.tasks.ParallelTaskHelper;
 import net.creeperhost.creeperlauncher.install.tasks.Task;
 import net.creeperhost.creeperlauncher.install.tasks.modloader.forge.AbstractForgeInstallTask;
 import net.creeperhost.creeperlauncher.minecraft.jsons.VersionListManifest;
 import net.creeperhost.creeperlauncher.minecraft.jsons.VersionManifest;
+import net.creeperhost.creeperlauncher.pack.CancellationToken;
 import net.creeperhost.creeperlauncher.pack.Instance;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
 import org.apache.maven.artifact.versioning.VersionRange;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by covers1624 on 28/1/22.
@@ -21,6 +30,14 @@ public abstract class ModLoaderInstallTask implements Task<String> {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
+    /**
+     * Downloads for ModLoader installs, separate from {@link Task#TASK_POOL}.
+     * <p>
+     * ModLoaders may be installed alongside pack file downloads, their libraries must
+     * not queue behind every pack file.
+     */
+    public static final ExecutorService LIBRARY_POOL = createLibraryPool();
+
     /*
      Forge downloads:
      0               - 1.3.2-4.0.0.182  - *-client.zip
@@ -53,6 +70,29 @@ public abstract class ModLoaderInstallTask implements Task<String> {
         };
     }
 
+    /**
+     * The directories inside the instance this task writes to.
+     * <p>
+     * Everything else this task writes lives in the shared versions and libraries directories,
+     * so pack files outside these directories may be downloaded while this task runs.
+     *
+     * @return The directories.
+     */
+    public List<Path> getInstanceOutputDirs() {
+        return List.of();
+    }
+
+    /**
+     * Executes the given tasks in parallel, on the {@link #LIBRARY_POOL}.
+     *
+     * @param cancelToken The cancellation token.
+     * @param tasks       The tasks.
+     */
+    protected static void executeInParallel(@Nullable CancellationToken cancelToken, List<? extends Task<?>> tasks) {
+        ParallelTaskHelper.executeInParallel(cancelToken, LIBRARY_POOL, tasks, null);
+        if (cancelToken != null) cancelToken.throwIfCancelled();
+    }
+
     protected static VersionManifest downloadVanilla(Path versionsDir, String version) throws IOException {
         VersionListManifest listManifest = VersionListManifest.update(versionsDir);
         VersionManifest manifest = listManifest.resolve(versionsDir, version);
@@ -73,6 +113,21 @@ public abstract class ModLoaderInstallTask implements Task<String> {
         return manifest;
     }
 
+    private static ExecutorService createLibraryPool() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                4,
+                4,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("ModLoader Download %d")
+                        .setDaemon(true)
+                        .build()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private static VersionRange createRange(String spec) {
         try {
             return VersionRange.createFromVersionSpec(spec);
@@ -4,6 +4,8 @@ import com.google.common.hash.HashCode;
 import net.covers1624.quack.util.MultiHasher.HashFunc;
 import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask;
 import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask.DownloadValidation;
+import net.creeperhost.creeperlauncher.install.tasks.ParallelTaskHelper;
+import net.creeperhost.creeperlauncher.install.tasks.modloader.ModLoaderInstallTask;
 import net.creeperhost.creeperlauncher.pack.CancellationToken;
 import net.creeperhost.creeperlauncher.pack.Instance;
 import org.apache.logging.log4j.LogManager;
@@ -30,14 +32,21 @@ public class ForgeLegacyLibraryHelper {
 
         LOGGER.info("Installing Forge Legacy libraries.");
 
-        for (NewDownloadTask task : tasks) {
-            if (cancelToken != null) cancelToken.throwIfCancelled();
-            task.execute(cancelToken, null);
-        }
+        ParallelTaskHelper.executeInParallel(cancelToken, ModLoaderInstallTask.LIBRARY_POOL, tasks, null);
+    }
+
+    /**
+     * The directory inside the instance legacy libraries are installed to.
+     *
+     * @param instance The instance.
+     * @return The directory.
+     */
+    public static Path getLibsDir(Instance instance) {
+        return instance.getDir().resolve("lib");
     }
 
     public static List<NewDownloadTask> getLibraryTasks(Instance instance, String mcVersion) {
-        Path libsDir = instance.getDir().resolve("lib");
+        Path libsDir = getLibsDir(instance);
         List<NewDownloadTask> libraries = new LinkedList<>();
         switch (mcVersion) {
             case "1.4.7":
@@ -0,0 +1,288 @@
+package net.creeperhost.creeperlauncher.install.tasks.modloader.forge;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.io.IOUtils;
+import net.covers1624.quack.util.HashUtils;
+import net.creeperhost.creeperlauncher.util.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A global, content-addressed cache of Forge installer processor outputs.
+ * <p>
+ * Each processor invocation is keyed by the hashes of its jar and classpath, its arguments,
+ * and the hashes of any input files its arguments reference. Repeated installs of the same
+ * Forge version can then restore the outputs instead of running the processor. Processors
+ * which take a directory as input are never cached.
+ * <p>
+ * Outputs are stored alongside their SHA-1, and verified when restored.
+ * <p>
+ * Entries are evicted least recently used first, once they haven't been used for
+ * {@link #MAX_AGE}, or the cache grows larger than {@link #MAX_SIZE}. An entry's last
+ * use is the modified time of its index, which is touched whenever it's restored.
+ */
+@SuppressWarnings ("UnstableApiUsage")
+public class ForgeProcessorCache {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Type INDEX_TYPE = new TypeToken<Map<String, String>>() { }.getType();
+
+    @SuppressWarnings ("deprecation")
+    private static final HashFunction SHA_1 = Hashing.sha1();
+
+    /**
+     * Bumped whenever the key or storage format changes.
+     */
+    private static final int FORMAT = 1;
+
+    /**
+     * Written inside each cache entry once all outputs are stored, maps each output's
+     * file name inside the entry to its SHA-1.
+     */
+    private static final String INDEX_FILE = "outputs.json";
+    // Part of the name of every store's temporary directory, never part of a key.
+    private static final String TEMP_MARKER = "__tmp";
+
+    private static final long MAX_SIZE = 2L * 1024 * 1024 * 1024;
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(30);
+    // Left behind by an interrupted store.
+    private static final long MAX_TEMP_AGE = TimeUnit.DAYS.toMillis(1);
+
+    private final Path cacheDir;
+    // Classpath jars are shared between most processors, and don't change during an install.
+    private final Map<Path, HashCode> classpathHashes = new ConcurrentHashMap<>();
+
+    public ForgeProcessorCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Compute the cache key for a processor invocation.
+     *
+     * @param classpath The processor's classpath, including its own jar.
+     * @param args      The resolved processor arguments.
+     * @param outputs   The files the processor outputs.
+     * @param tempDir   The installer's temporary directory, which changes every install.
+     * @return The key, or {@code null} if the processor can't be cached.
+     * @throws IOException If an IO error occurs.
+     */
+    @Nullable
+    public String computeKey(List<Path> classpath, List<String> args, Set<Path> outputs, Path tempDir) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(FORMAT);
+        for (Path path : classpath) {
+            HashCode hash = classpathHashes.get(path);
+            if (hash == null) {
+                hash = HashUtils.hash(SHA_1, path);
+                classpathHashes.put(path, hash);
+            }
+            hasher.putBytes(hash.asBytes());
+        }
+        String tempPrefix = tempDir.toAbsolutePath().toString();
+        for (String arg : args) {
+            Path path = asPath(arg);
+            if (path != null && outputs.contains(path)) {
+                // Outputs may or may not exist yet, only their location matters.
+                hasher.putString("output:" + arg, StandardCharsets.UTF_8);
+            } else if (path != null && Files.isRegularFile(path)) {
+                hasher.putString("input:", StandardCharsets.UTF_8);
+                hasher.putBytes(HashUtils.hash(SHA_1, path).asBytes());
+            } else if (path != null && Files.isDirectory(path)) {
+                // Its path says nothing about its contents.
+                LOGGER.info("Not caching processor outputs, {} is a directory input.", path);
+                return null;
+            } else {
+                hasher.putString("arg:" + arg.replace(tempPrefix, "{TEMP}"), StandardCharsets.UTF_8);
+            }
+            hasher.putByte((byte) 0);
+        }
+        for (Path output : new TreeSet<>(outputs)) {
+            hasher.putString(output.toAbsolutePath().toString(), StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Try and restore the outputs for the given key.
+     *
+     * @param key     The key.
+     * @param outputs The files to restore.
+     * @return If every output was restored and verified.
+     */
+    public boolean restore(String key, Set<Path> outputs) {
+        Path entryDir = cacheDir.resolve(key);
+        Path indexFile = entryDir.resolve(INDEX_FILE);
+        if (Files.notExists(indexFile)) return false;
+
+        try {
+            Map<String, String> index = JsonUtils.parse(GSON, indexFile, INDEX_TYPE);
+            List<Path> sorted = new ArrayList<>(new TreeSet<>(outputs));
+            if (index == null || index.size() != sorted.size()) return false;
+
+            for (int i = 0; i < sorted.size(); i++) {
+                String name = String.valueOf(i);
+                Path cached = entryDir.resolve(name);
+                String expected = index.get(name);
+                if (expected == null || Files.notExists(cached) || !HashUtils.equals(HashUtils.hash(SHA_1, cached), expected)) {
+                    LOGGER.warn("Cached processor output {} failed to verify.", cached);
+                    FileUtils.deleteDirectory(entryDir);
+                    return false;
+                }
+            }
+            for (int i = 0; i < sorted.size(); i++) {
+                Path output = sorted.get(i);
+                // Copied, not linked. Some outputs are modified in place later, (Jar mods).
+                Files.copy(entryDir.resolve(String.valueOf(i)), IOUtils.makeParents(output), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis()));
+            LOGGER.info("Restored processor outputs from cache {}.", key);
+            return true;
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to restore processor outputs from cache {}.", key, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Store the outputs for the given key.
+     * <p>
+     * Failures are logged and ignored, the cache is only an optimization.
+     *
+     * @param key     The key.
+     * @param outputs The files to store.
+     */
+    public void store(String key, Set<Path> outputs) {
+        Path entryDir = cacheDir.resolve(key);
+        Path tempDir = null;
+        try {
+            // Unique per store, concurrent installs may store the same key.
+            tempDir = Files.createTempDirectory(Files.createDirectories(cacheDir), key + TEMP_MARKER);
+
+            Map<String, String> index = new LinkedHashMap<>();
+            List<Path> sorted = new ArrayList<>(new TreeSet<>(outputs));
+            for (int i = 0; i < sorted.size(); i++) {
+                Path output = sorted.get(i);
+                if (Files.notExists(output)) {
+                    LOGGER.warn("Not caching processor outputs, {} does not exist.", output);
+                    FileUtils.deleteDirectory(tempDir);
+                    return;
+                }
+                String name = String.valueOf(i);
+                Files.copy(output, tempDir.resolve(name));
+                index.put(name, HashUtils.hash(SHA_1, output).toString());
+            }
+            // Written last, its presence marks the entry as complete.
+            JsonUtils.write(GSON, tempDir.resolve(INDEX_FILE), index, INDEX_TYPE);
+
+            FileUtils.deleteDirectory(entryDir);
+            Files.move(tempDir, entryDir);
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to cache processor outputs {}.", key, ex);
+            if (tempDir != null) {
+                try {
+                    FileUtils.deleteDirectory(tempDir);
+                } catch (Throwable ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Evict entries which are too old, then the least recently used entries until the cache is
+     * within its size limit.
+     * <p>
+     * Failures are logged and ignored.
+     */
+    public void evict() {
+        if (Files.notExists(cacheDir)) return;
+
+        long now = System.currentTimeMillis();
+        List<CacheEntry> entries = new ArrayList<>();
+        long totalSize = 0;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(cacheDir)) {
+            for (Path dir : dirs) {
+                if (!Files.isDirectory(dir)) continue;
+
+                if (dir.getFileName().toString().contains(TEMP_MARKER)) {
+                    // May belong to a store still in progress.
+                    if (now - Files.getLastModifiedTime(dir).toMillis() > MAX_TEMP_AGE) {
+                        FileUtils.deleteDirectory(dir);
+                    }
+                    continue;
+                }
+                Path indexFile = dir.resolve(INDEX_FILE);
+                if (Files.notExists(indexFile)) {
+                    // Incomplete, will never be restored.
+                    FileUtils.deleteDirectory(dir);
+                    continue;
+                }
+                long lastUsed = Files.getLastModifiedTime(indexFile).toMillis();
+                if (now - lastUsed > MAX_AGE) {
+                    FileUtils.deleteDirectory(dir);
+                    continue;
+                }
+                long size = sizeOf(dir);
+                entries.add(new CacheEntry(dir, lastUsed, size));
+                totalSize += size;
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to evict processor cache entries.", ex);
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(CacheEntry::lastUsed));
+        int evicted = 0;
+        for (CacheEntry entry : entries) {
+            if (totalSize <= MAX_SIZE) break;
+            FileUtils.deleteDirectory(entry.dir);
+            totalSize -= entry.size;
+            evicted++;
+        }
+        if (evicted != 0) {
+            LOGGER.info("Evicted {} processor cache entries, cache is now {} bytes.", evicted, totalSize);
+        }
+    }
+
+    private static long sizeOf(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            long size = 0;
+            for (Path file : files) {
+                size += Files.size(file);
+            }
+            return size;
+        }
+    }
+
+    @Nullable
+    private static Path asPath(String arg) {
+        try {
+            Path path = Path.of(arg);
+            return path.isAbsolute() ? path : null;
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+
+    private record CacheEntry(Path dir, long lastUsed, long size) { }
+}
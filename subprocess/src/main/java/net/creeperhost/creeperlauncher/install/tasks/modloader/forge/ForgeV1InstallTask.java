@@ -8,6 +8,7 @@ import net.covers1624.quack.io.IOUtils;
 import net.covers1624.quack.util.HashUtils;
 import net.creeperhost.creeperlauncher.Constants;
 import net.creeperhost.creeperlauncher.data.forge.installerv1.InstallProfile;
+import net.creeperhost.creeperlauncher.install.tasks.Task;
 import net.creeperhost.creeperlauncher.install.tasks.TaskProgressListener;
 import net.creeperhost.creeperlauncher.minecraft.jsons.VersionManifest;
 import net.creeperhost.creeperlauncher.pack.CancellationToken;
@@ -21,6 +22,8 @@ import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -45,6 +48,11 @@ public class ForgeV1InstallTask extends AbstractForgeInstallTask {
         this.installerJar = installerJar;
     }
 
+    @Override
+    public List<Path> getInstanceOutputDirs() {
+        return List.of(ForgeLegacyLibraryHelper.getLibsDir(instance));
+    }
+
     @Override
     public void execute(@Nullable CancellationToken cancelToken, @Nullable TaskProgressListener listener) throws Throwable {
         Path versionsDir = Constants.BIN_LOCATION.resolve("versions");
@@ -74,25 +82,28 @@ public class ForgeV1InstallTask extends AbstractForgeInstallTask {
                 }
             }
 
+            List<Task<?>> libraryTasks = new ArrayList<>(profile.versionInfo.libraries.size());
             for (InstallProfile.Library library : profile.versionInfo.libraries) {
-                if (cancelToken != null) cancelToken.throwIfCancelled();
                 if (library.clientreq == null || !library.clientreq) continue; // Skip, mirrors forge logic.
-                Path libraryPath = processLibrary(cancelToken, installerRoot, librariesDir, library);
-
-                if (library.checksums.isEmpty()) continue;
-
-                String sha1 = HashUtils.hash(Hashing.sha1(), libraryPath).toString();
-
-                if (!library.checksums.contains(sha1)) {
-                    LOGGER.warn("Failed to validate checksums of library {}. Expected one of {}. Got: {}",
-                            library.name,
-                            library.checksums,
-                            sha1
-                    );
-                    // Some libraries in older v1 installers have changed. (scala iirc), just ignore these errors for now.
-                    LOGGER.warn("Continuing anyway..");
-                }
+                libraryTasks.add((token, l) -> {
+                    Path libraryPath = processLibrary(token, installerRoot, librariesDir, library);
+
+                    if (library.checksums.isEmpty()) return;
+
+                    String sha1 = HashUtils.hash(Hashing.sha1(), libraryPath).toString();
+
+                    if (!library.checksums.contains(sha1)) {
+                        LOGGER.warn("Failed to validate checksums of library {}. Expected one of {}. Got: {}",
+                                library.name,
+                                library.checksums,
+                                sha1
+                        );
+                        // Some libraries in older v1 installers have changed. (scala iirc), just ignore these errors for now.
+                        LOGGER.warn("Continuing anyway..");
+                    }
+                });
             }
+            executeInParallel(cancelToken, libraryTasks);
 
             if (cancelToken != null) cancelToken.throwIfCancelled();
 
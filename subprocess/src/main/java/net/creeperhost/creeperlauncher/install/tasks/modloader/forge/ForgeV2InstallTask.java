@@ -3,6 +3,7 @@ package net.creeperhost.creeperlauncher.install.tasks.modloader.forge;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import joptsimple.OptionException;
@@ -17,8 +18,10 @@ import net.covers1624.quack.io.IOUtils;
 import net.covers1624.quack.maven.MavenNotation;
 import net.covers1624.quack.util.HashUtils;
 import net.creeperhost.creeperlauncher.Constants;
+import net.creeperhost.creeperlauncher.Settings;
 import net.creeperhost.creeperlauncher.data.forge.installerv2.InstallManifest;
 import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask;
+import net.creeperhost.creeperlauncher.install.tasks.Task;
 import net.creeperhost.creeperlauncher.install.tasks.TaskProgressListener;
 import net.creeperhost.creeperlauncher.minecraft.jsons.VersionManifest;
 import net.creeperhost.creeperlauncher.pack.CancellationToken;
@@ -34,6 +37,10 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
@@ -49,6 +56,13 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
     @SuppressWarnings ("deprecation")
     private static final HashFunction SHA_1 = Hashing.sha1();
 
+    private static final ForgeProcessorCache PROCESSOR_CACHE = new ForgeProcessorCache(Constants.BIN_LOCATION.resolve("forge_processor_cache"));
+
+    /**
+     * Argument flags which are followed by a processor output, for processors which don't declare their outputs.
+     */
+    private static final List<String> OUTPUT_FLAGS = List.of("--output", "--out", "--out-jar");
+
     private final Instance instance;
     private final Path installerJar;
 
@@ -57,6 +71,11 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
         this.installerJar = installerJar;
     }
 
+    @Override
+    public List<Path> getInstanceOutputDirs() {
+        return List.of(ForgeLegacyLibraryHelper.getLibsDir(instance));
+    }
+
     @Override
     public void execute(@Nullable CancellationToken cancelToken, @Nullable TaskProgressListener listener) throws Throwable {
         Path versionsDir = Constants.BIN_LOCATION.resolve("versions");
@@ -81,10 +100,11 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
             libraries.addAll(forgeManifest.libraries);
             libraries.addAll(instManifest.libraries);
 
+            List<Task<?>> libraryTasks = new ArrayList<>(libraries.size());
             for (VersionManifest.Library library : libraries) {
-                if (cancelToken != null) cancelToken.throwIfCancelled();
-                processLibrary(cancelToken, installerRoot, librariesDir, library);
+                libraryTasks.add((token, l) -> processLibrary(token, installerRoot, librariesDir, library));
             }
+            executeInParallel(cancelToken, libraryTasks);
 
             Map<String, String> dataCache = null;
             Path dataCacheFile = versionsDir.resolve(instManifest.version).resolve(instManifest.version + "-data-cache.json");
@@ -171,12 +191,14 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
             }
         }
 
+        List<PreparedProcessor> processors = new ArrayList<>();
         for (InstallManifest.Processor processor : manifest.processors) {
-            if (cancelToken != null) cancelToken.throwIfCancelled();
             if (processor.sides.isEmpty() || processor.sides.contains("client")) {
-                runProcessor(cancelToken, vanillaManifest, processor, data, javaExecutable, librariesDir);
+                processors.add(prepareProcessor(processor, data, librariesDir));
             }
         }
+        executeProcessors(cancelToken, vanillaManifest, processors, javaExecutable, librariesDir, tempDir);
+        PROCESSOR_CACHE.evict();
 
         for (String key : fileKeys) {
             Path file = Paths.get(data.get(key));
@@ -189,10 +211,58 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
         }
     }
 
-    private void runProcessor(@Nullable CancellationToken cancelToken, VersionManifest vanillaManifest, InstallManifest.Processor processor, Map<String, String> data, Path javaExecutable, Path librariesDir) throws IOException {
-        Map<Path, String> outputs = new HashMap<>();
+    /**
+     * Runs the given processors, in parallel where their inputs and outputs allow it.
+     * <p>
+     * A processor depends on an earlier processor if it reads or writes any file the earlier
+     * processor writes, or writes any file the earlier processor reads. Processors with unknown
+     * outputs may write anything, and are run in order with respect to every other processor.
+     * <p>
+     * In-process processors share the launcher's JVM global state, so when they are enabled every
+     * processor is run one at a time.
+     */
+    private void executeProcessors(@Nullable CancellationToken cancelToken, VersionManifest vanillaManifest, List<PreparedProcessor> processors, Path javaExecutable, Path librariesDir, Path tempDir) throws IOException {
+        int threads = Settings.getForgeInProcessProcessors() ? 1 : Settings.getForgeProcessorThreads();
+        LOGGER.info("Running {} processors with up to {} at once.", processors.size(), threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("Forge Processor %d")
+                .setDaemon(true)
+                .build()
+        );
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>(processors.size());
+            for (int i = 0; i < processors.size(); i++) {
+                PreparedProcessor processor = processors.get(i);
+                List<CompletableFuture<Void>> deps = new ArrayList<>();
+                for (int j = 0; j < i; j++) {
+                    if (processor.dependsOn(processors.get(j))) {
+                        deps.add(futures.get(j));
+                    }
+                }
+                int index = i + 1;
+                futures.add(CompletableFuture.allOf(deps.toArray(new CompletableFuture[0])).thenRunAsync(() -> {
+                    if (cancelToken != null) cancelToken.throwIfCancelled();
+                    LOGGER.info("Running processor {}/{}.", index, processors.size());
+                    try {
+                        runProcessor(cancelToken, vanillaManifest, processor, javaExecutable, librariesDir, tempDir);
+                    } catch (IOException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof CancellationToken.Cancellation cancellation) throw cancellation;
+            if (cause instanceof IOException ioException) throw ioException;
+            throw new IOException("Failed to run processors.", cause);
+        } finally {
+            executor.shutdown();
+        }
+    }
 
-        boolean cached = !processor.outputs.isEmpty();
+    private PreparedProcessor prepareProcessor(InstallManifest.Processor processor, Map<String, String> data, Path librariesDir) {
+        Map<Path, String> outputs = new HashMap<>();
         for (Map.Entry<String, String> entry : processor.outputs.entrySet()) {
             String key = entry.getKey();
             String value = entry.getValue();
@@ -206,9 +276,44 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
             if (value != null) {
                 value = replaceTokens(data, value);
             }
+            outputs.put(Path.of(key), value);
+        }
 
-            Path output = Path.of(key);
-            outputs.put(output, value);
+        List<String> args = new ArrayList<>(processor.args.size());
+        for (String arg : processor.args) {
+            if (surroundedBy(arg, '[', ']')) {
+                args.add(MavenNotation.parse(topAndTail(arg)).toPath(librariesDir).toAbsolutePath().toString());
+            } else {
+                args.add(replaceTokens(data, arg));
+            }
+        }
+
+        // Processors which don't declare outputs can only be cached or parallelized if we can see them in the arguments.
+        Set<Path> knownOutputs = !outputs.isEmpty() ? outputs.keySet() : inferOutputs(args);
+        Set<Path> inputs = new HashSet<>();
+        // The processor's own classpath could be produced by an earlier processor.
+        inputs.add(processor.jar.toPath(librariesDir).toAbsolutePath());
+        for (MavenNotation notation : processor.classpath) {
+            inputs.add(notation.toPath(librariesDir).toAbsolutePath());
+        }
+        for (String arg : args) {
+            Path path = asAbsolutePath(arg);
+            if (path != null && !knownOutputs.contains(path)) {
+                inputs.add(path);
+            }
+        }
+        return new PreparedProcessor(processor, args, outputs, knownOutputs, inputs);
+    }
+
+    private void runProcessor(@Nullable CancellationToken cancelToken, VersionManifest vanillaManifest, PreparedProcessor prepared, Path javaExecutable, Path librariesDir, Path tempDir) throws IOException {
+        InstallManifest.Processor processor = prepared.processor();
+        Map<Path, String> outputs = prepared.outputs();
+        List<String> args = prepared.args();
+
+        boolean cached = !outputs.isEmpty();
+        for (Map.Entry<Path, String> entry : outputs.entrySet()) {
+            Path output = entry.getKey();
+            String value = entry.getValue();
 
             if (Files.notExists(output)) {
                 cached = false;
@@ -230,14 +335,6 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
             return;
         }
 
-        List<String> args = new ArrayList<>(processor.args.size());
-        for (String arg : processor.args) {
-            if (surroundedBy(arg, '[', ']')) {
-                args.add(MavenNotation.parse(topAndTail(arg)).toPath(librariesDir).toAbsolutePath().toString());
-            } else {
-                args.add(replaceTokens(data, arg));
-            }
-        }
         // Do custom stuff for DOWNLOAD_MOJMAPS as this bypasses our proxy settings, etc.
         if (args.size() > 2 && args.get(0).equals("--task") && args.get(1).equals("DOWNLOAD_MOJMAPS")) {
             if (downloadMojMaps(cancelToken, vanillaManifest, args.subList(2, args.size()))) {
@@ -261,11 +358,35 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
             }
         }
 
+        Set<Path> cacheOutputs = prepared.knownOutputs();
+        String cacheKey = null;
+        if (!cacheOutputs.isEmpty()) {
+            cacheKey = PROCESSOR_CACHE.computeKey(classpath, args, cacheOutputs, tempDir);
+            if (cacheKey != null && PROCESSOR_CACHE.restore(cacheKey, cacheOutputs)) {
+                if (validateOutputs(outputs)) {
+                    LOGGER.info("Processor outputs restored from cache, Skipping processor.");
+                    return;
+                }
+                LOGGER.warn("Cached processor outputs failed to validate. Running processor.");
+            }
+        }
+
+        String mainClass = getMainClass(jar);
+        if (canRunInProcess(vanillaManifest, processor) && InProcessProcessorRunner.run(processor.jar, classpath, mainClass, args)) {
+            if (validateOutputs(outputs)) {
+                if (cacheKey != null) {
+                    PROCESSOR_CACHE.store(cacheKey, cacheOutputs);
+                }
+                return;
+            }
+            LOGGER.warn("In-process processor outputs failed to validate. Running processor in a child JVM.");
+        }
+
         List<String> command = new ArrayList<>(5 + args.size());
         command.add(javaExecutable.toAbsolutePath().toString());
         command.add("-cp");
         command.add(classpath.stream().map(e -> e.toAbsolutePath().toString()).collect(Collectors.joining(File.pathSeparator)));
-        command.add(getMainClass(jar));
+        command.add(mainClass);
         command.add(jar.toAbsolutePath().toString());
         command.addAll(args);
 
@@ -304,6 +425,49 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
             throw ex;
         }
 
+        if (!validateOutputs(outputs)) {
+            LOGGER.error("Processor output validation errors occurred.");
+            throw new IOException("Processor output validation errors occurred.");
+        }
+        if (cacheKey != null) {
+            PROCESSOR_CACHE.store(cacheKey, cacheOutputs);
+        }
+    }
+
+    private static Set<Path> inferOutputs(List<String> args) {
+        Set<Path> outputs = new HashSet<>();
+        for (int i = 0; i < args.size() - 1; i++) {
+            if (OUTPUT_FLAGS.contains(args.get(i))) {
+                outputs.add(Path.of(args.get(i + 1)).toAbsolutePath());
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Processors may only run in-process if they target a modern Java version the launcher
+     * itself satisfies. Older toolchains assume Java 8, and run in a child JVM of that version.
+     */
+    private static boolean canRunInProcess(VersionManifest vanillaManifest, InstallManifest.Processor processor) {
+        if (!Settings.getForgeInProcessProcessors()) return false;
+        if (vanillaManifest.javaVersion == null) return false;
+
+        int required = vanillaManifest.javaVersion.majorVersion;
+        if (required < 16 || required > Runtime.version().feature()) return false;
+        return InProcessProcessorRunner.canRun(processor.jar);
+    }
+
+    @Nullable
+    private static Path asAbsolutePath(String arg) {
+        try {
+            Path path = Path.of(arg);
+            return path.isAbsolute() ? path : null;
+        } catch (InvalidPathException ex) {
+            return null;
+        }
+    }
+
+    private static boolean validateOutputs(Map<Path, String> outputs) throws IOException {
         boolean validated = true;
         for (Map.Entry<Path, String> entry : outputs.entrySet()) {
             Path output = entry.getKey();
@@ -323,9 +487,27 @@ public class ForgeV2InstallTask extends AbstractForgeInstallTask {
                 }
             }
         }
-        if (!validated) {
-            LOGGER.error("Processor output validation errors occurred.");
-            throw new IOException("Processor output validation errors occurred.");
+        return validated;
+    }
+
+    /**
+     * A processor with its arguments and outputs resolved.
+     *
+     * @param processor    The processor.
+     * @param args         The resolved arguments.
+     * @param outputs      The declared outputs, mapped to their expected SHA-1, if any.
+     * @param knownOutputs The declared outputs, or outputs inferred from the arguments. Empty if unknown.
+     * @param inputs       The classpath, and every absolute path in the arguments which is not an output.
+     */
+    private record PreparedProcessor(InstallManifest.Processor processor, List<String> args, Map<Path, String> outputs, Set<Path> knownOutputs, Set<Path> inputs) {
+
+        public boolean dependsOn(PreparedProcessor other) {
+            // Either may write anything.
+            if (knownOutputs.isEmpty() || other.knownOutputs.isEmpty()) return true;
+
+            return !Collections.disjoint(inputs, other.knownOutputs)
+                    || !Collections.disjoint(knownOutputs, other.inputs)
+                    || !Collections.disjoint(knownOutputs, other.knownOutputs);
         }
     }
 
@@ -0,0 +1,345 @@
+package net.creeperhost.creeperlauncher.install.tasks.modloader.forge;
+
+import net.covers1624.quack.maven.MavenNotation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.security.Permission;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Runs Forge installer processors inside the launcher's JVM, avoiding a JVM startup per processor.
+ * <p>
+ * Each processor gets its own disposable classloader, parented to the platform classloader so
+ * none of the launcher's libraries leak into it. {@link System#exit} is blocked for processor
+ * threads, and their stdout/stderr are routed to the install log.
+ * <p>
+ * The SecurityManager and std stream redirects are JVM global, so they are only installed for the
+ * duration of a single processor, and in-process processors run one at a time. Output is routed by
+ * thread, the thread running the processor and any threads it starts inherit its context. Exits are
+ * rare, so the exit guard also counts any thread with processor code on its stack.
+ * <p>
+ * Processors which fail in-process are remembered for the rest of the session, and are
+ * expected to be re-run in a child JVM by the caller.
+ */
+@SuppressWarnings ("removal")
+public class InProcessProcessorRunner {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * Processors known to misbehave in-process, by {@code group:module}.
+     * <p>
+     * mcinjector configures global logging and reads classpath resources relative to the working directory.
+     */
+    private static final Set<String> CHILD_JVM_ONLY = Set.of(
+            "de.oceanlabs.mcp:mcinjector"
+    );
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    private static final Set<String> FAILED = ConcurrentHashMap.newKeySet();
+    // Set on the thread running the processor, and inherited by threads it starts.
+    private static final InheritableThreadLocal<ProcessorContext> THREAD_CONTEXT = new InheritableThreadLocal<>();
+
+    // Held for the whole of an in-process run.
+    private static final Object RUN_LOCK = new Object();
+    @Nullable
+    private static volatile ActiveRun active;
+    // The std streams replaced for the active run.
+    @Nullable
+    private static PrintStream prevOut;
+    @Nullable
+    private static PrintStream prevErr;
+
+    // Null until the first in-process run.
+    @Nullable
+    private static volatile Boolean supported;
+
+    /**
+     * Checks if the given processor can be run in-process.
+     *
+     * @param processorJar The processor's artifact.
+     * @return If the processor should be attempted in-process.
+     */
+    public static boolean canRun(MavenNotation processorJar) {
+        String key = processorJar.group + ":" + processorJar.module;
+        if (CHILD_JVM_ONLY.contains(key) || FAILED.contains(key)) return false;
+        return supported != Boolean.FALSE;
+    }
+
+    /**
+     * Runs the given processor main class in-process.
+     *
+     * @param processorJar The processor's artifact.
+     * @param classpath    The processor's classpath, including its own jar.
+     * @param mainClass    The processor's main class.
+     * @param args         The processor's arguments.
+     * @return If the processor ran and exited successfully. If not, the caller should fall back to a child JVM.
+     */
+    public static boolean run(MavenNotation processorJar, List<Path> classpath, String mainClass, List<String> args) {
+        synchronized (RUN_LOCK) {
+            if (!install()) return false;
+
+            String key = processorJar.group + ":" + processorJar.module;
+            ProcessorContext context = new ProcessorContext(LOGGER::info, LOGGER::warn);
+            Thread thread = Thread.currentThread();
+            ClassLoader prevLoader = thread.getContextClassLoader();
+            try (URLClassLoader loader = new URLClassLoader(toUrls(classpath), ClassLoader.getPlatformClassLoader())) {
+                Method main = Class.forName(mainClass, true, loader).getMethod("main", String[].class);
+                if (!Modifier.isStatic(main.getModifiers())) {
+                    throw new NoSuchMethodException("main is not static.");
+                }
+
+                LOGGER.info("Running processor {} in-process.", mainClass);
+                thread.setContextClassLoader(loader);
+                THREAD_CONTEXT.set(context);
+                active = new ActiveRun(loader, context);
+                try {
+                    main.invoke(null, (Object) args.toArray(new String[0]));
+                } catch (InvocationTargetException ex) {
+                    Throwable cause = ex.getCause();
+                    if (!(cause instanceof ExitException)) {
+                        throw cause;
+                    }
+                }
+                // Processors may catch the ExitException themselves.
+                Integer exitStatus = context.exitStatus;
+                if (exitStatus != null && exitStatus != 0) {
+                    throw new IOException("Processor exited with non zero exit status code. " + exitStatus);
+                }
+                return true;
+            } catch (Throwable ex) {
+                LOGGER.warn("Processor {} failed in-process. Falling back to a child JVM.", mainClass, ex);
+                FAILED.add(key);
+                return false;
+            } finally {
+                active = null;
+                THREAD_CONTEXT.remove();
+                uninstall();
+                thread.setContextClassLoader(prevLoader);
+                context.flush();
+            }
+        }
+    }
+
+    /**
+     * Install the exit guard and std stream redirects. Must hold {@link #RUN_LOCK}.
+     *
+     * @return If they were installed. If not, processors can't run in-process.
+     */
+    private static boolean install() {
+        if (supported == Boolean.FALSE) return false;
+
+        if (System.getSecurityManager() != null) {
+            LOGGER.warn("A SecurityManager is already installed, processors will run in child JVMs.");
+            supported = false;
+            return false;
+        }
+        try {
+            System.setSecurityManager(new ExitGuard());
+        } catch (UnsupportedOperationException ex) {
+            // Java 18+ without -Djava.security.manager=allow, we can't stop processors from exiting the launcher.
+            LOGGER.warn("Unable to guard System.exit, processors will run in child JVMs.");
+            supported = false;
+            return false;
+        }
+        supported = true;
+        prevOut = System.out;
+        prevErr = System.err;
+        System.setOut(new PrintStream(new RoutingOutputStream(prevOut, false), true));
+        System.setErr(new PrintStream(new RoutingOutputStream(prevErr, true), true));
+        return true;
+    }
+
+    /**
+     * Restore the original SecurityManager and std streams. Must hold {@link #RUN_LOCK}.
+     */
+    private static void uninstall() {
+        System.setSecurityManager(null);
+        if (prevOut != null) {
+            System.out.flush();
+            System.setOut(prevOut);
+            prevOut = null;
+        }
+        if (prevErr != null) {
+            System.err.flush();
+            System.setErr(prevErr);
+            prevErr = null;
+        }
+    }
+
+    /**
+     * Get the context of the running processor, if the current thread belongs to it.
+     * <p>
+     * Cheap enough to call on every write.
+     */
+    @Nullable
+    private static ProcessorContext threadContext() {
+        ActiveRun run = active;
+        if (run == null) return null;
+        // Threads started by earlier processors may outlive them, and still carry their context.
+        ProcessorContext context = THREAD_CONTEXT.get();
+        return context == run.context ? context : null;
+    }
+
+    /**
+     * Get the context of the running processor, if the current thread is acting for it.
+     */
+    @Nullable
+    private static ProcessorContext currentContext() {
+        ActiveRun run = active;
+        if (run == null) return null;
+        ProcessorContext context = threadContext();
+        if (context != null) return context;
+
+        // Pool threads it handed work to, which were started before the processor.
+        boolean processorCode = STACK_WALKER.walk(frames -> frames.anyMatch(e -> e.getDeclaringClass().getClassLoader() == run.loader));
+        return processorCode ? run.context : null;
+    }
+
+    private static URL[] toUrls(List<Path> classpath) throws IOException {
+        URL[] urls = new URL[classpath.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = classpath.get(i).toUri().toURL();
+        }
+        return urls;
+    }
+
+    private static class ExitException extends SecurityException {
+
+        private ExitException(int status) {
+            super("Processor called System.exit(" + status + ")");
+        }
+    }
+
+    /**
+     * Permits everything, except {@link System#exit} from processor threads.
+     */
+    private static class ExitGuard extends SecurityManager {
+
+        @Override
+        public void checkPermission(Permission perm) {
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+        }
+
+        @Override
+        public void checkExit(int status) {
+            ProcessorContext context = currentContext();
+            if (context != null) {
+                if (context.exitStatus == null) {
+                    context.exitStatus = status;
+                }
+                throw new ExitException(status);
+            }
+        }
+    }
+
+    /**
+     * Sends output from processor threads to their context, everything else to the original stream.
+     */
+    private static class RoutingOutputStream extends OutputStream {
+
+        private final OutputStream parent;
+        private final boolean err;
+
+        private RoutingOutputStream(OutputStream parent, boolean err) {
+            this.parent = parent;
+            this.err = err;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ProcessorContext context = threadContext();
+            if (context == null) {
+                parent.write(b);
+            } else {
+                context.stream(err).write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ProcessorContext context = threadContext();
+            if (context == null) {
+                parent.write(b, off, len);
+            } else {
+                context.stream(err).write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            parent.flush();
+        }
+    }
+
+    private record ActiveRun(ClassLoader loader, ProcessorContext context) { }
+
+    private static class ProcessorContext {
+
+        private final LineOutputStream out;
+        private final LineOutputStream err;
+        @Nullable
+        private volatile Integer exitStatus;
+
+        private ProcessorContext(Consumer<String> out, Consumer<String> err) {
+            this.out = new LineOutputStream(out);
+            this.err = new LineOutputStream(err);
+        }
+
+        private OutputStream stream(boolean err) {
+            return err ? this.err : out;
+        }
+
+        private void flush() {
+            out.flushLine();
+            err.flushLine();
+        }
+    }
+
+    /**
+     * Buffers bytes into lines, the same way {@link net.creeperhost.creeperlauncher.util.StreamGobblerLog} does for child JVMs.
+     */
+    private static class LineOutputStream extends OutputStream {
+
+        private final Consumer<String> output;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private LineOutputStream(Consumer<String> output) {
+            this.output = output;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                flushLine();
+            } else if (b != '\r') {
+                buffer.write(b);
+            }
+        }
+
+        private synchronized void flushLine() {
+            if (buffer.size() == 0) return;
+            output.accept(buffer.toString(Charset.defaultCharset()));
+            buffer.reset();
+        }
+    }
+}
@@ -13,6 +13,8 @@ import org.jetbrains.annotations.Nullable;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
 
 import static org.apache.commons.lang3.StringUtils.appendIfMissing;
 
@@ -35,6 +37,11 @@ public class LegacyForgeInstallTask extends AbstractForgeInstallTask {
         versionName = mcVersion + "-forge" + mcVersion + "-" + forgeVersion;
     }
 
+    @Override
+    public List<Path> getInstanceOutputDirs() {
+        return List.of(instance.getDir().resolve("instmods"), ForgeLegacyLibraryHelper.getLibsDir(instance));
+    }
+
     @Override
     public void execute(@Nullable CancellationToken cancelToken, @Nullable TaskProgressListener listener) throws Throwable {
         assert versionName != null;
@@ -52,9 +59,13 @@ public class LegacyForgeInstallTask extends AbstractForgeInstallTask {
                 .url(appendIfMissing(Constants.CH_MAVEN, "/") + universal.toPath())
                 .dest(instMods.resolve(versionName + ".jar"))
                 .build();
-        if (!dlForge.isRedundant()) {
-            dlForge.execute(cancelToken, null);
-        }
+
+        NewDownloadTask dlForgeVersionJson = NewDownloadTask.builder()
+                .url(Constants.MC_JSONS + "forge-" + mcVersion + ".json")
+                .dest(versionsDir.resolve(versionName).resolve(versionName + ".json"))
+                .withValidation(DownloadValidation.of().withUseETag(true).withUseOnlyIfModified(true))
+                .build();
+        executeInParallel(cancelToken, Stream.of(dlForge, dlForgeVersionJson).filter(e -> !e.isRedundant()).toList());
 
         VersionManifest vanillaManifest = downloadVanilla(versionsDir, mcVersion);
 
@@ -64,15 +75,6 @@ public class LegacyForgeInstallTask extends AbstractForgeInstallTask {
                 StandardCopyOption.REPLACE_EXISTING
         );
 
-        NewDownloadTask dlForgeVersionJson = NewDownloadTask.builder()
-                .url(Constants.MC_JSONS + "forge-" + mcVersion + ".json")
-                .dest(versionsDir.resolve(versionName).resolve(versionName + ".json"))
-                .withValidation(DownloadValidation.of().withUseETag(true).withUseOnlyIfModified(true))
-                .build();
-        if (!dlForgeVersionJson.isRedundant()) {
-            dlForgeVersionJson.execute(cancelToken, null);
-        }
-
         if (cancelToken != null) cancelToken.throwIfCancelled();
 
         ForgeLegacyLibraryHelper.installLegacyLibs(cancelToken, instance, mcVersion);
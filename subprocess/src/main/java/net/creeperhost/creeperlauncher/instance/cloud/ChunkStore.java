@@ -0,0 +1,496 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.io.IOUtils;
+import net.creeperhost.creeperlauncher.install.tasks.TaskProgressListener;
+import net.creeperhost.creeperlauncher.pack.Instance;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudSaveManager.CHUNKED_SIZE_METADATA;
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudSaveManager.HASH_METADATA;
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudSaveManager.LAST_MODIFIED_METADATA;
+
+/**
+ * Syncs large files which change a little at a time as content-defined chunks.
+ * <p>
+ * Files are split with FastCDC, so an edit only changes the chunks around it. Each chunk is
+ * stored once per instance, keyed by its SHA-256, under {@link #PREFIX}. The file's own key
+ * holds a small recipe listing its chunks, marked with {@link CloudSaveManager#CHUNKED_SIZE_METADATA}.
+ * Only chunks the bucket does not already have are uploaded, and only chunks the local file
+ * does not already have are downloaded.
+ * <p>
+ * Chunks no recipe references are deleted by {@link #collectGarbage}.
+ */
+@SuppressWarnings ("UnstableApiUsage")
+public class ChunkStore {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Where chunks are stored, relative to the instance's prefix.
+     */
+    public static final String PREFIX = ".ftba_chunks/";
+
+    // Region files, which are rewritten in place a few KB at a time.
+    private static final Set<String> CHUNKED_EXTENSIONS = Set.of("mca", "mcr", "mcc");
+    private static final long THRESHOLD = 1024 * 1024;
+
+    // FastCDC with normalized chunking. The masks test the top bits, which depend on the last 64 bytes.
+    private static final int MIN_SIZE = 8 * 1024;
+    private static final int AVG_SIZE = 32 * 1024;
+    private static final int MAX_SIZE = 128 * 1024;
+    private static final long MASK_S = -1L << (64 - 17);
+    private static final long MASK_L = -1L << (64 - 13);
+    private static final long[] GEAR = gearTable();
+
+    private static final int RECIPE_FORMAT = 1;
+    // Another machine may be syncing at the same time. Recipes written this recently are always read,
+    // and chunks uploaded this recently are always kept, their recipe may not be written yet.
+    private static final long GC_GRACE = TimeUnit.DAYS.toMillis(1);
+    private static final long GC_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    private static final ExecutorService CHUNK_POOL = Executors.newFixedThreadPool(8, new ThreadFactoryBuilder().setNameFormat("Cloud Chunk %d").setDaemon(true).build());
+
+    private final CloudSaveManager saveManager;
+    private final S3Client s3Client;
+    private final String s3Bucket;
+    private final String instancePrefix;
+    // Chunk hash -> object, as listed before the sync.
+    private final Map<String, S3Object> listedChunks = new HashMap<>();
+    // Every chunk known to be in the bucket.
+    private final Set<String> remoteChunks = ConcurrentHashMap.newKeySet();
+    // File path -> chunk hashes, for recipes uploaded or downloaded this sync.
+    private final Map<String, List<String>> knownRecipes = new ConcurrentHashMap<>();
+
+    public ChunkStore(CloudSaveManager saveManager, S3Client s3Client, String s3Bucket, Instance instance, Map<String, S3Object> s3ObjectIndex) {
+        this.saveManager = saveManager;
+        this.s3Client = s3Client;
+        this.s3Bucket = s3Bucket;
+        instancePrefix = instance.getUuid() + "/";
+        for (Map.Entry<String, S3Object> entry : s3ObjectIndex.entrySet()) {
+            if (!entry.getKey().startsWith(PREFIX)) continue;
+            String hash = entry.getKey().substring(PREFIX.length());
+            listedChunks.put(hash, entry.getValue());
+            remoteChunks.add(hash);
+        }
+    }
+
+    /**
+     * Checks if the given file should be synced as chunks.
+     *
+     * @param path The file's path, relative to the instance.
+     * @param size The file's size.
+     * @return If the file should be chunked.
+     */
+    public static boolean shouldChunk(String path, long size) {
+        if (size < THRESHOLD) return false;
+        int dot = path.lastIndexOf('.');
+        return dot != -1 && CHUNKED_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Upload the given file as chunks, followed by its recipe.
+     *
+     * @param file     The file.
+     * @param path     The file's path, relative to the instance.
+     * @param listener The progress listener.
+     * @return What was uploaded.
+     * @throws IOException If an IO error occurs.
+     */
+    public CloudSaveManager.UploadResult upload(Path file, String path, @Nullable TaskProgressListener listener) throws IOException {
+        long len = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        Chunking chunking = chunk(file);
+
+        // Only new chunks are read again.
+        Map<String, Chunk> missing = new LinkedHashMap<>();
+        for (Chunk chunk : chunking.chunks) {
+            if (!remoteChunks.contains(chunk.sha256)) {
+                missing.putIfAbsent(chunk.sha256, chunk);
+            }
+        }
+        long missingLen = missing.values().stream().mapToLong(Chunk::size).sum();
+        LOGGER.info("Uploading {} of {} chunks for {}.", missing.size(), chunking.chunks.size(), path);
+
+        AtomicLong transferred = new AtomicLong(len - missingLen);
+        if (listener != null) {
+            listener.start(len);
+            listener.update(transferred.get());
+        }
+        try (FileChannel channel = FileChannel.open(file)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>(missing.size());
+            for (Chunk chunk : missing.values()) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    byte[] bytes = readChunk(channel, chunk);
+                    if (!Hashing.sha256().hashBytes(bytes).toString().equals(chunk.sha256)) {
+                        throw new CompletionException(new IOException("File " + file + " changed during upload."));
+                    }
+                    s3Client.putObject(e -> e.bucket(s3Bucket).key(instancePrefix + PREFIX + chunk.sha256).contentLength((long) bytes.length), RequestBody.fromBytes(bytes));
+                    remoteChunks.add(chunk.sha256);
+                    long done = transferred.addAndGet(chunk.size);
+                    if (listener != null) {
+                        synchronized (listener) {
+                            listener.update(done);
+                        }
+                    }
+                }, CHUNK_POOL));
+            }
+            join(futures, "Failed to upload chunks for " + path);
+        }
+
+        List<ChunkRef> refs = new ArrayList<>(chunking.chunks.size());
+        for (Chunk chunk : chunking.chunks) {
+            refs.add(new ChunkRef(chunk.sha256, chunk.size));
+        }
+        Recipe recipe = new Recipe(RECIPE_FORMAT, len, chunking.sha256.toString(), refs);
+        byte[] recipeBytes = GSON.toJson(recipe).getBytes(StandardCharsets.UTF_8);
+        Map<String, String> metadata = Map.of(
+                HASH_METADATA, recipe.sha256,
+                LAST_MODIFIED_METADATA, Long.toString(lastModified),
+                CHUNKED_SIZE_METADATA, Long.toString(len)
+        );
+        String eTag = s3Client.putObject(e -> e
+                .bucket(s3Bucket)
+                .key(instancePrefix + path)
+                .contentLength((long) recipeBytes.length)
+                .contentType("application/json")
+                .metadata(metadata), RequestBody.fromBytes(recipeBytes)
+        ).eTag();
+        knownRecipes.put(path, chunkHashes(recipe));
+        if (listener != null) {
+            listener.finish(len);
+        }
+        return new CloudSaveManager.UploadResult(eTag, recipe.sha256, len, lastModified, true, null);
+    }
+
+    /**
+     * Download the given recipe, and reassemble its file.
+     * <p>
+     * Chunks the existing file already has are copied from it, the rest are downloaded.
+     *
+     * @param file     The file to download to.
+     * @param s3Object The file's recipe.
+     * @param path     The file's path, relative to the instance.
+     * @param listener The progress listener.
+     * @return The SHA-256 of the reassembled file.
+     * @throws IOException If an IO error occurs, or the file fails validation.
+     */
+    public HashCode download(Path file, S3Object s3Object, String path, @Nullable TaskProgressListener listener) throws IOException {
+        ResponseBytes<GetObjectResponse> response = s3Client.getObjectAsBytes(e -> e.bucket(s3Bucket).key(s3Object.key()));
+        Recipe recipe = JsonUtils.parse(GSON, new ByteArrayInputStream(response.asByteArray()), Recipe.class);
+        if (recipe == null || recipe.format != RECIPE_FORMAT || recipe.chunks == null) {
+            throw new IOException("Unsupported chunk recipe for " + s3Object.key());
+        }
+
+        Map<String, Chunk> localChunks = new HashMap<>();
+        if (Files.isRegularFile(file)) {
+            for (Chunk chunk : chunk(file).chunks) {
+                localChunks.putIfAbsent(chunk.sha256, chunk);
+            }
+        }
+
+        // Everything missing is fetched up front, region files are at most a few tens of MB.
+        Map<String, CompletableFuture<byte[]>> fetches = new HashMap<>();
+        long reused = 0;
+        for (ChunkRef ref : recipe.chunks) {
+            if (localChunks.containsKey(ref.sha256)) {
+                reused += ref.size;
+                continue;
+            }
+            fetches.computeIfAbsent(ref.sha256, hash -> CompletableFuture.supplyAsync(() -> fetchChunk(hash), CHUNK_POOL));
+        }
+        LOGGER.info("Downloading {} of {} chunks for {}.", fetches.size(), recipe.chunks.size(), path);
+        if (listener != null) {
+            listener.start(recipe.size);
+            listener.update(reused);
+        }
+
+        Path tempFile = file.resolveSibling("__tmp_" + file.getFileName());
+        Hasher hasher = Hashing.sha256().newHasher();
+        try {
+            long written = 0;
+            try (OutputStream os = Files.newOutputStream(IOUtils.makeParents(tempFile));
+                 FileChannel local = localChunks.isEmpty() ? null : FileChannel.open(file)) {
+                for (ChunkRef ref : recipe.chunks) {
+                    byte[] bytes;
+                    Chunk localChunk = localChunks.get(ref.sha256);
+                    if (localChunk != null) {
+                        assert local != null;
+                        bytes = readChunk(local, localChunk);
+                    } else {
+                        try {
+                            bytes = fetches.get(ref.sha256).join();
+                        } catch (CompletionException ex) {
+                            throw new IOException("Failed to download chunk " + ref.sha256 + " for " + path, ex.getCause());
+                        }
+                    }
+                    hasher.putBytes(bytes);
+                    os.write(bytes);
+                    written += bytes.length;
+                    if (listener != null && localChunk == null) {
+                        listener.update(reused + written);
+                    }
+                }
+            }
+            if (written != recipe.size) {
+                throw new IOException("File failed length validation. Expected: " + recipe.size + " Actual: " + written);
+            }
+            HashCode hash = hasher.hash();
+            if (!hash.toString().equals(recipe.sha256)) {
+                throw new IOException("File failed SHA256 validation. Expected: " + recipe.sha256 + " Actual: " + hash);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+
+            String lastModified = response.response().metadata().get(LAST_MODIFIED_METADATA);
+            if (lastModified != null) {
+                try {
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(Long.parseLong(lastModified)));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("x-last-modified metadata was malformed.", ex);
+                }
+            }
+            knownRecipes.put(path, chunkHashes(recipe));
+            if (listener != null) {
+                listener.finish(recipe.size);
+            }
+            return hash;
+        } finally {
+            // This will only exist if validation failed.
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * If {@link #collectGarbage} should run.
+     *
+     * @param lastCollection When garbage was last collected for this instance.
+     * @return If it should run.
+     */
+    public boolean shouldCollect(long lastCollection) {
+        return !listedChunks.isEmpty() && System.currentTimeMillis() - lastCollection >= GC_INTERVAL;
+    }
+
+    /**
+     * Delete every chunk which no recipe references, and which is older than {@link #GC_GRACE}.
+     * <p>
+     * Recipes are taken from the synced files, and from every object written within {@link #GC_GRACE}
+     * as of a fresh listing. Another machine syncing at the same time may have written recipes this
+     * sync does not know about, which reuse chunks that were already in the bucket.
+     * <p>
+     * Must only be called once the sync has finished. Failures are logged and ignored, nothing
+     * is deleted if any recipe could not be read.
+     *
+     * @param files Every file in the instance after the sync.
+     * @return If garbage was collected.
+     */
+    public boolean collectGarbage(Map<String, SyncIndex.Entry> files) {
+        try {
+            long cutoff = System.currentTimeMillis() - GC_GRACE;
+            Set<String> referenced = ConcurrentHashMap.newKeySet();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Map.Entry<String, SyncIndex.Entry> entry : files.entrySet()) {
+                if (!entry.getValue().chunked) continue;
+
+                List<String> known = knownRecipes.get(entry.getKey());
+                if (known != null) {
+                    referenced.addAll(known);
+                    continue;
+                }
+                futures.add(CompletableFuture.runAsync(() -> referenced.addAll(chunkHashes(readRecipe(entry.getKey()))), CHUNK_POOL));
+            }
+            for (S3Object object : saveManager.listBucket(instancePrefix)) {
+                String path = object.key().substring(instancePrefix.length());
+                if (path.startsWith(PREFIX) || path.equals("sync_manifest.json") || path.equals(RemoteManifest.KEY)) continue;
+
+                Instant modified = object.lastModified();
+                if (modified != null && modified.toEpochMilli() <= cutoff) continue;
+                // Unchanged since this sync, already read above if it's a recipe.
+                SyncIndex.Entry entry = files.get(path);
+                if (entry != null && Objects.equals(entry.eTag, object.eTag())) continue;
+
+                futures.add(CompletableFuture.runAsync(() -> referenced.addAll(readRecentRecipe(path)), CHUNK_POOL));
+            }
+            join(futures, "Failed to read chunk recipes");
+
+            List<S3Object> garbage = new ArrayList<>();
+            for (Map.Entry<String, S3Object> entry : listedChunks.entrySet()) {
+                Instant uploaded = entry.getValue().lastModified();
+                if (referenced.contains(entry.getKey()) || uploaded == null || uploaded.toEpochMilli() > cutoff) continue;
+                garbage.add(entry.getValue());
+            }
+            LOGGER.info("Deleting {} unreferenced chunks of {}.", garbage.size(), listedChunks.size());
+            saveManager.deleteObjects(garbage);
+            return true;
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to collect unreferenced chunks.", ex);
+            return false;
+        }
+    }
+
+    private Recipe readRecipe(String path) {
+        byte[] bytes = s3Client.getObjectAsBytes(e -> e.bucket(s3Bucket).key(instancePrefix + path)).asByteArray();
+        Recipe recipe = GSON.fromJson(new String(bytes, StandardCharsets.UTF_8), Recipe.class);
+        if (recipe == null || recipe.chunks == null) {
+            throw new CompletionException(new IOException("Unreadable chunk recipe for " + path));
+        }
+        return recipe;
+    }
+
+    // The chunks referenced by an object this sync knows nothing about, if it is a recipe.
+    private List<String> readRecentRecipe(String path) {
+        try {
+            HeadObjectResponse head = s3Client.headObject(e -> e.bucket(s3Bucket).key(instancePrefix + path));
+            if (!head.hasMetadata() || !head.metadata().containsKey(CHUNKED_SIZE_METADATA)) return List.of();
+            return chunkHashes(readRecipe(path));
+        } catch (S3Exception ex) {
+            // Deleted since it was listed, it no longer references anything.
+            if (ex.statusCode() == 404) return List.of();
+            throw ex;
+        }
+    }
+
+    private byte[] fetchChunk(String hash) {
+        byte[] bytes = s3Client.getObjectAsBytes(e -> e.bucket(s3Bucket).key(instancePrefix + PREFIX + hash)).asByteArray();
+        if (!Hashing.sha256().hashBytes(bytes).toString().equals(hash)) {
+            throw new CompletionException(new IOException("Chunk " + hash + " failed SHA256 validation."));
+        }
+        return bytes;
+    }
+
+    private static List<String> chunkHashes(Recipe recipe) {
+        List<String> hashes = new ArrayList<>(recipe.chunks.size());
+        for (ChunkRef ref : recipe.chunks) {
+            hashes.add(ref.sha256);
+        }
+        return hashes;
+    }
+
+    private static void join(List<CompletableFuture<Void>> futures, String message) throws IOException {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException ex) {
+            futures.forEach(e -> e.cancel(false));
+            throw new IOException(message, ex.getCause());
+        }
+    }
+
+    private static byte[] readChunk(FileChannel channel, Chunk chunk) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(chunk.size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, chunk.offset + buffer.position()) == -1) {
+                    throw new IOException("Unexpected end of file.");
+                }
+            }
+            return buffer.array();
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    /**
+     * Split the given file into content-defined chunks, hashing the whole file in the same pass.
+     *
+     * @param file The file.
+     * @return The chunks, and the file's SHA-256.
+     * @throws IOException If an IO error occurs.
+     */
+    static Chunking chunk(Path file) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        Hasher fileHasher = Hashing.sha256().newHasher();
+        byte[] buffer = new byte[MAX_SIZE];
+        int len = 0;
+        long offset = 0;
+        boolean eof = false;
+        try (InputStream is = Files.newInputStream(file)) {
+            while (true) {
+                while (!eof && len < buffer.length) {
+                    int read = is.read(buffer, len, buffer.length - len);
+                    if (read == -1) {
+                        eof = true;
+                    } else {
+                        len += read;
+                    }
+                }
+                if (len == 0) break;
+
+                int cut = findCut(buffer, len);
+                fileHasher.putBytes(buffer, 0, cut);
+                chunks.add(new Chunk(offset, cut, Hashing.sha256().hashBytes(buffer, 0, cut).toString()));
+                offset += cut;
+                System.arraycopy(buffer, cut, buffer, 0, len - cut);
+                len -= cut;
+            }
+        }
+        return new Chunking(chunks, fileHasher.hash());
+    }
+
+    private static int findCut(byte[] buffer, int len) {
+        if (len <= MIN_SIZE) return len;
+
+        long fp = 0;
+        int normal = Math.min(AVG_SIZE, len);
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            fp = (fp << 1) + GEAR[buffer[i] & 0xFF];
+            if ((fp & MASK_S) == 0) return i + 1;
+        }
+        for (; i < len; i++) {
+            fp = (fp << 1) + GEAR[buffer[i] & 0xFF];
+            if ((fp & MASK_L) == 0) return i + 1;
+        }
+        return len;
+    }
+
+    // Must be identical on every machine, SplitMix64 from a fixed seed.
+    private static long[] gearTable() {
+        long[] table = new long[256];
+        long state = 0x46544241L; // FTBA
+        for (int i = 0; i < table.length; i++) {
+            long z = (state += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+
+    record Chunk(long offset, int size, String sha256) { }
+
+    record Chunking(List<Chunk> chunks, HashCode sha256) { }
+
+    private record ChunkRef(String sha256, int size) { }
+
+    private record Recipe(int format, long size, String sha256, List<ChunkRef> chunks) { }
+}
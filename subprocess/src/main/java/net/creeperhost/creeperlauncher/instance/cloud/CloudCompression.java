@@ -0,0 +1,136 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Transparent compression of cloud save objects.
+ * <p>
+ * Compressible files are stored gzipped, marked with {@link CloudSaveManager#COMPRESSION_METADATA}.
+ * Their hash, modified time and {@link CloudSaveManager#UNCOMPRESSED_SIZE_METADATA} metadata
+ * describe the uncompressed file, so comparisons are unaffected.
+ * <p>
+ * Anything which is already compressed is stored as-is. This is decided from the extension,
+ * the file's magic bytes, and the byte entropy of its start.
+ */
+public class CloudCompression {
+
+    public static final String GZIP = "gzip";
+
+    /**
+     * Files outside these bounds are never compressed. Compressed files are held in memory.
+     */
+    private static final long MIN_SIZE = 1024;
+    private static final long MAX_SIZE = 16 * 1024 * 1024;
+
+    // Always worth trying, skips the entropy check.
+    private static final Set<String> TEXT_EXTENSIONS = Set.of(
+            "cfg", "conf", "toml", "json", "json5", "txt", "properties", "yml", "yaml",
+            "xml", "csv", "log", "js", "zs", "snbt", "mcmeta", "lang", "ini", "md"
+    );
+    // Never worth trying.
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "jar", "zip", "gz", "xz", "bz2", "zst", "7z", "rar", "png", "jpg", "jpeg", "ogg", "mp3", "mca", "mcr", "mcc"
+    );
+    private static final List<byte[]> COMPRESSED_MAGIC = List.of(
+            new byte[] { 0x1F, (byte) 0x8B },                   // gzip, most .dat and .nbt files.
+            new byte[] { 0x50, 0x4B, 0x03, 0x04 },              // zip
+            new byte[] { 0x28, (byte) 0xB5, 0x2F, (byte) 0xFD }, // zstd
+            new byte[] { (byte) 0xFD, 0x37, 0x7A, 0x58, 0x5A }, // xz
+            new byte[] { 0x42, 0x5A, 0x68 },                    // bzip2
+            new byte[] { (byte) 0x89, 0x50, 0x4E, 0x47 },       // png
+            new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF }, // jpeg
+            new byte[] { 0x4F, 0x67, 0x67, 0x53 }               // ogg
+    );
+
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    // Bits per byte, above which the file is assumed to be already compressed, or random.
+    private static final double MAX_ENTROPY = 7.2;
+    // Compressed files must be at least this much smaller to be worth decompressing.
+    private static final double MAX_RATIO = 0.9;
+
+    /**
+     * Checks if the given file is a candidate for compression, without reading it.
+     *
+     * @param file The file.
+     * @param len  The file's length.
+     * @return If {@link #compress} should be tried.
+     */
+    public static boolean shouldTry(Path file, long len) {
+        if (len < MIN_SIZE || len > MAX_SIZE) return false;
+        return !COMPRESSED_EXTENSIONS.contains(extension(file));
+    }
+
+    /**
+     * Compress the given file's contents, if it's worth it.
+     *
+     * @param file The file.
+     * @param raw  The file's contents.
+     * @return The gzipped contents, or {@code null} if they should be stored as-is.
+     */
+    @Nullable
+    public static byte[] compress(Path file, byte[] raw) throws IOException {
+        for (byte[] magic : COMPRESSED_MAGIC) {
+            if (startsWith(raw, magic)) return null;
+        }
+        if (!TEXT_EXTENSIONS.contains(extension(file)) && entropy(raw, Math.min(raw.length, SAMPLE_SIZE)) > MAX_ENTROPY) return null;
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(raw.length / 2);
+        try (GZIPOutputStream os = new GZIPOutputStream(bos)) {
+            os.write(raw);
+        }
+        if (bos.size() > raw.length * MAX_RATIO) return null;
+        return bos.toByteArray();
+    }
+
+    /**
+     * Wrap the given object stream to decompress it, according to its metadata.
+     *
+     * @param is          The object's stream.
+     * @param compression The object's {@link CloudSaveManager#COMPRESSION_METADATA}, if any.
+     * @return The decompressed stream.
+     * @throws IOException If the compression is unknown.
+     */
+    public static InputStream decompress(InputStream is, @Nullable String compression) throws IOException {
+        if (compression == null) return is;
+        if (compression.equals(GZIP)) return new GZIPInputStream(is);
+        throw new IOException("Unsupported compression: " + compression);
+    }
+
+    private static double entropy(byte[] bytes, int len) {
+        int[] counts = new int[256];
+        for (int i = 0; i < len; i++) {
+            counts[bytes[i] & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count == 0) continue;
+            double p = (double) count / len;
+            entropy -= p * (Math.log(p) / Math.log(2));
+        }
+        return entropy;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot == -1 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
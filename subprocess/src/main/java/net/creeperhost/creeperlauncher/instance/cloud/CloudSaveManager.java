@@ -4,7 +4,11 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonObject;
 import net.covers1624.quack.collection.FastStream;
@@ -23,13 +27,17 @@ import net.creeperhost.creeperlauncher.api.handlers.instances.InstalledInstances
 import net.creeperhost.creeperlauncher.data.InstanceJson;
 import net.creeperhost.creeperlauncher.data.modpack.ModpackVersionManifest;
 import net.creeperhost.creeperlauncher.install.OperationProgressTracker;
+import net.creeperhost.creeperlauncher.install.tasks.Task;
 import net.creeperhost.creeperlauncher.install.tasks.TaskProgressListener;
 import net.creeperhost.creeperlauncher.instance.cloud.CloudSaveManager.SyncResult.ResultType;
 import net.creeperhost.creeperlauncher.instance.cloud.CloudSyncOperation.SyncDirection;
+import net.creeperhost.creeperlauncher.pack.CancellationToken;
 import net.creeperhost.creeperlauncher.pack.Instance;
+import net.creeperhost.creeperlauncher.util.FileUtils;
 import net.creeperhost.creeperlauncher.util.QuackProgressAdapter;
 import net.creeperhost.creeperlauncher.util.s3.OkHTTPS3HttpClient;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
@@ -46,9 +54,12 @@ import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -56,12 +67,16 @@ import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.FileTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static net.covers1624.quack.util.SneakyUtils.sneak;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 /**
@@ -81,6 +96,17 @@ public final class CloudSaveManager {
     public static final String HASH_METADATA = "x-sha256";
     public static final String LAST_MODIFIED_METADATA = "x-last-modified";
     public static final String REAL_NAME_METADATA = "x-real-name";
+    // Present on chunk recipes, the size of the file the recipe describes.
+    public static final String CHUNKED_SIZE_METADATA = "x-chunked-size";
+    // Present on compressed objects, see CloudCompression.
+    public static final String COMPRESSION_METADATA = "x-compression";
+    public static final String UNCOMPRESSED_SIZE_METADATA = "x-uncompressed-size";
+
+    // Cached instance.json and version.json of cloud instances, relative to the data dir.
+    private static final String INSTANCE_CACHE_DIR = ".cloud_instance_cache";
+
+    // The largest object S3 can copy in a single request.
+    private static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024;
 
     @Nullable
     private String s3Host;
@@ -93,9 +119,15 @@ public final class CloudSaveManager {
 
     @Nullable
     private S3Client s3Client;
+    @Nullable
+    private MultipartUploader multipartUploader;
+    @Nullable
+    private RangedDownloader rangedDownloader;
 
     private final Map<UUID, SyncEntry> syncOperations = new HashMap<>();
     private final Map<UUID, CompletableFuture<Void>> removeOperations = new HashMap<>();
+    private final Map<UUID, DirtyTracker> dirtyTrackers = new ConcurrentHashMap<>();
+    private final Map<UUID, TrickleSync> trickleSyncs = new ConcurrentHashMap<>();
 
     @Nullable
     private CompletableFuture<Void> pollFuture;
@@ -156,6 +188,8 @@ public final class CloudSaveManager {
                     .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(s3Key, s3Secret)))
                     .httpClient(new OkHTTPS3HttpClient(Constants::httpClient));
             s3Client = builder.build();
+            multipartUploader = new MultipartUploader(s3Client, s3Bucket, Constants.getDataDir().resolve(".cloud_uploads.json"));
+            rangedDownloader = new RangedDownloader(s3Client, s3Bucket);
             LOGGER.info("Cloud saves configured!");
             pollCloudInstances();
         } catch (Throwable ex) {
@@ -209,6 +243,11 @@ public final class CloudSaveManager {
                 } catch (IOException ex) {
                     LOGGER.error("Failed to delete sync_manifest.json", ex);
                 }
+                SyncIndex.invalidate(instance);
+                DirtyTracker tracker = dirtyTrackers.remove(instance.getUuid());
+                if (tracker != null) {
+                    tracker.close();
+                }
             }, EXECUTOR);
 
             future = future.thenRunAsync(() -> {
@@ -246,6 +285,10 @@ public final class CloudSaveManager {
                 syncOperations.remove(instance.getUuid());
             }
         }
+        if (result.type == ResultType.SUCCESS) {
+            // Start watching as early as possible, usually before the instance is launched, so the next sync knows what the game wrote.
+            getDirtyTracker(instance);
+        }
     }
 
     public boolean isCloudPollInProgress() {
@@ -261,17 +304,17 @@ public final class CloudSaveManager {
         }
 
         return pollFuture = CompletableFuture.runAsync(() -> {
+            if (multipartUploader != null) {
+                multipartUploader.abortAbandoned();
+            }
             OperationProgressTracker tracker = new OperationProgressTracker("cloud_poll", Map.of());
-            long bucketSize = -1;
             try {
                 Set<String> instancesOnS3 = new HashSet<>();
-                List<S3Object> index;
                 try {
+                    // Only the top level prefixes, instead of every object of every instance.
                     Matcher matcher = INSTANCE_UUID_REGEX.matcher("");
-                    index = listBucket("");
-                    for (S3Object s3Object : index) {
-                        bucketSize += s3Object.size();
-                        matcher.reset(s3Object.key());
+                    for (String prefix : listPrefixes("")) {
+                        matcher.reset(prefix);
                         if (!matcher.find()) continue;
                         String uuid = matcher.group(1);
                         instancesOnS3.add(uuid);
@@ -290,7 +333,8 @@ public final class CloudSaveManager {
                     // Remove any synced instances.
                     missingInstances.remove(instance.getUuid().toString());
                 }
-                List<Instance> newInstances = new ArrayList<>();
+                pruneInstanceCache(instancesOnS3);
+                Map<String, CompletableFuture<Pair<InstanceJson, ModpackVersionManifest>>> pending = new LinkedHashMap<>();
                 // Make sure the directories the un synced cloud instances would use, don't exist, or are empty.
                 Path instancesDir = Settings.getInstancesDir();
                 for (String key : missingInstances) {
@@ -314,32 +358,24 @@ public final class CloudSaveManager {
                         }
                     }
 
-                    Map<String, S3Object> objects = FastStream.of(index)
-                            .filter(e -> e.key().startsWith(key))
-                            .toMap(e -> StringUtils.stripStart(e.key(), key + "/"), e -> e);
-
-                    S3Object manifest = objects.get("instance.json");
-                    if (manifest == null) {
-                        LOGGER.warn("Error loading cloud save list. Cloud instance {} is missing instance.json file. Loading impossible.", key);
-                        continue;
-                    }
-
-                    S3Object version = objects.get("version.json");
-                    if (version == null) {
-                        LOGGER.warn("Error loading cloud save list. Cloud instance {} is missing version.json file. Loading impossible.", key);
+                    pending.put(key, CompletableFuture.supplyAsync(sneak(() -> loadCloudInstance(key)), Task.TASK_POOL));
+                }
+                List<Instance> newInstances = new ArrayList<>();
+                for (Map.Entry<String, CompletableFuture<Pair<InstanceJson, ModpackVersionManifest>>> entry : pending.entrySet()) {
+                    String key = entry.getKey();
+                    Pair<InstanceJson, ModpackVersionManifest> manifests;
+                    try {
+                        manifests = entry.getValue().join();
+                    } catch (CompletionException ex) {
+                        LOGGER.warn("Failed to load pending cloud instance {}.", key, ex.getCause());
                         continue;
                     }
+                    if (manifests == null) continue;
 
-                    try {
-                        InstanceJson instanceManifest = InstanceJson.load(downloadToBytes(manifest));
-                        ModpackVersionManifest versionManifest = JsonUtils.parse(ModpackVersionManifest.GSON, new ByteArrayInputStream(downloadToBytes(version)), ModpackVersionManifest.class);
-                        LOGGER.info("Loaded pending cloud instance {}.", key);
-                        Instance instance = new Instance(instanceDir, instanceManifest, versionManifest);
-                        Instances.addInstance(instance);
-                        newInstances.add(instance);
-                    } catch (IOException ex) {
-                        LOGGER.warn("Failed to load pending cloud instance {}.", key, ex);
-                    }
+                    LOGGER.info("Loaded pending cloud instance {}.", key);
+                    Instance instance = new Instance(instancesDir.resolve(key), manifests.getLeft(), manifests.getRight());
+                    Instances.addInstance(instance);
+                    newInstances.add(instance);
                 }
                 List<InstanceJson> instanceJsons = new ArrayList<>();
                 if (!newInstances.isEmpty()) {
@@ -357,6 +393,7 @@ public final class CloudSaveManager {
                             instance.props.cloudSaves = false;
                             instance.saveJson();
                             Files.deleteIfExists(instance.path.resolve("sync_manifest.json"));
+                            SyncIndex.invalidate(instance);
                         } catch (IOException ex) {
                             LOGGER.error("Failed to disable cloud saves for instance which has had its remote files deleted.", ex);
                         }
@@ -366,13 +403,102 @@ public final class CloudSaveManager {
                 if (!instanceJsons.isEmpty() || !removedPending.isEmpty()) {
                     Settings.webSocketAPI.sendMessage(new CloudSavesReloadedData(instanceJsons, removedPending));
                 }
-                Settings.webSocketAPI.sendMessage(new CloudSavesStatsData(bucketSize));
+                // Requires listing every object, so it's not waited on.
+                CompletableFuture.runAsync(this::sendBucketStats, Task.TASK_POOL);
             } finally {
                 tracker.finished();
             }
         }, EXECUTOR);
     }
 
+    /**
+     * Download a pending cloud instance's instance.json and version.json, reusing cached copies if they are unchanged.
+     *
+     * @param uuid The instance's UUID.
+     * @return The instance json and version manifest, or {@code null} if either is missing.
+     * @throws IOException If an IO error occurs.
+     */
+    @Nullable
+    private Pair<InstanceJson, ModpackVersionManifest> loadCloudInstance(String uuid) throws IOException {
+        Path cacheDir = Constants.getDataDir().resolve(INSTANCE_CACHE_DIR).resolve(uuid);
+        byte[] manifest = downloadCached(uuid + "/instance.json", cacheDir.resolve("instance.json"));
+        if (manifest == null) {
+            LOGGER.warn("Error loading cloud save list. Cloud instance {} is missing instance.json file. Loading impossible.", uuid);
+            return null;
+        }
+        byte[] version = downloadCached(uuid + "/version.json", cacheDir.resolve("version.json"));
+        if (version == null) {
+            LOGGER.warn("Error loading cloud save list. Cloud instance {} is missing version.json file. Loading impossible.", uuid);
+            return null;
+        }
+        return Pair.of(
+                InstanceJson.load(manifest),
+                JsonUtils.parse(ModpackVersionManifest.GSON, new ByteArrayInputStream(version), ModpackVersionManifest.class)
+        );
+    }
+
+    /**
+     * Download the given object, unless the cached copy is still current.
+     * <p>
+     * The object's ETag is cached alongside it, so an unchanged object costs a single conditional request.
+     *
+     * @param key       The object's key.
+     * @param cacheFile The file to cache the object's content in.
+     * @return The object's content, or {@code null} if it does not exist.
+     * @throws IOException If an IO error occurs.
+     */
+    @Nullable
+    private byte[] downloadCached(String key, Path cacheFile) throws IOException {
+        assert s3Client != null;
+        Path eTagFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".etag");
+        String cachedETag = Files.exists(cacheFile) && Files.exists(eTagFile) ? Files.readString(eTagFile) : null;
+        try (ResponseInputStream<GetObjectResponse> is = s3Client.getObject(e -> e.bucket(s3Bucket).key(key).ifNoneMatch(cachedETag))) {
+            GetObjectResponse response = is.response();
+            String compression = response.hasMetadata() ? response.metadata().get(COMPRESSION_METADATA) : null;
+            byte[] bytes = IOUtils.toBytes(CloudCompression.decompress(is, compression));
+            // Content first, a stale ETag just means downloading it again.
+            Files.write(IOUtils.makeParents(cacheFile), bytes);
+            Files.writeString(eTagFile, response.eTag());
+            return bytes;
+        } catch (NoSuchKeyException ex) {
+            return null;
+        } catch (S3Exception ex) {
+            if (ex.statusCode() != 304) throw ex;
+            // Not modified.
+            return Files.readAllBytes(cacheFile);
+        }
+    }
+
+    /**
+     * Delete cached instance files for instances which no longer exist remotely.
+     */
+    private static void pruneInstanceCache(Set<String> instancesOnS3) {
+        Path cacheDir = Constants.getDataDir().resolve(INSTANCE_CACHE_DIR);
+        if (Files.notExists(cacheDir)) return;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir)) {
+            for (Path dir : stream) {
+                if (instancesOnS3.contains(dir.getFileName().toString())) continue;
+
+                FileUtils.deleteDirectory(dir);
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to prune cloud instance cache.", ex);
+        }
+    }
+
+    private void sendBucketStats() {
+        try {
+            long bucketSize = 0;
+            for (S3Object s3Object : listBucket("")) {
+                bucketSize += s3Object.size();
+            }
+            Settings.webSocketAPI.sendMessage(new CloudSavesStatsData(bucketSize));
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to compute cloud save usage.", ex);
+        }
+    }
+
     public boolean isSyncing(UUID uuid) {
         return syncOperations.containsKey(uuid);
     }
@@ -381,32 +507,82 @@ public final class CloudSaveManager {
         return s3Client != null;
     }
 
-    public void uploadFile(Path file, String destKey, @Nullable TaskProgressListener listener) throws IOException {
+    /**
+     * Upload the given file, hashing it as it's read.
+     *
+     * @param file     The file.
+     * @param destKey  The key to upload to.
+     * @param listener The progress listener.
+     * @return What was uploaded.
+     * @throws IOException If an IO error occurs.
+     */
+    public UploadResult uploadFile(Path file, String destKey, @Nullable TaskProgressListener listener) throws IOException {
+        return uploadFile(file, destKey, null, listener);
+    }
+
+    /**
+     * Upload the given file.
+     * <p>
+     * The file is only read once. Small compressible files are read into memory, then hashed and
+     * compressed from there, see {@link CloudCompression}. Anything else is hashed as it's uploaded,
+     * files larger than {@link MultipartUploader#THRESHOLD} in parts.
+     * <p>
+     * If the hash was not already known, or the file changed since it was hashed, the hash metadata
+     * is set afterwards with an in-place copy.
+     *
+     * @param file      The file.
+     * @param destKey   The key to upload to.
+     * @param knownHash The SHA-256 of the file, if already known.
+     * @param listener  The progress listener.
+     * @return What was uploaded.
+     * @throws IOException If an IO error occurs.
+     */
+    public UploadResult uploadFile(Path file, String destKey, @Nullable HashCode knownHash, @Nullable TaskProgressListener listener) throws IOException {
         assert s3Client != null;
-        Map<String, String> metadata = new HashMap<>();
         long len = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        if (Settings.getCloudSaveCompression() && CloudCompression.shouldTry(file, len)) {
+            // Small enough to hold in memory, hashed and compressed from the same read.
+            return uploadContents(file, Files.readAllBytes(file), lastModified, destKey, null, null, listener);
+        }
+
+        Map<String, String> metadata = new HashMap<>();
         metadata.put(Header.CONTENT_LENGTH, String.valueOf(len));
-        String sha256 = HashUtils.hash(Hashing.sha256(), file).toString();
-        metadata.put(HASH_METADATA, sha256);
-        metadata.put(LAST_MODIFIED_METADATA, Long.toString(Files.getLastModifiedTime(file).toMillis()));
+        metadata.put(LAST_MODIFIED_METADATA, Long.toString(lastModified));
+        if (knownHash != null) {
+            metadata.put(HASH_METADATA, knownHash.toString());
+        }
 
-        PutObjectRequest.Builder builder = PutObjectRequest.builder()
-                .bucket(s3Bucket)
-                .key(destKey)
-                .contentLength(len)
-                .contentType(Files.probeContentType(file))
-                .metadata(metadata);
+        String contentType = Files.probeContentType(file);
+        String eTag;
+        HashCode sha256;
+        if (len >= MultipartUploader.THRESHOLD && multipartUploader != null) {
+            MultipartUploader.Result result = multipartUploader.upload(file, destKey, contentType, metadata, len, lastModified, listener);
+            eTag = result.eTag();
+            sha256 = result.sha256();
+        } else {
+            if (multipartUploader != null) {
+                // The file may have been large previously, and shrunk.
+                multipartUploader.abortPending(destKey);
+            }
 
-        RequestBody body;
-        if (listener != null) {
-            body = RequestBody.fromContentProvider(
+            PutObjectRequest.Builder builder = PutObjectRequest.builder()
+                    .bucket(s3Bucket)
+                    .key(destKey)
+                    .contentLength(len)
+                    .contentType(contentType)
+                    .metadata(metadata);
+
+            AtomicReference<HashingInputStream> lastStream = new AtomicReference<>();
+            RequestBody body = RequestBody.fromContentProvider(
                     () -> {
                         try {
+                            HashingInputStream is = new HashingInputStream(Hashing.sha256(), Files.newInputStream(file));
+                            lastStream.set(is);
+                            if (listener == null) return is;
+
                             listener.start(len);
-                            return new ProgressInputStream(
-                                    Files.newInputStream(file),
-                                    new QuackProgressAdapter(listener)
-                            );
+                            return new ProgressInputStream(is, new QuackProgressAdapter(listener));
                         } catch (IOException ex) {
                             SneakyUtils.throwUnchecked(ex);
                             return null;
@@ -415,34 +591,185 @@ public final class CloudSaveManager {
                     len,
                     Mimetype.getInstance().getMimetype(file)
             );
-        } else {
-            body = RequestBody.fromFile(file);
+
+            eTag = s3Client.putObject(builder.build(), body).eTag();
+            // The SDK may open the stream more than once, the last one is what was sent.
+            sha256 = lastStream.get().hash();
+        }
+
+        if (!sha256.toString().equals(metadata.get(HASH_METADATA))) {
+            if (knownHash != null) {
+                LOGGER.warn("File {} changed since it was hashed, correcting metadata.", file);
+            }
+            metadata.put(HASH_METADATA, sha256.toString());
+            if (len > MAX_COPY_SIZE) {
+                assert multipartUploader != null;
+                eTag = multipartUploader.replaceMetadata(destKey, eTag, contentType, metadata, len);
+            } else {
+                eTag = replaceMetadata(destKey, eTag, contentType, metadata);
+            }
+        }
+        return new UploadResult(eTag, sha256.toString(), len, lastModified, false, null);
+    }
+
+    /**
+     * Upload a file's contents, which have already been read.
+     * <p>
+     * Compressed if enabled and worthwhile, see {@link CloudCompression}.
+     *
+     * @param file         The file the contents were read from.
+     * @param bytes        The contents.
+     * @param lastModified The modified time of the file when it was read, in milliseconds.
+     * @param destKey      The key to upload to.
+     * @param limiter      Limits the upload's bandwidth, in bytes per second.
+     * @param token        Abandons the upload part way when cancelled.
+     * @param listener     The progress listener.
+     * @return What was uploaded.
+     * @throws IOException If an IO error occurs.
+     */
+    @SuppressWarnings ("UnstableApiUsage")
+    public UploadResult uploadContents(Path file, byte[] bytes, long lastModified, String destKey, @Nullable RateLimiter limiter, @Nullable CancellationToken token, @Nullable TaskProgressListener listener) throws IOException {
+        assert s3Client != null;
+        if (multipartUploader != null) {
+            multipartUploader.abortPending(destKey);
+        }
+        HashCode sha256 = Hashing.sha256().hashBytes(bytes);
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(Header.CONTENT_LENGTH, String.valueOf(bytes.length));
+        metadata.put(LAST_MODIFIED_METADATA, Long.toString(lastModified));
+        metadata.put(HASH_METADATA, sha256.toString());
+
+        String compression = null;
+        byte[] body = bytes;
+        if (Settings.getCloudSaveCompression() && CloudCompression.shouldTry(file, bytes.length)) {
+            byte[] compressed = CloudCompression.compress(file, bytes);
+            if (compressed != null) {
+                compression = CloudCompression.GZIP;
+                metadata.put(COMPRESSION_METADATA, compression);
+                metadata.put(UNCOMPRESSED_SIZE_METADATA, String.valueOf(bytes.length));
+                body = compressed;
+            }
+        }
+        if (listener != null) {
+            listener.start(body.length);
         }
+        byte[] finalBody = body;
+        String eTag = s3Client.putObject(PutObjectRequest.builder()
+                .bucket(s3Bucket)
+                .key(destKey)
+                .contentLength((long) body.length)
+                .contentType(Files.probeContentType(file))
+                .metadata(metadata)
+                .build(), RequestBody.fromContentProvider(
+                () -> {
+                    InputStream is = new ByteArrayInputStream(finalBody);
+                    if (limiter == null && token == null) return is;
+                    return new ThrottledInputStream(is, limiter, token);
+                },
+                body.length,
+                Mimetype.getInstance().getMimetype(file)
+        )).eTag();
+        if (listener != null) {
+            listener.finish(body.length);
+        }
+        return new UploadResult(eTag, sha256.toString(), bytes.length, lastModified, false, compression);
+    }
 
-        s3Client.putObject(builder.build(), body);
+    // Server side, the object's content is not uploaded again.
+    private String replaceMetadata(String key, String eTag, @Nullable String contentType, Map<String, String> metadata) {
+        assert s3Client != null;
+        return s3Client.copyObject(e -> e
+                .sourceBucket(s3Bucket)
+                .sourceKey(key)
+                .destinationBucket(s3Bucket)
+                .destinationKey(key)
+                .copySourceIfMatch(eTag)
+                .metadataDirective(MetadataDirective.REPLACE)
+                .contentType(contentType)
+                .metadata(metadata)
+        ).copyObjectResult().eTag();
     }
 
-    public void downloadFile(Path file, S3Object s3Object, @Nullable TaskProgressListener listener) throws IOException {
+    /**
+     * Create a chunk store for the given instance.
+     *
+     * @param instance      The instance.
+     * @param s3ObjectIndex The instance's objects, relative to its prefix.
+     * @return The chunk store.
+     */
+    public ChunkStore createChunkStore(Instance instance, Map<String, S3Object> s3ObjectIndex) {
         assert s3Client != null;
+        return new ChunkStore(this, s3Client, s3Bucket, instance, s3ObjectIndex);
+    }
+
+    /**
+     * Upload the given bytes in a single request.
+     *
+     * @param bytes   The bytes.
+     * @param destKey The key to upload to.
+     * @return The ETag of the uploaded object.
+     */
+    public String uploadBytes(byte[] bytes, String destKey) {
+        assert s3Client != null;
+        return s3Client.putObject(e -> e.bucket(s3Bucket).key(destKey).contentLength((long) bytes.length), RequestBody.fromBytes(bytes)).eTag();
+    }
+
+    /**
+     * Download the given object.
+     * <p>
+     * Objects larger than {@link RangedDownloader#THRESHOLD} are downloaded in ranges, and can
+     * be resumed from the given partial directory if interrupted.
+     *
+     * @param file       The file to download to.
+     * @param s3Object   The object.
+     * @param partialDir The directory to keep partially downloaded objects in.
+     * @param listener   The progress listener.
+     * @return The SHA-256 of the downloaded file.
+     * @throws IOException If an IO error occurs, or the file fails validation.
+     */
+    public HashCode downloadFile(Path file, S3Object s3Object, Path partialDir, @Nullable TaskProgressListener listener) throws IOException {
+        assert s3Client != null;
+
+        if (s3Object.size() >= RangedDownloader.THRESHOLD && rangedDownloader != null) {
+            String name = Hashing.sha256().hashString(s3Object.key(), StandardCharsets.UTF_8).toString();
+            Path tempFile = partialDir.resolve(name);
+            Path stateFile = partialDir.resolve(name + ".json");
+            RangedDownloader.Result result = rangedDownloader.download(s3Object, tempFile, stateFile, listener);
+            try {
+                validateAndMove(tempFile, file, result.sha256(), result.metadata());
+            } catch (IOException ex) {
+                // Nothing to resume, it has to be downloaded again.
+                Files.deleteIfExists(tempFile);
+                throw ex;
+            }
+            return result.sha256();
+        }
 
         Path tempFile = file.resolveSibling("__tmp_" + file.getFileName());
         try (ResponseInputStream<GetObjectResponse> is = s3Client.getObject(e -> e.bucket(s3Bucket).key(s3Object.key()))) {
             GetObjectResponse response = is.response();
+            Map<String, String> metadata = response.hasMetadata() ? response.metadata() : Map.of();
             if (listener != null) {
                 listener.start(response.contentLength());
             }
-            long transferred = 0;
-            try (OutputStream os = Files.newOutputStream(IOUtils.makeParents(tempFile))) {
+            // Hashed as it's written, so it never needs to be read back.
+            Hasher hasher = Hashing.sha256().newHasher();
+            CountingInputStream counting = new CountingInputStream(is);
+            try (InputStream data = CloudCompression.decompress(counting, metadata.get(COMPRESSION_METADATA));
+                 OutputStream os = Files.newOutputStream(IOUtils.makeParents(tempFile))) {
                 byte[] buffer = IOUtils.getCachedBuffer();
                 int len;
-                while ((len = is.read(buffer)) != -1) {
-                    transferred += len;
+                while ((len = data.read(buffer)) != -1) {
                     if (listener != null) {
-                        listener.update(transferred);
+                        listener.update(counting.getCount());
                     }
+                    hasher.putBytes(buffer, 0, len);
                     os.write(buffer, 0, len);
                 }
+                // gzip may stop short of the end of the object.
+                counting.transferTo(OutputStream.nullOutputStream());
             }
+            long transferred = counting.getCount();
             if (listener != null) {
                 listener.finish(transferred);
             }
@@ -450,27 +777,9 @@ public final class CloudSaveManager {
                 throw new IOException("File failed length validation. Expected: " + response.contentLength() + " Actual: " + transferred);
             }
 
-            String expectedHash = null;
-            String lastModified = null;
-            if (response.hasMetadata()) {
-                expectedHash = response.metadata().get(HASH_METADATA);
-                lastModified = response.metadata().get(LAST_MODIFIED_METADATA);
-            }
-            if (expectedHash != null) {
-                HashCode actualHash = HashUtils.hash(Hashing.sha1(), tempFile);
-                if (HashUtils.equals(actualHash, expectedHash)) {
-                    throw new IOException("File failed SHA1 validation. Expected: " + expectedHash + " Actual: " + actualHash);
-                }
-            }
-            Files.move(tempFile, IOUtils.makeParents(file), StandardCopyOption.REPLACE_EXISTING);
-
-            if (lastModified != null) {
-                try {
-                    Files.setLastModifiedTime(file, FileTime.fromMillis(Long.parseLong(lastModified)));
-                } catch (NumberFormatException ex) {
-                    throw new IOException("x-last-modified metadata was malformed.", ex);
-                }
-            }
+            HashCode hash = hasher.hash();
+            validateAndMove(tempFile, file, hash, metadata);
+            return hash;
         } finally {
             if (Files.exists(tempFile)) { // This will only exist if validation failed.
                 try {
@@ -482,11 +791,30 @@ public final class CloudSaveManager {
         }
     }
 
+    private static void validateAndMove(Path tempFile, Path file, HashCode actualHash, Map<String, String> metadata) throws IOException {
+        String expectedHash = metadata.get(HASH_METADATA);
+        String lastModified = metadata.get(LAST_MODIFIED_METADATA);
+        if (expectedHash != null && !HashUtils.equals(actualHash, expectedHash)) {
+            throw new IOException("File failed SHA256 validation. Expected: " + expectedHash + " Actual: " + actualHash);
+        }
+        Files.move(tempFile, IOUtils.makeParents(file), StandardCopyOption.REPLACE_EXISTING);
+
+        if (lastModified != null) {
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(Long.parseLong(lastModified)));
+            } catch (NumberFormatException ex) {
+                throw new IOException("x-last-modified metadata was malformed.", ex);
+            }
+        }
+    }
+
     public byte[] downloadToBytes(S3Object s3Object) throws IOException {
         assert s3Client != null;
 
         try (ResponseInputStream<GetObjectResponse> is = s3Client.getObject(e -> e.bucket(s3Bucket).key(s3Object.key()))) {
-            return IOUtils.toBytes(is);
+            GetObjectResponse response = is.response();
+            String compression = response.hasMetadata() ? response.metadata().get(COMPRESSION_METADATA) : null;
+            return IOUtils.toBytes(CloudCompression.decompress(is, compression));
         }
     }
 
@@ -499,6 +827,29 @@ public final class CloudSaveManager {
         return builder.build();
     }
 
+    /**
+     * List the common prefixes directly under the given prefix, delimited by {@code /}.
+     *
+     * @param prefix The prefix.
+     * @return The prefixes, including the trailing {@code /}.
+     */
+    public List<String> listPrefixes(String prefix) {
+        if (s3Client == null) return List.of();
+
+        ImmutableList.Builder<String> prefixes = ImmutableList.builder();
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .prefix(prefix)
+                .delimiter("/")
+                .bucket(s3Bucket)
+                .build();
+        for (ListObjectsV2Response response : s3Client.listObjectsV2Paginator(request)) {
+            for (CommonPrefix commonPrefix : response.commonPrefixes()) {
+                prefixes.add(commonPrefix.prefix());
+            }
+        }
+        return prefixes.build();
+    }
+
     public List<S3Object> listBucket(String prefix) {
         if (s3Client == null) return List.of();
         if (DEBUG) {
@@ -562,15 +913,87 @@ public final class CloudSaveManager {
         return s3Client.headObject(e -> e.bucket(s3Bucket).key(s3Object.key())).metadata();
     }
 
+    /**
+     * Get the change tracker for the given instance, starting it if required.
+     * <p>
+     * Trackers keep running until the launcher exits, so changes made while playing are known to the next sync.
+     *
+     * @param instance The instance.
+     * @return The tracker, or {@code null} if change tracking is disabled.
+     */
+    @Nullable
+    public DirtyTracker getDirtyTracker(Instance instance) {
+        if (!Settings.getCloudSaveWatch()) return null;
+
+        return dirtyTrackers.computeIfAbsent(instance.getUuid(), e -> {
+            DirtyTracker tracker = new DirtyTracker(instance);
+            tracker.start();
+            return tracker;
+        });
+    }
+
+    /**
+     * Start uploading the given instance's changes in the background while it's running, if enabled.
+     *
+     * @param instance The instance.
+     * @see TrickleSync
+     */
+    public void startTrickleSync(Instance instance) {
+        if (!Settings.getCloudSaveTrickle() || !isConfigured()) return;
+
+        TrickleSync trickle = new TrickleSync(this, instance);
+        TrickleSync prev = trickleSyncs.put(instance.getUuid(), trickle);
+        if (prev != null) {
+            prev.stop();
+        }
+        trickle.start();
+    }
+
+    /**
+     * Stop uploading the given instance's changes in the background.
+     * <p>
+     * Blocks until any in progress upload has been abandoned, so a sync can safely start.
+     *
+     * @param instance The instance.
+     */
+    public void stopTrickleSync(Instance instance) {
+        TrickleSync trickle = trickleSyncs.remove(instance.getUuid());
+        if (trickle != null) {
+            trickle.stop();
+        }
+    }
+
     public void close() {
+        for (TrickleSync trickle : trickleSyncs.values()) {
+            trickle.stop();
+        }
+        trickleSyncs.clear();
+        for (DirtyTracker tracker : dirtyTrackers.values()) {
+            tracker.close();
+        }
+        dirtyTrackers.clear();
         if (s3Client != null) {
             // TODO stop any cloud syncs in progress.
             // Perhaps we will need to 'schedule' the shutdown until syncs have finished.
             s3Client.close();
             s3Client = null;
+            multipartUploader = null;
+            rangedDownloader = null;
         }
     }
 
+    /**
+     * The result of uploading a file.
+     *
+     * @param eTag         The ETag of the uploaded object.
+     * @param sha256       The SHA-256 of the uploaded content.
+     * @param size         The size of the uploaded content.
+     * @param lastModified The modified time of the file, in milliseconds, as recorded in the object's metadata.
+     * @param chunked      If the file was uploaded as chunks, see {@link ChunkStore}.
+     * @param compression  How the file was compressed, see {@link CloudCompression}.
+     */
+    public record UploadResult(String eTag, String sha256, long size, long lastModified, boolean chunked, @Nullable String compression) { }
+
     public record SyncResult(ResultType type, String reason) {
 
         public enum ResultType {
@@ -581,6 +1004,41 @@ public final class CloudSaveManager {
         }
     }
 
+    /**
+     * Limits the rate a stream can be read at, and aborts it when cancelled.
+     */
+    @SuppressWarnings ("UnstableApiUsage")
+    private static class ThrottledInputStream extends FilterInputStream {
+
+        @Nullable
+        private final RateLimiter limiter;
+        @Nullable
+        private final CancellationToken token;
+
+        public ThrottledInputStream(InputStream is, @Nullable RateLimiter limiter, @Nullable CancellationToken token) {
+            super(is);
+            this.limiter = limiter;
+            this.token = token;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (token != null && token.isCanceled()) throw new IOException("Upload cancelled.");
+            // Acquire in small steps, so the rate stays smooth and cancellation is noticed quickly.
+            int read = super.read(b, off, Math.min(len, 16 * 1024));
+            if (read > 0 && limiter != null) {
+                limiter.acquire(read);
+            }
+            return read;
+        }
+    }
+
     public static final class SyncEntry {
 
         public final UUID uuid;
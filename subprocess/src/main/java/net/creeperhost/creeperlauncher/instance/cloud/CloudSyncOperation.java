@@ -11,12 +11,14 @@ import net.covers1624.quack.util.HashUtils;
 import net.covers1624.quack.util.LazyValue;
 import net.covers1624.quack.util.SneakyUtils;
 import net.creeperhost.creeperlauncher.CreeperLauncher;
+import net.creeperhost.creeperlauncher.Settings;
 import net.creeperhost.creeperlauncher.data.InstanceJson;
 import net.creeperhost.creeperlauncher.data.modpack.ModpackVersionManifest;
 import net.creeperhost.creeperlauncher.install.OperationProgressTracker;
 import net.creeperhost.creeperlauncher.install.tasks.*;
 import net.creeperhost.creeperlauncher.install.tasks.modloader.ModLoaderInstallTask;
 import net.creeperhost.creeperlauncher.pack.Instance;
+import net.creeperhost.creeperlauncher.util.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
@@ -26,17 +28,24 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.FileVisitResult;
+import java.nio.file.LinkOption;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Stream;
 
 import static net.covers1624.quack.util.SneakyUtils.sneak;
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudSaveManager.CHUNKED_SIZE_METADATA;
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudSaveManager.COMPRESSION_METADATA;
 import static net.creeperhost.creeperlauncher.instance.cloud.CloudSaveManager.HASH_METADATA;
 import static net.creeperhost.creeperlauncher.instance.cloud.CloudSaveManager.LAST_MODIFIED_METADATA;
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudSaveManager.UNCOMPRESSED_SIZE_METADATA;
 import static net.creeperhost.creeperlauncher.instance.cloud.SyncManifest.State.*;
 
 /**
@@ -47,9 +56,19 @@ public class CloudSyncOperation {
     private static final Logger LOGGER = LogManager.getLogger();
     private static final Gson GSON = new Gson();
 
+    /**
+     * Large objects are downloaded here, and kept between syncs if interrupted.
+     */
+    private static final String PARTIAL_DIR = ".ftba/cloud_downloads/";
+
     // All files here need to be lower-case.
     private static final List<String> IGNORED_FILES = List.of(
             "sync_manifest.json", // This is an internal file and managed manually.
+            ".ftba/mod_scan_index.json", // Keyed by local file timestamps.
+            ".ftba/cloud_sync_index.json", // Keyed by local file timestamps.
+            ".ftba/launch_plan.json", // Contains absolute paths for this machine.
+            ".ftba/launch_timelines.json", // Launch profiling, specific to this machine.
+            PARTIAL_DIR,          // Incomplete downloads.
 
             "logs/",              // Can get very large if mods spam logs.
             "backups/",           // Backups are just massive. Lets just not..
@@ -85,6 +104,19 @@ public class CloudSyncOperation {
     private List<FileOperation> uploadOperations = List.of();
     private List<FileOperation> downloadOperations = List.of();
 
+    private SyncIndex syncIndex = new SyncIndex();
+    @Nullable
+    private RemoteManifest remoteFileManifest;
+    @Nullable
+    private ChunkStore chunkStore;
+    @Nullable
+    private DirtyTracker dirtyTracker;
+    // Paths changed since the last sync, or null if the whole instance was indexed.
+    @Nullable
+    private Set<String> changedFiles;
+    // Files which are identical locally and remotely, as they will be indexed after the sync.
+    private Map<String, SyncIndex.Entry> unchangedFiles = Map.of();
+
     public CloudSyncOperation(CloudSaveManager saveManager, Instance instance) {
         this.saveManager = saveManager;
         this.instance = instance;
@@ -106,6 +138,11 @@ public class CloudSyncOperation {
                 byte[] bytes = saveManager.downloadToBytes(syncManifest);
                 remoteManifest = JsonUtils.parse(GSON, new ByteArrayInputStream(bytes), SyncManifest.class);
             }
+            S3Object fileManifest = s3ObjectIndex.get(RemoteManifest.KEY);
+            if (fileManifest != null) {
+                LOGGER.info(" Found remote file manifest.");
+                remoteFileManifest = RemoteManifest.parse(saveManager.downloadToBytes(fileManifest));
+            }
             S3Object instanceManifest = s3ObjectIndex.get("instance.json");
             if (instanceManifest != null) {
                 LOGGER.info(" Found remote instance json.");
@@ -143,7 +180,26 @@ public class CloudSyncOperation {
         LOGGER.info("Detected sync direction: {}", direction);
 
         progressTracker.nextStage(SyncStage.INDEXING_LOCAL);
-        Map<String, LocalFile> instanceFiles = indexInstance();
+        syncIndex = SyncIndex.load(instance);
+        chunkStore = saveManager.createChunkStore(instance, s3ObjectIndex);
+        dirtyTracker = saveManager.getDirtyTracker(instance);
+        changedFiles = dirtyTracker != null ? dirtyTracker.drain() : null;
+        try {
+            computeOperations(s3ObjectIndex);
+        } catch (Throwable ex) {
+            restoreChanges();
+            throw ex;
+        }
+    }
+
+    private void computeOperations(Map<String, S3Object> s3ObjectIndex) throws IOException {
+        Map<String, LocalFile> instanceFiles;
+        if (changedFiles != null && !syncIndex.files.isEmpty()) {
+            LOGGER.info("{} paths changed since last sync.", changedFiles.size());
+            instanceFiles = indexChanged(changedFiles);
+        } else {
+            instanceFiles = indexInstance();
+        }
         progressTracker.nextStage(SyncStage.INDEXING_REMOTE); // TODO, we can update the step progress!
         Map<String, RemoteFile> cloudFiles = indexCloud(s3ObjectIndex);
 
@@ -152,10 +208,38 @@ public class CloudSyncOperation {
         LOGGER.info("Missing remote files: {}", missingRemote);
         Set<String> missingLocal = ImmutableSet.copyOf(Sets.difference(cloudFiles.keySet(), instanceFiles.keySet()));
         LOGGER.info("Missing local files: {}", missingLocal);
-        Set<String> nonMatching = FastStream.of(Sets.intersection(instanceFiles.keySet(), cloudFiles.keySet()))
-                .filterNot(e -> instanceFiles.get(e).matches(cloudFiles.get(e)))
-                .toSet();
+
+        // Anything the index can't vouch for needs its remote metadata, fetch it all up front.
+        Set<String> candidates = new HashSet<>(missingLocal);
+        Set<String> indexedUnchanged = new HashSet<>();
+        for (String path : Sets.intersection(instanceFiles.keySet(), cloudFiles.keySet())) {
+            if (isUnchangedSinceLastSync(instanceFiles.get(path), cloudFiles.get(path))) {
+                indexedUnchanged.add(path);
+            } else {
+                candidates.add(path);
+            }
+        }
+        LOGGER.info("{} files unchanged since last sync, {} to compare.", indexedUnchanged.size(), candidates.size() - missingLocal.size());
+        for (String path : candidates) {
+            cloudFiles.get(path).prefetchMetadata();
+        }
+
+        Map<String, SyncIndex.Entry> unchanged = new HashMap<>();
+        Set<String> nonMatching = new HashSet<>();
+        for (String path : Sets.intersection(instanceFiles.keySet(), cloudFiles.keySet())) {
+            LocalFile local = instanceFiles.get(path);
+            RemoteFile remote = cloudFiles.get(path);
+            if (indexedUnchanged.contains(path)) {
+                SyncIndex.Entry indexed = syncIndex.get(path);
+                unchanged.put(path, local.toIndexEntry(remote.s3Object.eTag(), indexed.chunked, indexed.compression));
+            } else if (local.matches(remote)) {
+                unchanged.put(path, local.toIndexEntry(remote.s3Object.eTag(), remote.isChunked(), remote.compression()));
+            } else {
+                nonMatching.add(path);
+            }
+        }
         LOGGER.info("Non-matching files: {}", nonMatching);
+        unchangedFiles = unchanged;
 
         List<FileOperation> deletes = new ArrayList<>();
         List<FileOperation> uploads = new ArrayList<>();
@@ -233,6 +317,7 @@ public class CloudSyncOperation {
                 JsonUtils.write(GSON, IOUtils.makeParents(syncManifestFile), manifest);
             } catch (IOException ex) {
                 LOGGER.error("Failed to update local sync manifest before sync", ex);
+                restoreChanges();
                 throw ex;
             }
             Throwable syncError = null;
@@ -246,6 +331,7 @@ public class CloudSyncOperation {
             if (syncError == null) {
                 try {
                     long totalSize = 0;
+                    Map<String, SyncIndex.Entry> syncedFiles = new ConcurrentHashMap<>(unchangedFiles);
                     List<Task<Void>> tasks = new LinkedList<>();
                     if (direction == SyncDirection.UPLOAD) {
                         assert downloadOperations.isEmpty();
@@ -268,12 +354,20 @@ public class CloudSyncOperation {
                             tasks.add((cancelToken, listener) -> {
                                 try {
                                     LOGGER.info("Uploading file to S3: {}", op.local.path());
-                                    if (op.remote != null) {
-                                        saveManager.uploadFile(op.local.path, op.remote.s3Object.key(), listener);
+                                    CloudSaveManager.UploadResult result;
+                                    if (chunkStore != null && Settings.getCloudSaveChunking() && ChunkStore.shouldChunk(op.local.path(), op.local.size())) {
+                                        result = chunkStore.upload(op.local.path, op.local.path(), listener);
                                     } else {
-                                        String key = instance.getUuid() + "/" + instance.getDir().relativize(op.local.path);
-                                        saveManager.uploadFile(op.local.path, key, listener);
+                                        HashCode knownHash = op.local.knownHash();
+                                        if (op.remote != null) {
+                                            result = saveManager.uploadFile(op.local.path, op.remote.s3Object.key(), knownHash, listener);
+                                        } else {
+                                            String key = instance.getUuid() + "/" + instance.getDir().relativize(op.local.path);
+                                            result = saveManager.uploadFile(op.local.path, key, knownHash, listener);
+                                        }
                                     }
+                                    // What was actually uploaded, the file may have changed since it was indexed.
+                                    syncedFiles.put(op.local.path(), new SyncIndex.Entry(result.size(), result.lastModified(), result.sha256(), result.eTag(), result.chunked(), result.compression()));
                                 } finally {
                                     progressTracker.stepFinished();
                                 }
@@ -312,10 +406,18 @@ public class CloudSyncOperation {
                                             if (lastModified != null) {
                                                 Files.setLastModifiedTime(path, FileTime.from(lastModified));
                                             }
+                                            syncedFiles.put(op.remote.path(), indexDownloaded(path, hash, op.remote));
                                             return;
                                         }
                                     }
-                                    saveManager.downloadFile(path, op.remote.s3Object, listener);
+                                    HashCode downloaded;
+                                    if (op.remote.isChunked()) {
+                                        assert chunkStore != null;
+                                        downloaded = chunkStore.download(path, op.remote.s3Object, op.remote.path(), listener);
+                                    } else {
+                                        downloaded = saveManager.downloadFile(path, op.remote.s3Object, instance.getDir().resolve(PARTIAL_DIR), listener);
+                                    }
+                                    syncedFiles.put(op.remote.path(), indexDownloaded(path, downloaded, op.remote));
                                 } finally {
                                     progressTracker.stepFinished();
                                 }
@@ -327,6 +429,20 @@ public class CloudSyncOperation {
                     listener.start(totalSize);
                     TaskProgressAggregator aggregator = new ParallelTaskProgressAggregator(listener);
                     ParallelTaskHelper.executeInParallel(null, Task.TASK_POOL, tasks, aggregator);
+
+                    SyncIndex newIndex = new SyncIndex();
+                    newIndex.files.putAll(syncedFiles);
+                    newIndex.lastChunkCollection = syncIndex.lastChunkCollection;
+                    if (chunkStore != null && chunkStore.shouldCollect(newIndex.lastChunkCollection) && chunkStore.collectGarbage(syncedFiles)) {
+                        newIndex.lastChunkCollection = System.currentTimeMillis();
+                    }
+                    if (!newIndex.save(instance) && dirtyTracker != null) {
+                        // Tracked changes are relative to the index we failed to write.
+                        dirtyTracker.invalidate();
+                    }
+                    uploadFileManifest(syncedFiles);
+                    // Anything left over is for objects which no longer need downloading.
+                    FileUtils.deleteDirectory(instance.getDir().resolve(PARTIAL_DIR));
                 } catch (Throwable ex) {
                     LOGGER.error("Failed to process sync, instance may be in an invalid state.", ex);
                     syncError = ex;
@@ -362,6 +478,7 @@ public class CloudSyncOperation {
             }
             if (syncError != null) {
                 LOGGER.error("Sync failed with error: ", syncError);
+                restoreChanges();
                 SneakyUtils.throwUnchecked(syncError);
             }
 
@@ -405,26 +522,78 @@ public class CloudSyncOperation {
     }
 
     private Map<String, LocalFile> indexInstance() throws IOException {
-        ImmutableMap.Builder<String, LocalFile> builder = ImmutableMap.builder();
+        Map<String, LocalFile> files = new HashMap<>();
         Path rootDir = instance.getDir();
         if (Files.notExists(rootDir)) {
-            return builder.build();
+            return files;
         }
-        try (Stream<Path> stream = Files.walk(rootDir)) {
-            stream.forEach(e -> {
-                if (!Files.isDirectory(e)) {
-                    LocalFile path = new LocalFile(e);
-                    // Skip ignored files.
-                    if (shouldSkipFile(path.path().replace('\\', '/'))) return;
+        index(rootDir, files);
+        return files;
+    }
 
-                    builder.put(path.path(), path);
-                }
-            });
+    /**
+     * Index the instance from the sync index, only re-reading the paths which changed since the last sync.
+     */
+    private Map<String, LocalFile> indexChanged(Set<String> changed) throws IOException {
+        Path rootDir = instance.getDir();
+        TreeMap<String, LocalFile> files = new TreeMap<>();
+        for (Map.Entry<String, SyncIndex.Entry> entry : syncIndex.files.entrySet()) {
+            String relPath = entry.getKey();
+            if (shouldSkipFile(relPath.replace('\\', '/'))) continue;
+
+            files.put(relPath, new LocalFile(rootDir.resolve(relPath), relPath, entry.getValue()));
+        }
+        for (String relPath : changed) {
+            // Directories may have been deleted or replaced wholesale, forget everything under them too.
+            files.remove(relPath);
+            String prefix = relPath + rootDir.getFileSystem().getSeparator();
+            files.subMap(prefix, prefix + Character.MAX_VALUE).clear();
+
+            Path path = rootDir.resolve(relPath);
+            if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                index(path, files);
+            }
         }
-        return builder.build();
+        return files;
+    }
+
+    private void index(Path start, Map<String, LocalFile> files) throws IOException {
+        // Walked with attributes, so each file is only stat'd once.
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isDirectory()) return FileVisitResult.CONTINUE;
+
+                String relPath = instance.path.relativize(file).toString();
+                // Skip ignored files.
+                if (shouldSkipFile(relPath.replace('\\', '/'))) return FileVisitResult.CONTINUE;
+
+                files.put(relPath, new LocalFile(file, relPath, attrs, syncIndex.get(relPath)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                LOGGER.warn("Failed to index {}, skipping.", file, ex);
+                return FileVisitResult.CONTINUE;
+            }
+        });
     }
 
-    private static boolean shouldSkipFile(String relpath) {
+    /**
+     * Checks if the given file is unchanged since the last sync, from the sync index alone.
+     */
+    private boolean isUnchangedSinceLastSync(LocalFile local, RemoteFile remote) {
+        SyncIndex.Entry entry = syncIndex.get(local.path());
+        if (entry == null || entry.eTag == null) return false;
+        return local.matchesIndex(entry) && entry.eTag.equals(remote.s3Object.eTag());
+    }
+
+    private static SyncIndex.Entry indexDownloaded(Path path, HashCode hash, RemoteFile remote) throws IOException {
+        return new SyncIndex.Entry(Files.size(path), Files.getLastModifiedTime(path).toMillis(), hash.toString(), remote.s3Object.eTag(), remote.isChunked(), remote.compression());
+    }
+
+    static boolean shouldSkipFile(String relpath) {
         relpath = relpath.toLowerCase(Locale.ROOT);
         for (String ignore : IGNORED_FILES) {
             if (relpath.startsWith(ignore)) {
@@ -436,16 +605,51 @@ public class CloudSyncOperation {
 
     private Map<String, RemoteFile> indexCloud(Map<String, S3Object> s3ObjectIndex) {
         ImmutableMap.Builder<String, RemoteFile> builder = ImmutableMap.builder();
+        int fromManifest = 0;
         for (S3Object s3Object : s3ObjectIndex.values()) {
-            CompletableFuture<Map<String, String>> metadataFuture = CompletableFuture.supplyAsync(() -> saveManager.getMetadata(s3Object), Task.TASK_POOL);
-            RemoteFile path = new RemoteFile(s3Object, metadataFuture);
+            String relPath = s3Object.key().replace(instance.getUuid().toString() + "/", "");
+            // Don't index sync_manifest.json, the file manifest, or chunks.
+            if (relPath.equals("sync_manifest.json") || relPath.equals(RemoteManifest.KEY) || relPath.startsWith(ChunkStore.PREFIX)) continue;
 
-            // Don't index sync_manifest.json
-            if (path.path().equals("sync_manifest.json")) continue;
+            SyncIndex.Entry entry = remoteFileManifest != null ? remoteFileManifest.getValid(relPath, s3Object) : null;
+            if (entry != null) {
+                fromManifest++;
+            }
+            RemoteFile path = new RemoteFile(s3Object, entry);
 
             builder.put(path.path(), path);
         }
-        return builder.build();
+        ImmutableMap<String, RemoteFile> built = builder.build();
+        // Anything else is legacy data, or was changed without updating the manifest.
+        LOGGER.info("Indexed {} of {} remote files from the file manifest.", fromManifest, built.size());
+        return built;
+    }
+
+    /**
+     * Give any changes taken from the dirty tracker back, the sync did not complete.
+     */
+    private void restoreChanges() {
+        if (dirtyTracker == null) return;
+
+        if (changedFiles != null) {
+            dirtyTracker.restore(changedFiles);
+        } else {
+            dirtyTracker.invalidate();
+        }
+    }
+
+    /**
+     * Uploads the file manifest, if it differs from the one the sync started with.
+     * <p>
+     * This is only an optimization, failures are logged and ignored.
+     */
+    private void uploadFileManifest(Map<String, SyncIndex.Entry> files) {
+        try {
+            // A single PUT, so other FTBApp instances will see either the old manifest or the new one.
+            RemoteManifest.uploadIfChanged(remoteFileManifest, files, bytes -> saveManager.uploadBytes(bytes, instance.getUuid() + "/" + RemoteManifest.KEY));
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to upload file manifest.", ex);
+        }
     }
 
     // TODO, Do we really need a sync state for UNFINISHED_DOWNLOAD? Should be safe to just do whatever?
@@ -604,12 +808,37 @@ public class CloudSyncOperation {
 
         private final Path path;
         private final String pathStr;
-        private final LazyValue<HashCode> hash;
+        private final long size;
+        private final Instant lastModified;
+        @Nullable
+        private volatile HashCode hash;
 
-        private LocalFile(Path path) {
+        private LocalFile(Path path, String pathStr, BasicFileAttributes attrs, @Nullable SyncIndex.Entry indexed) {
             this.path = path;
-            pathStr = instance.path.relativize(path).toString();
-            hash = new LazyValue<>(sneak(() -> HashUtils.hash(Hashing.sha256(), path)));
+            this.pathStr = pathStr;
+            size = attrs.size();
+            lastModified = attrs.lastModifiedTime().toInstant();
+            if (indexed != null && matchesIndex(indexed)) {
+                // Unchanged since it was last hashed.
+                hash = HashCode.fromString(indexed.sha256);
+            }
+        }
+
+        private LocalFile(Path path, String pathStr, SyncIndex.Entry indexed) {
+            // Unchanged since the last sync, according to the dirty tracker.
+            this.path = path;
+            this.pathStr = pathStr;
+            size = indexed.size;
+            lastModified = Instant.ofEpochMilli(indexed.lastModified);
+            hash = HashCode.fromString(indexed.sha256);
+        }
+
+        public boolean matchesIndex(SyncIndex.Entry entry) {
+            return entry.matchesStat(size, lastModified.toEpochMilli());
+        }
+
+        public SyncIndex.Entry toIndexEntry(@Nullable String eTag, boolean chunked, @Nullable String compression) {
+            return new SyncIndex.Entry(size, lastModified.toEpochMilli(), hash().toString(), eTag, chunked, compression);
         }
 
         @Override
@@ -619,25 +848,35 @@ public class CloudSyncOperation {
 
         @Override
         public long size() {
-            try {
-                return Files.size(path);
-            } catch (IOException ex) {
-                return 0;
-            }
+            return size;
         }
 
         @Override
         public Instant lastModified() {
-            try {
-                return Files.getLastModifiedTime(path).toInstant();
-            } catch (IOException e) {
-                return Instant.EPOCH;
-            }
+            return lastModified;
         }
 
         @Override
-        public HashCode hash() {
-            return hash.get();
+        public synchronized HashCode hash() {
+            if (hash == null) {
+                hash = sneak(() -> HashUtils.hash(Hashing.sha256(), path)).get();
+            }
+            return hash;
+        }
+
+        /**
+         * Get this file's hash, only if it's known without reading the file.
+         * <p>
+         * Compared against the file's current size and modified time, in case it has changed since it was indexed.
+         *
+         * @return The hash, or {@code null}.
+         */
+        @Nullable
+        public HashCode knownHash() throws IOException {
+            HashCode hash = this.hash;
+            if (hash == null) return null;
+            if (Files.size(path) != size || Files.getLastModifiedTime(path).toMillis() != lastModified.toEpochMilli()) return null;
+            return hash;
         }
 
         @Override
@@ -662,27 +901,79 @@ public class CloudSyncOperation {
 
         private final S3Object s3Object;
         private final String path;
+        @Nullable
+        private final SyncIndex.Entry manifestEntry;
+        @Nullable
+        private CompletableFuture<Map<String, String>> metadataFuture;
         private final LazyValue<Map<String, String>> metadata;
 
-        private RemoteFile(S3Object s3Object, CompletableFuture<Map<String, String>> metadataFuture) {
+        private RemoteFile(S3Object s3Object, @Nullable SyncIndex.Entry manifestEntry) {
             this.s3Object = s3Object;
+            this.manifestEntry = manifestEntry;
             path = s3Object.key().replace(instance.getUuid().toString() + "/", "");
             metadata = new LazyValue<>(() -> {
                 try {
-                    return metadataFuture.get();
+                    return prefetchMetadata().get();
                 } catch (InterruptedException | ExecutionException ex) {
                     throw new RuntimeException("Failed to wait for metadata task.", ex);
                 }
             });
         }
 
+        /**
+         * Start fetching this file's metadata in the background, if it has not been already.
+         */
+        public synchronized CompletableFuture<Map<String, String>> prefetchMetadata() {
+            if (metadataFuture == null && manifestEntry != null) {
+                // Already known from the file manifest.
+                Map<String, String> metadata = new HashMap<>();
+                metadata.put(HASH_METADATA, manifestEntry.sha256);
+                metadata.put(LAST_MODIFIED_METADATA, String.valueOf(manifestEntry.lastModified));
+                if (manifestEntry.chunked) {
+                    metadata.put(CHUNKED_SIZE_METADATA, String.valueOf(manifestEntry.size));
+                }
+                if (manifestEntry.compression != null) {
+                    metadata.put(COMPRESSION_METADATA, manifestEntry.compression);
+                    metadata.put(UNCOMPRESSED_SIZE_METADATA, String.valueOf(manifestEntry.size));
+                }
+                metadataFuture = CompletableFuture.completedFuture(metadata);
+            }
+            if (metadataFuture == null) {
+                metadataFuture = CompletableFuture.supplyAsync(() -> saveManager.getMetadata(s3Object), Task.TASK_POOL);
+            }
+            return metadataFuture;
+        }
+
         @Override
         public String path() {
             return path;
         }
 
+        /**
+         * @return If this object is a chunk recipe, see {@link ChunkStore}.
+         */
+        public boolean isChunked() {
+            return metadata.get().containsKey(CHUNKED_SIZE_METADATA);
+        }
+
+        @Nullable
+        public String compression() {
+            return metadata.get().get(COMPRESSION_METADATA);
+        }
+
         @Override
         public long size() {
+            // Recipes and compressed objects are smaller than the file they describe.
+            String realSize = metadata.get().get(CHUNKED_SIZE_METADATA);
+            if (realSize == null) {
+                realSize = metadata.get().get(UNCOMPRESSED_SIZE_METADATA);
+            }
+            if (realSize != null) {
+                try {
+                    return Long.parseLong(realSize);
+                } catch (NumberFormatException ignored) {
+                }
+            }
             return s3Object.size();
         }
 
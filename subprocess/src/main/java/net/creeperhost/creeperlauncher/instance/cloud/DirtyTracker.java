@@ -0,0 +1,313 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.sun.nio.file.ExtendedWatchEventModifier;
+import net.creeperhost.creeperlauncher.os.OS;
+import net.creeperhost.creeperlauncher.pack.Instance;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches an instance's directory for changes between cloud syncs.
+ * <p>
+ * Lets a sync only re-read the files which were written since the last sync, instead of walking
+ * and comparing the whole instance. When started, the tracker walks the instance once in the background,
+ * comparing every file against the {@link SyncIndex}, after that it only relies on watch events.
+ * <p>
+ * Nothing is persisted, as changes made while the launcher is closed can't be seen. If the tracker
+ * may have missed a change, because it's still starting, the watch overflowed, or a directory
+ * could not be watched, the next sync walks everything instead.
+ * <p>
+ * On Windows, the root is watched recursively with a single handle, as a handle per directory
+ * stops directories from being deleted or renamed. Elsewhere, every directory is watched. Linux
+ * limits inotify watches per user, so trackers only use a share of them, and stop tracking if
+ * they would need more.
+ */
+public class DirtyTracker {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final boolean FILE_TREE = OS.CURRENT == OS.WIN;
+    // Per directory watches, shared between every tracker.
+    private static final int WATCH_BUDGET = computeWatchBudget();
+    private static final AtomicInteger WATCHES = new AtomicInteger();
+    // Set when the OS refuses to watch anything more, no more trackers are started.
+    private static volatile boolean watchLimitReached;
+
+    private final Instance instance;
+    private final Path root;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+
+    @Nullable
+    private volatile WatchService watchService;
+    // If the initial walk has finished, and events are being processed.
+    private boolean watching;
+    private volatile boolean closed;
+
+    // Paths changed since the last drain, relative to the instance.
+    private final Set<String> dirty = new HashSet<>();
+    // If dirty contains every change since the last sync.
+    private boolean complete;
+
+    public DirtyTracker(Instance instance) {
+        this.instance = instance;
+        root = instance.getDir();
+    }
+
+    /**
+     * Start watching the instance in the background.
+     * <p>
+     * If this fails, {@link #drain()} will always return {@code null}.
+     */
+    public void start() {
+        Thread thread = new Thread(this::run);
+        thread.setName("Cloud Dirty Tracker [" + instance.getUuid() + "]");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Take the paths which have changed since the last call.
+     * <p>
+     * From here on, the tracker vouches for every change, until it misses one.
+     *
+     * @return The changed files and directories, relative to the instance, or {@code null}
+     * if changes may have been missed and the whole instance must be indexed.
+     */
+    @Nullable
+    public synchronized Set<String> drain() {
+        Set<String> changed = complete && !closed ? new HashSet<>(dirty) : null;
+        dirty.clear();
+        // Still starting, anything found by the initial walk is merged in when it finishes.
+        complete = watching && !closed;
+        return changed;
+    }
+
+    /**
+     * Get the paths which have changed since the last sync, without taking them.
+     *
+     * @return The changed files and directories, relative to the instance, or {@code null}
+     * if changes may have been missed.
+     */
+    @Nullable
+    public synchronized Set<String> peek() {
+        return complete && !closed ? new HashSet<>(dirty) : null;
+    }
+
+    /**
+     * Give back paths taken by {@link #drain()}, the sync which took them failed.
+     *
+     * @param changed The paths.
+     */
+    public synchronized void restore(Set<String> changed) {
+        dirty.addAll(changed);
+    }
+
+    /**
+     * Forget about any tracked changes, the next sync will index the whole instance.
+     */
+    public synchronized void invalidate() {
+        complete = false;
+        dirty.clear();
+    }
+
+    public void close() {
+        closed = true;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                LOGGER.warn("Failed to close watch service for {}.", instance.getUuid(), ex);
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            track();
+        } finally {
+            if (!FILE_TREE) {
+                WATCHES.addAndGet(-keys.size());
+            }
+            keys.clear();
+        }
+    }
+
+    private void track() {
+        if (watchLimitReached) {
+            LOGGER.info("Not watching instance {} for changes, the watch limit was reached. Syncs will index the whole instance.", instance.getUuid());
+            close();
+            return;
+        }
+        SyncIndex index = SyncIndex.load(instance);
+        Set<String> changed = new HashSet<>();
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            if (FILE_TREE) {
+                keys.put(root.register(watchService, new WatchEvent.Kind<?>[] { ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY }, ExtendedWatchEventModifier.FILE_TREE), root);
+            }
+            // Directories are registered before their files are compared, so every change is either seen here or queued as an event.
+            register(root, index, changed);
+        } catch (IOException | UnsupportedOperationException ex) {
+            LOGGER.warn("Failed to watch instance {} for changes. Syncs will index the whole instance.", instance.getUuid(), ex);
+            close();
+            return;
+        }
+        // Deleted since the last sync.
+        for (String relPath : index.files.keySet()) {
+            if (!isIgnored(relPath) && Files.notExists(root.resolve(relPath), LinkOption.NOFOLLOW_LINKS)) {
+                changed.add(relPath);
+            }
+        }
+        if (closed) {
+            // Closed before the walk finished.
+            close();
+            return;
+        }
+        synchronized (this) {
+            dirty.addAll(changed);
+            watching = true;
+            complete = true;
+        }
+        LOGGER.info("Watching instance {} for changes, {} paths changed since last sync.", instance.getUuid(), changed.size());
+
+        WatchService watchService = this.watchService;
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                break;
+            }
+            Path dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    LOGGER.info("Too many changes in instance {}, the next sync will index the whole instance.", instance.getUuid());
+                    invalidate();
+                    continue;
+                }
+                if (dir == null) continue;
+
+                // Relative to the root for recursive watches.
+                Path path = dir.resolve((Path) event.context());
+                String relPath = root.relativize(path).toString();
+                if (isIgnored(relPath)) continue;
+
+                markDirty(relPath);
+                // Syncs walk changed directories, so anything created before it's registered is still found.
+                if (!FILE_TREE && event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        register(path, null, null);
+                    } catch (IOException ex) {
+                        // Changes inside it would be missed from here on.
+                        LOGGER.warn("Failed to watch {}, syncs will index the whole instance.", path, ex);
+                        close();
+                        return;
+                    }
+                }
+            }
+            if (!key.reset()) {
+                // Directory was deleted, its parent has the event for it.
+                if (keys.remove(key) != null && !FILE_TREE) {
+                    WATCHES.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private synchronized void markDirty(String relPath) {
+        // Pointless while incomplete, the next sync walks everything anyway.
+        if (complete) {
+            dirty.add(relPath);
+        }
+    }
+
+    /**
+     * Watch the given directory and everything under it.
+     * <p>
+     * If an index is given, any file which does not match it is added to the given set.
+     */
+    private void register(Path start, @Nullable SyncIndex index, @Nullable Set<String> changed) throws IOException {
+        WatchService watchService = this.watchService;
+        assert watchService != null;
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (closed) return FileVisitResult.TERMINATE;
+                if (!dir.equals(root) && isIgnored(root.relativize(dir).toString())) return FileVisitResult.SKIP_SUBTREE;
+
+                if (!FILE_TREE) {
+                    watch(watchService, dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (index == null || changed == null) return FileVisitResult.CONTINUE;
+
+                String relPath = root.relativize(file).toString();
+                if (isIgnored(relPath)) return FileVisitResult.CONTINUE;
+
+                SyncIndex.Entry entry = index.get(relPath);
+                if (entry == null || !entry.matchesStat(attrs.size(), attrs.lastModifiedTime().toMillis())) {
+                    changed.add(relPath);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) throws IOException {
+                // Files are only watched through their directory.
+                if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) throw ex;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch(WatchService watchService, Path dir) throws IOException {
+        if (WATCHES.incrementAndGet() > WATCH_BUDGET) {
+            WATCHES.decrementAndGet();
+            throw new IOException("Too many directories to watch, at most " + WATCH_BUDGET + " are watched.");
+        }
+        try {
+            keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+        } catch (IOException ex) {
+            WATCHES.decrementAndGet();
+            // Linux throws 'User limit of inotify watches reached'.
+            if (String.valueOf(ex.getMessage()).contains("inotify watches")) {
+                watchLimitReached = true;
+            }
+            throw ex;
+        }
+    }
+
+    private static int computeWatchBudget() {
+        if (OS.CURRENT != OS.LINUX) return Integer.MAX_VALUE;
+        try {
+            int max = Integer.parseInt(Files.readString(Path.of("/proc/sys/fs/inotify/max_user_watches")).trim());
+            // Leave most of them to everything else the user runs.
+            return Math.max(1, max / 4);
+        } catch (IOException | NumberFormatException ex) {
+            LOGGER.warn("Failed to read the inotify watch limit.", ex);
+            return 2048;
+        }
+    }
+
+    private static boolean isIgnored(String relPath) {
+        relPath = relPath.replace('\\', '/');
+        // Ignored directories are listed with a trailing slash.
+        return CloudSyncOperation.shouldSkipFile(relPath) || CloudSyncOperation.shouldSkipFile(relPath + "/");
+    }
+}
@@ -0,0 +1,480 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.io.IOUtils;
+import net.creeperhost.creeperlauncher.install.tasks.TaskProgressListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads large files to S3 as multipart uploads.
+ * <p>
+ * Parts are uploaded in parallel, and each part is retried on its own. Incomplete uploads are
+ * recorded on disk, so an upload interrupted by a failure or a restart resumes from the parts
+ * S3 already has, as long as the file and its metadata have not changed. The SHA-256 of every
+ * uploaded part is recorded with it, parts are only skipped when resuming if their content still
+ * matches.
+ * <p>
+ * Uploads abandoned for longer than {@link #ABANDON_AFTER} are aborted, so their parts stop
+ * taking up space in the bucket.
+ */
+public class MultipartUploader {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+    private static final Type TYPE = new TypeToken<Map<String, PendingUpload>>() { }.getType();
+
+    /**
+     * Files at least this large are uploaded in parts.
+     */
+    public static final long THRESHOLD = 64 * 1024 * 1024;
+
+    // S3 requires parts of at least 5MiB, and allows at most 10000 parts.
+    private static final long PART_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_PARTS = 10000;
+    // Parts copied server side, S3 allows up to 5GiB.
+    private static final long COPY_PART_SIZE = 1024L * 1024 * 1024;
+    private static final int PART_ATTEMPTS = 3;
+    private static final long ABANDON_AFTER = TimeUnit.DAYS.toMillis(7);
+
+    // Shared between every file being uploaded, bounds the number of open connections.
+    private static final ExecutorService PART_POOL = Executors.newFixedThreadPool(4, new ThreadFactoryBuilder().setNameFormat("Cloud Upload Part %d").setDaemon(true).build());
+    // Parts read but not yet uploaded, shared between every file being uploaded.
+    private static final Semaphore BUFFERS = new Semaphore(6);
+
+    private final S3Client s3Client;
+    private final String s3Bucket;
+    private final Path stateFile;
+    private final long minPartSize;
+    // Dest key -> upload.
+    private final Map<String, PendingUpload> pending;
+
+    public MultipartUploader(S3Client s3Client, String s3Bucket, Path stateFile) {
+        this(s3Client, s3Bucket, stateFile, PART_SIZE);
+    }
+
+    MultipartUploader(S3Client s3Client, String s3Bucket, Path stateFile, long minPartSize) {
+        this.s3Client = s3Client;
+        this.s3Bucket = s3Bucket;
+        this.stateFile = stateFile;
+        this.minPartSize = minPartSize;
+        Map<String, PendingUpload> pending = null;
+        if (Files.exists(stateFile)) {
+            try {
+                pending = JsonUtils.parse(GSON, stateFile, TYPE);
+            } catch (IOException | JsonParseException ex) {
+                LOGGER.warn("Failed to load pending multipart uploads.", ex);
+            }
+        }
+        this.pending = pending != null ? new HashMap<>(pending) : new HashMap<>();
+    }
+
+    /**
+     * Upload the given file in parts, resuming a previous upload of the same file if possible.
+     * <p>
+     * The file is read once, sequentially, and hashed as it's read. Parts are buffered in memory
+     * until they are uploaded, bounded by {@link #BUFFERS}.
+     *
+     * @param file         The file.
+     * @param destKey      The key to upload to.
+     * @param contentType  The content type of the object.
+     * @param metadata     The metadata of the object.
+     * @param len          The length of the file.
+     * @param lastModified The modified time of the file, in milliseconds.
+     * @param listener     The progress listener.
+     * @return The ETag of the uploaded object, and the SHA-256 of the content read.
+     * @throws IOException If an IO error occurs, or a part fails to upload after retrying.
+     */
+    public Result upload(Path file, String destKey, @Nullable String contentType, Map<String, String> metadata, long len, long lastModified, @Nullable TaskProgressListener listener) throws IOException {
+        long partSize = partSize(len, minPartSize);
+        int partCount = (int) ((len + partSize - 1) / partSize);
+
+        Map<Integer, CompletedPart> completed = new ConcurrentHashMap<>();
+        PendingUpload upload = getPending(destKey);
+        if (upload != null) {
+            if (upload.matches(len, lastModified, partSize, metadata)) {
+                if (!listParts(destKey, upload, len, partCount, completed)) {
+                    upload = null;
+                }
+            } else {
+                // The file has changed since, its parts are useless. Or the object would be completed
+                // with the metadata it was started with, which may be missing the hash we now know.
+                abort(destKey, upload.uploadId);
+                upload = null;
+            }
+        }
+        if (upload == null) {
+            String uploadId = s3Client.createMultipartUpload(e -> e
+                    .bucket(s3Bucket)
+                    .key(destKey)
+                    .contentType(contentType)
+                    .metadata(metadata)
+            ).uploadId();
+            upload = new PendingUpload(uploadId, len, lastModified, partSize, System.currentTimeMillis(), new HashMap<>(), Map.copyOf(metadata));
+            setPending(destKey, upload);
+        } else {
+            LOGGER.info("Resuming multipart upload of {}, {} of {} parts already uploaded.", destKey, completed.size(), partCount);
+        }
+
+        AtomicLong transferred = new AtomicLong();
+        for (CompletedPart part : completed.values()) {
+            transferred.addAndGet(partLength(part.partNumber(), partSize, len));
+        }
+        if (listener != null) {
+            listener.start(len);
+            listener.update(transferred.get());
+        }
+
+        String uploadId = upload.uploadId;
+        Map<Integer, String> uploadedHashes;
+        synchronized (pending) {
+            uploadedHashes = new HashMap<>(upload.partHashes);
+        }
+        Hasher hasher = Hashing.sha256().newHasher();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try (InputStream is = Files.newInputStream(file)) {
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                if (futures.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) break;
+
+                int number = partNumber;
+                int partLen = (int) partLength(number, partSize, len);
+                boolean resumed = completed.containsKey(number);
+                if (!resumed) {
+                    BUFFERS.acquireUninterruptibly();
+                }
+                byte[] bytes;
+                try {
+                    bytes = is.readNBytes(partLen);
+                } catch (Throwable ex) {
+                    if (!resumed) BUFFERS.release();
+                    throw ex;
+                }
+                if (bytes.length != partLen) {
+                    if (!resumed) BUFFERS.release();
+                    throw new IOException("File " + file + " was truncated during upload.");
+                }
+                hasher.putBytes(bytes);
+                String partHash = Hashing.sha256().hashBytes(bytes).toString();
+                if (resumed) {
+                    // Already uploaded, only read to hash it.
+                    if (partHash.equals(uploadedHashes.get(number))) continue;
+
+                    // The file changed without changing its size or modified time.
+                    LOGGER.info("Part {} of {} changed since it was uploaded, uploading it again.", number, destKey);
+                    completed.remove(number);
+                    transferred.addAndGet(-partLen);
+                    BUFFERS.acquireUninterruptibly();
+                }
+
+                CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+                    String eTag = uploadPart(destKey, uploadId, number, bytes);
+                    recordPart(destKey, uploadId, number, partHash);
+                    completed.put(number, CompletedPart.builder().partNumber(number).eTag(eTag).build());
+                    long done = transferred.addAndGet(partLen);
+                    if (listener != null) {
+                        synchronized (listener) {
+                            listener.update(done);
+                        }
+                    }
+                }, PART_POOL);
+                future.whenComplete((r, ex) -> BUFFERS.release());
+                futures.add(future);
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException ex) {
+            // The upload is kept so the next attempt can resume.
+            throw new IOException("Failed to upload " + destKey + " in parts.", ex.getCause());
+        } finally {
+            // Don't start any more parts if anything failed.
+            futures.forEach(e -> e.cancel(false));
+        }
+
+        List<CompletedPart> parts = new ArrayList<>(completed.values());
+        parts.sort(Comparator.comparing(CompletedPart::partNumber));
+        String eTag = s3Client.completeMultipartUpload(e -> e
+                .bucket(s3Bucket)
+                .key(destKey)
+                .uploadId(uploadId)
+                .multipartUpload(m -> m.parts(parts))
+        ).eTag();
+        removePending(destKey);
+        if (listener != null) {
+            listener.finish(len);
+        }
+        return new Result(eTag, hasher.hash());
+    }
+
+    /**
+     * Replace the metadata of an object too large to copy in a single request.
+     * <p>
+     * The object is copied onto itself in parts, server side, its content is not uploaded again.
+     * The copy fails if the object no longer has the given ETag.
+     *
+     * @param destKey     The key of the object.
+     * @param eTag        The ETag of the object.
+     * @param contentType The content type of the object.
+     * @param metadata    The new metadata.
+     * @param len         The length of the object.
+     * @return The ETag of the copied object.
+     * @throws IOException If the copy fails.
+     */
+    public String replaceMetadata(String destKey, String eTag, @Nullable String contentType, Map<String, String> metadata, long len) throws IOException {
+        long partSize = partSize(len, COPY_PART_SIZE);
+        int partCount = (int) ((len + partSize - 1) / partSize);
+
+        String uploadId = s3Client.createMultipartUpload(e -> e
+                .bucket(s3Bucket)
+                .key(destKey)
+                .contentType(contentType)
+                .metadata(metadata)
+        ).uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>(partCount);
+            for (int number = 1; number <= partCount; number++) {
+                int partNumber = number;
+                long start = (number - 1) * partSize;
+                long end = start + partLength(number, partSize, len) - 1;
+                String partETag = s3Client.uploadPartCopy(e -> e
+                        .sourceBucket(s3Bucket)
+                        .sourceKey(destKey)
+                        .copySourceIfMatch(eTag)
+                        .copySourceRange("bytes=" + start + "-" + end)
+                        .destinationBucket(s3Bucket)
+                        .destinationKey(destKey)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                ).copyPartResult().eTag();
+                parts.add(CompletedPart.builder().partNumber(number).eTag(partETag).build());
+            }
+            return s3Client.completeMultipartUpload(e -> e
+                    .bucket(s3Bucket)
+                    .key(destKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(parts))
+            ).eTag();
+        } catch (Throwable ex) {
+            abort(destKey, uploadId);
+            throw new IOException("Failed to replace metadata of " + destKey + ".", ex);
+        }
+    }
+
+    /**
+     * Abort any incomplete upload to the given key started by this launcher.
+     * <p>
+     * Called when the key is uploaded some other way, failures are logged and ignored.
+     *
+     * @param destKey The key.
+     */
+    public void abortPending(String destKey) {
+        PendingUpload upload = getPending(destKey);
+        if (upload != null) {
+            abort(destKey, upload.uploadId);
+        }
+    }
+
+    /**
+     * Abort every incomplete upload in the bucket which was started more than {@link #ABANDON_AFTER} ago.
+     * <p>
+     * Failures are logged and ignored.
+     */
+    public void abortAbandoned() {
+        Instant cutoff = Instant.now().minusMillis(ABANDON_AFTER);
+        int aborted = 0;
+        try {
+            ListMultipartUploadsRequest request = ListMultipartUploadsRequest.builder()
+                    .bucket(s3Bucket)
+                    .build();
+            for (ListMultipartUploadsResponse response : s3Client.listMultipartUploadsPaginator(request)) {
+                for (MultipartUpload upload : response.uploads()) {
+                    if (upload.initiated() == null || upload.initiated().isAfter(cutoff)) continue;
+                    abort(upload.key(), upload.uploadId());
+                    aborted++;
+                }
+            }
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to list incomplete multipart uploads.", ex);
+        }
+        if (aborted != 0) {
+            LOGGER.info("Aborted {} abandoned multipart uploads.", aborted);
+        }
+
+        // Forget about anything else too old to resume, in case it belongs to another bucket.
+        synchronized (pending) {
+            if (pending.values().removeIf(e -> e.started < cutoff.toEpochMilli())) {
+                save();
+            }
+        }
+    }
+
+    // Fills in the parts S3 already has, returns false if the upload no longer exists.
+    private boolean listParts(String destKey, PendingUpload upload, long len, int partCount, Map<Integer, CompletedPart> completed) {
+        try {
+            ListPartsRequest request = ListPartsRequest.builder()
+                    .bucket(s3Bucket)
+                    .key(destKey)
+                    .uploadId(upload.uploadId)
+                    .build();
+            for (ListPartsResponse response : s3Client.listPartsPaginator(request)) {
+                for (Part part : response.parts()) {
+                    int number = part.partNumber();
+                    // A part which was interrupted may have been stored short, re-upload it.
+                    if (number < 1 || number > partCount || part.size() == null || part.size() != partLength(number, upload.partSize, len)) continue;
+                    // Uploaded, but we don't know what it contains.
+                    if (!upload.partHashes.containsKey(number)) continue;
+                    completed.put(number, CompletedPart.builder().partNumber(number).eTag(part.eTag()).build());
+                }
+            }
+            return true;
+        } catch (NoSuchUploadException ex) {
+            LOGGER.info("Multipart upload of {} no longer exists, starting again.", destKey);
+            removePending(destKey);
+            return false;
+        }
+    }
+
+    private String uploadPart(String destKey, String uploadId, int partNumber, byte[] bytes) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // Not fromBytes, which would copy the part.
+                RequestBody body = RequestBody.fromContentProvider(
+                        () -> new ByteArrayInputStream(bytes),
+                        bytes.length,
+                        "application/octet-stream"
+                );
+                return s3Client.uploadPart(e -> e
+                        .bucket(s3Bucket)
+                        .key(destKey)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) bytes.length), body
+                ).eTag();
+            } catch (Throwable ex) {
+                if (attempt >= PART_ATTEMPTS) {
+                    throw new CompletionException("Part " + partNumber + " of " + destKey + " failed after " + attempt + " attempts.", ex);
+                }
+                LOGGER.warn("Failed to upload part {} of {}. Attempt {}, retrying.", partNumber, destKey, attempt, ex);
+                try {
+                    Thread.sleep(1000L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(ie);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the part size for a file, keeping the number of parts within what S3 allows.
+     *
+     * @param len         The length of the file.
+     * @param minPartSize The smallest part size.
+     * @return The part size.
+     */
+    static long partSize(long len, long minPartSize) {
+        return Math.max(minPartSize, (len + MAX_PARTS - 1) / MAX_PARTS);
+    }
+
+    private static long partLength(int partNumber, long partSize, long len) {
+        return Math.min(partSize, len - (partNumber - 1) * partSize);
+    }
+
+    private void abort(String destKey, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(e -> e.bucket(s3Bucket).key(destKey).uploadId(uploadId));
+        } catch (NoSuchUploadException ignored) {
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to abort multipart upload of {}.", destKey, ex);
+            // Leave it, abortAbandoned will get it eventually.
+            return;
+        }
+        synchronized (pending) {
+            PendingUpload upload = pending.get(destKey);
+            if (upload != null && upload.uploadId.equals(uploadId)) {
+                pending.remove(destKey);
+                save();
+            }
+        }
+    }
+
+    @Nullable
+    private PendingUpload getPending(String destKey) {
+        synchronized (pending) {
+            return pending.get(destKey);
+        }
+    }
+
+    private void setPending(String destKey, PendingUpload upload) {
+        synchronized (pending) {
+            pending.put(destKey, upload);
+            save();
+        }
+    }
+
+    private void recordPart(String destKey, String uploadId, int partNumber, String sha256) {
+        synchronized (pending) {
+            PendingUpload upload = pending.get(destKey);
+            if (upload == null || !upload.uploadId.equals(uploadId)) return;
+            upload.partHashes.put(partNumber, sha256);
+            save();
+        }
+    }
+
+    private void removePending(String destKey) {
+        synchronized (pending) {
+            if (pending.remove(destKey) != null) {
+                save();
+            }
+        }
+    }
+
+    private void save() {
+        try {
+            JsonUtils.write(GSON, IOUtils.makeParents(stateFile), pending, TYPE);
+        } catch (IOException ex) {
+            // Not fatal, interrupted uploads just won't resume.
+            LOGGER.warn("Failed to save pending multipart uploads.", ex);
+        }
+    }
+
+    /**
+     * The result of a multipart upload.
+     *
+     * @param eTag   The ETag of the uploaded object.
+     * @param sha256 The SHA-256 of the uploaded content.
+     */
+    public record Result(String eTag, HashCode sha256) { }
+
+    // Resumed if the file's size and modified time still match, the same way the sync index is trusted.
+    // Part number -> SHA-256 of each part uploaded so far, parts are only reused if their content still matches.
+    // The metadata the upload was created with, S3 applies it when the upload is completed.
+    private record PendingUpload(String uploadId, long size, long lastModified, long partSize, long started, Map<Integer, String> partHashes, Map<String, String> metadata) {
+
+        public boolean matches(long size, long lastModified, long partSize, Map<String, String> metadata) {
+            // Recorded before part hashes or metadata were, the parts can't be checked.
+            if (partHashes == null || this.metadata == null) return false;
+            return this.size == size && this.lastModified == lastModified && this.partSize == partSize && this.metadata.equals(metadata);
+        }
+    }
+}
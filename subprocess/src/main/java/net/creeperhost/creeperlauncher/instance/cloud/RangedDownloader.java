@@ -0,0 +1,236 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.io.IOUtils;
+import net.creeperhost.creeperlauncher.install.tasks.TaskProgressListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Downloads large objects from S3 as parallel ranged GETs.
+ * <p>
+ * Each range is written straight to its position in a temp file, and the calling thread hashes
+ * the ranges in order as they complete, so hashing overlaps with the download instead of
+ * re-reading the whole file afterwards. The ranges already downloaded are recorded next to the
+ * temp file, so an interrupted download resumes where it left off, as long as the object's
+ * ETag has not changed.
+ */
+@SuppressWarnings ("UnstableApiUsage")
+public class RangedDownloader {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Objects at least this large are downloaded in ranges.
+     */
+    public static final long THRESHOLD = 64 * 1024 * 1024;
+
+    private static final long PART_SIZE = 16 * 1024 * 1024;
+    private static final int PART_ATTEMPTS = 3;
+
+    // Shared between every object being downloaded, bounds the number of open connections.
+    private static final ExecutorService PART_POOL = Executors.newFixedThreadPool(4, new ThreadFactoryBuilder().setNameFormat("Cloud Download Part %d").setDaemon(true).build());
+
+    private final S3Client s3Client;
+    private final String s3Bucket;
+
+    public RangedDownloader(S3Client s3Client, String s3Bucket) {
+        this.s3Client = s3Client;
+        this.s3Bucket = s3Bucket;
+    }
+
+    /**
+     * Download the given object into the given temp file, resuming a previous download if possible.
+     * <p>
+     * On success, the temp file contains the object and its state file is deleted. On failure
+     * both are left in place to be resumed, unless the object changed during the download.
+     *
+     * @param s3Object  The object.
+     * @param tempFile  The file to download into.
+     * @param stateFile The file to record downloaded ranges in.
+     * @param listener  The progress listener.
+     * @return The SHA-256 of the downloaded content, and the object's metadata.
+     * @throws IOException If an IO error occurs, or a range fails to download after retrying.
+     */
+    public Result download(S3Object s3Object, Path tempFile, Path stateFile, @Nullable TaskProgressListener listener) throws IOException {
+        HeadObjectResponse head = s3Client.headObject(e -> e.bucket(s3Bucket).key(s3Object.key()));
+        String eTag = head.eTag();
+        long len = head.contentLength();
+        int partCount = (int) ((len + PART_SIZE - 1) / PART_SIZE);
+
+        PartialDownload state = loadState(stateFile);
+        if (state == null || !state.matches(eTag, len, PART_SIZE) || Files.notExists(tempFile)) {
+            Files.deleteIfExists(tempFile);
+            state = new PartialDownload(eTag, len, PART_SIZE, new HashSet<>());
+        } else {
+            LOGGER.info("Resuming download of {}, {} of {} ranges already downloaded.", s3Object.key(), state.parts.size(), partCount);
+        }
+        PartialDownload finalState = state;
+
+        AtomicLong transferred = new AtomicLong();
+        for (int part : state.parts) {
+            transferred.addAndGet(partLength(part, len));
+        }
+        if (listener != null) {
+            listener.start(len);
+            listener.update(transferred.get());
+        }
+
+        AtomicBoolean failed = new AtomicBoolean();
+        try (FileChannel channel = FileChannel.open(IOUtils.makeParents(tempFile), CREATE, READ, WRITE)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>(partCount);
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                if (state.parts.contains(partNumber)) {
+                    futures.add(CompletableFuture.completedFuture(null));
+                    continue;
+                }
+                int number = partNumber;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    long partLen = partLength(number, len);
+                    downloadPart(s3Object.key(), eTag, channel, (number - 1) * PART_SIZE, partLen, failed);
+                    synchronized (finalState) {
+                        finalState.parts.add(number);
+                        saveState(stateFile, finalState);
+                    }
+                    long done = transferred.addAndGet(partLen);
+                    if (listener != null) {
+                        synchronized (listener) {
+                            listener.update(done);
+                        }
+                    }
+                }, PART_POOL));
+            }
+
+            Hasher hasher = Hashing.sha256().newHasher();
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            try {
+                for (int i = 0; i < partCount; i++) {
+                    futures.get(i).join();
+                    // Written moments ago, this should be served from the page cache.
+                    long pos = i * PART_SIZE;
+                    long end = pos + partLength(i + 1, len);
+                    while (pos < end) {
+                        buffer.clear().limit((int) Math.min(buffer.capacity(), end - pos));
+                        int read = channel.read(buffer, pos);
+                        if (read == -1) throw new IOException("Unexpected end of file " + tempFile);
+                        hasher.putBytes(buffer.array(), 0, read);
+                        pos += read;
+                    }
+                }
+            } catch (CompletionException ex) {
+                throw new IOException("Failed to download " + s3Object.key() + " in ranges.", ex.getCause());
+            } finally {
+                if (!futures.stream().allMatch(CompletableFuture::isDone)) {
+                    // Don't start any more ranges, or retry running ones. Downloaded ranges are kept so the next attempt can resume.
+                    failed.set(true);
+                    futures.forEach(e -> e.cancel(false));
+                }
+            }
+            if (listener != null) {
+                listener.finish(len);
+            }
+            Files.deleteIfExists(stateFile);
+            return new Result(hasher.hash(), head.metadata());
+        }
+    }
+
+    private void downloadPart(String key, String eTag, FileChannel channel, long offset, long partLen, AtomicBoolean failed) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                String range = "bytes=" + offset + "-" + (offset + partLen - 1);
+                // If-Match, so the ranges are never from different versions of the object.
+                try (ResponseInputStream<GetObjectResponse> is = s3Client.getObject(e -> e.bucket(s3Bucket).key(key).range(range).ifMatch(eTag))) {
+                    byte[] buffer = IOUtils.getCachedBuffer();
+                    long pos = offset;
+                    int len;
+                    while ((len = is.read(buffer)) != -1) {
+                        ByteBuffer buf = ByteBuffer.wrap(buffer, 0, len);
+                        while (buf.hasRemaining()) {
+                            pos += channel.write(buf, pos);
+                        }
+                    }
+                    if (pos - offset != partLen) {
+                        throw new IOException("Range failed length validation. Expected: " + partLen + " Actual: " + (pos - offset));
+                    }
+                }
+                return;
+            } catch (Throwable ex) {
+                if (attempt >= PART_ATTEMPTS || failed.get()) {
+                    throw new CompletionException("Range " + offset + " of " + key + " failed after " + attempt + " attempts.", ex);
+                }
+                LOGGER.warn("Failed to download range {} of {}. Attempt {}, retrying.", offset, key, attempt, ex);
+                try {
+                    Thread.sleep(1000L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(ie);
+                }
+            }
+        }
+    }
+
+    private static long partLength(int partNumber, long len) {
+        return Math.min(PART_SIZE, len - (partNumber - 1) * PART_SIZE);
+    }
+
+    @Nullable
+    private static PartialDownload loadState(Path stateFile) {
+        if (Files.notExists(stateFile)) return null;
+        try {
+            PartialDownload state = JsonUtils.parse(GSON, stateFile, PartialDownload.class);
+            if (state == null || state.eTag == null || state.parts == null) return null;
+            return new PartialDownload(state.eTag, state.size, state.partSize, new HashSet<>(state.parts));
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to read partial download state {}. Ignoring.", stateFile, ex);
+            return null;
+        }
+    }
+
+    private static void saveState(Path stateFile, PartialDownload state) {
+        try {
+            JsonUtils.write(GSON, IOUtils.makeParents(stateFile), state, PartialDownload.class);
+        } catch (IOException ex) {
+            // Not fatal, this download just won't resume.
+            LOGGER.warn("Failed to save partial download state {}.", stateFile, ex);
+        }
+    }
+
+    /**
+     * The result of a ranged download.
+     *
+     * @param sha256   The SHA-256 of the downloaded content.
+     * @param metadata The object's metadata.
+     */
+    public record Result(HashCode sha256, Map<String, String> metadata) { }
+
+    private record PartialDownload(String eTag, long size, long partSize, Set<Integer> parts) {
+
+        public boolean matches(String eTag, long size, long partSize) {
+            return this.eTag.equals(eTag) && this.size == size && this.partSize == partSize;
+        }
+    }
+}
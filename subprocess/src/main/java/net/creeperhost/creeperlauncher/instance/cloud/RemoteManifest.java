@@ -0,0 +1,100 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.google.gson.Gson;
+import net.covers1624.quack.gson.JsonUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Lists the hash, size, modified time and ETag of every synced file, stored as a single object per instance.
+ * <p>
+ * Lets the cloud be indexed with a single GET, instead of a HEAD request per object. Entries are
+ * only trusted while their ETag and size match the listed object, anything else falls back to
+ * reading the object's metadata.
+ */
+public class RemoteManifest {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The manifest's key, relative to the instance's prefix.
+     */
+    public static final String KEY = "cloud_manifest.json";
+
+    /**
+     * Bumped whenever the format changes, older manifests are ignored.
+     */
+    private static final int FORMAT = 1;
+
+    public int format = FORMAT;
+    public Map<String, SyncIndex.Entry> files = new HashMap<>();
+
+    public RemoteManifest() {
+    }
+
+    public RemoteManifest(Map<String, SyncIndex.Entry> files) {
+        this.files = new HashMap<>(files);
+    }
+
+    /**
+     * Parse a manifest.
+     *
+     * @param bytes The manifest's bytes.
+     * @return The manifest, or {@code null} if it could not be read or is from a different format.
+     */
+    @Nullable
+    public static RemoteManifest parse(byte[] bytes) {
+        try {
+            RemoteManifest manifest = JsonUtils.parse(GSON, new ByteArrayInputStream(bytes), RemoteManifest.class);
+            if (manifest == null || manifest.files == null || manifest.format != FORMAT) return null;
+            return manifest;
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to read remote manifest. Ignoring.", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Upload a manifest for the given files, unless the current remote manifest already lists exactly them.
+     *
+     * @param current The remote manifest, or {@code null} if there is none.
+     * @param files   The synced files.
+     * @param upload  Uploads the manifest's bytes.
+     * @return If a manifest was uploaded.
+     */
+    public static boolean uploadIfChanged(@Nullable RemoteManifest current, Map<String, SyncIndex.Entry> files, Consumer<byte[]> upload) {
+        if (current != null && current.files.equals(files)) return false;
+        upload.accept(new RemoteManifest(files).toBytes());
+        return true;
+    }
+
+    public byte[] toBytes() {
+        return GSON.toJson(this).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the entry for the given object, if it is still accurate.
+     *
+     * @param path   The path of the file.
+     * @param object The listed object.
+     * @return The entry, or {@code null} if there is none or the object has changed since.
+     */
+    @Nullable
+    public SyncIndex.Entry getValid(String path, S3Object object) {
+        SyncIndex.Entry entry = files.get(path);
+        if (entry == null || entry.eTag == null || entry.sha256 == null) return null;
+        if (!entry.eTag.equals(object.eTag())) return null;
+        // Recipes and compressed objects are smaller than the file they describe.
+        if (!entry.chunked && entry.compression == null && entry.size != object.size()) return null;
+        return entry;
+    }
+}
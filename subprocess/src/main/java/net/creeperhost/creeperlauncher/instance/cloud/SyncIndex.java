@@ -0,0 +1,144 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.google.gson.Gson;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.io.IOUtils;
+import net.creeperhost.creeperlauncher.pack.Instance;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The state of every file as of the last successful sync, stored per instance.
+ * <p>
+ * A file whose size and modified time still match its entry locally, and whose ETag still
+ * matches remotely, has not changed since the last sync. It does not need to be hashed or
+ * compared any further.
+ */
+public class SyncIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The index, stored inside the instance directory. Never synced.
+     */
+    public static final String FILE = ".ftba/cloud_sync_index.json";
+
+    public Map<String, Entry> files = new HashMap<>();
+    // When unreferenced chunks were last deleted, see ChunkStore.
+    public long lastChunkCollection;
+
+    @Nullable
+    public Entry get(String path) {
+        return files.get(path);
+    }
+
+    /**
+     * Load the index for the given instance.
+     *
+     * @param instance The instance.
+     * @return The index, empty if it does not exist or could not be read.
+     */
+    public static SyncIndex load(Instance instance) {
+        Path file = instance.getDir().resolve(FILE);
+        if (Files.notExists(file)) return new SyncIndex();
+        try {
+            SyncIndex index = JsonUtils.parse(GSON, file, SyncIndex.class);
+            if (index != null && index.files != null) return index;
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to read cloud sync index {}. Ignoring.", file, ex);
+        }
+        return new SyncIndex();
+    }
+
+    /**
+     * Save the index for the given instance.
+     *
+     * @param instance The instance.
+     * @return If the index was saved.
+     */
+    public boolean save(Instance instance) {
+        Path file = instance.getDir().resolve(FILE);
+        try {
+            JsonUtils.write(GSON, IOUtils.makeParents(file), this, SyncIndex.class);
+            return true;
+        } catch (IOException ex) {
+            // Not fatal, the next sync will just hash everything.
+            LOGGER.warn("Failed to save cloud sync index {}.", file, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the index for the given instance, if it exists.
+     *
+     * @param instance The instance.
+     */
+    public static void invalidate(Instance instance) {
+        try {
+            Files.deleteIfExists(instance.getDir().resolve(FILE));
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to delete cloud sync index for {}.", instance.getUuid(), ex);
+        }
+    }
+
+    public static class Entry {
+
+        public long size;
+        // Milliseconds since epoch.
+        public long lastModified;
+        public String sha256;
+        @Nullable
+        public String eTag;
+        // If the object is a chunk recipe, see ChunkStore.
+        public boolean chunked;
+        // How the object is compressed, see CloudCompression.
+        @Nullable
+        public String compression;
+
+        public Entry() {
+        }
+
+        public Entry(long size, long lastModified, String sha256, @Nullable String eTag) {
+            this(size, lastModified, sha256, eTag, false, null);
+        }
+
+        public Entry(long size, long lastModified, String sha256, @Nullable String eTag, boolean chunked, @Nullable String compression) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+            this.eTag = eTag;
+            this.chunked = chunked;
+            this.compression = compression;
+        }
+
+        public boolean matchesStat(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Entry other)) return false;
+            return size == other.size
+                    && lastModified == other.lastModified
+                    && chunked == other.chunked
+                    && Objects.equals(sha256, other.sha256)
+                    && Objects.equals(eTag, other.eTag)
+                    && Objects.equals(compression, other.compression);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, sha256, eTag, chunked, compression);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.io.IOUtils;
+import net.creeperhost.creeperlauncher.Settings;
+import net.creeperhost.creeperlauncher.pack.CancellationToken;
+import net.creeperhost.creeperlauncher.pack.Instance;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads changed files in the background while an instance is running, so the sync when
+ * it exits only has the final changes to upload.
+ * <p>
+ * Only files which have not been modified for a while are uploaded, one at a time and at a
+ * limited rate. Region files are written in place by the game, so they must be idle for longer,
+ * and their header must agree with the file. A file which changes while it's being read is left for
+ * the next round. Each upload is recorded in the {@link SyncIndex}, so the exit sync sees the file
+ * as unchanged.
+ * <p>
+ * The remote is a mix of old and new files until the exit sync finishes. Before the first upload,
+ * the sync manifest is marked {@link SyncManifest.State#UNFINISHED_UP}, so other FTBApp instances
+ * don't download it, and an interrupted session is resumed by the next sync.
+ */
+@SuppressWarnings ("UnstableApiUsage")
+public class TrickleSync {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new Gson();
+
+    private static final long INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    // How long files must be unmodified before they are uploaded.
+    private static final long STABLE_TIME = TimeUnit.SECONDS.toMillis(30);
+    private static final long REGION_STABLE_TIME = TimeUnit.MINUTES.toMillis(2);
+    // Larger files are left to the exit sync, files are held in memory while uploading.
+    private static final long MAX_SIZE = 64 * 1024 * 1024;
+    private static final double BYTES_PER_SECOND = 1024 * 1024;
+
+    private static final Set<String> REGION_EXTENSIONS = Set.of("mca", "mcr");
+    private static final int SECTOR_SIZE = 4096;
+
+    // Shared between every running instance, uploads one file at a time.
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Cloud Trickle Sync").setDaemon(true).build());
+
+    private final CloudSaveManager saveManager;
+    private final Instance instance;
+    private final Path root;
+    private final CancellationToken token = new CancellationToken();
+    private final RateLimiter limiter = RateLimiter.create(BYTES_PER_SECOND);
+
+    @Nullable
+    private ScheduledFuture<?> future;
+    private boolean markedUnfinished;
+
+    public TrickleSync(CloudSaveManager saveManager, Instance instance) {
+        this.saveManager = saveManager;
+        this.instance = instance;
+        root = instance.getDir();
+    }
+
+    public void start() {
+        LOGGER.info("Starting trickle sync for {}.", instance.getUuid());
+        future = EXECUTOR.scheduleWithFixedDelay(this::tick, INTERVAL, INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop uploading, abandoning any in progress upload.
+     * <p>
+     * Blocks until the current round has finished.
+     */
+    public void stop() {
+        token.cancel();
+        if (future != null) {
+            future.cancel(false);
+        }
+        synchronized (this) {
+            LOGGER.info("Stopped trickle sync for {}.", instance.getUuid());
+        }
+    }
+
+    private synchronized void tick() {
+        if (token.isCanceled() || !instance.getLauncher().isRunning()) return;
+        // Initial syncs may still be running after the instance has started.
+        if (saveManager.isSyncing(instance.getUuid())) return;
+
+        try {
+            SyncIndex index = SyncIndex.load(instance);
+            List<String> candidates = findCandidates(index);
+            int uploaded = 0;
+            try {
+                for (String relPath : candidates) {
+                    if (token.isCanceled() || saveManager.isSyncing(instance.getUuid())) break;
+                    if (upload(relPath, index)) {
+                        uploaded++;
+                    }
+                }
+            } finally {
+                if (uploaded > 0) {
+                    index.save(instance);
+                    LOGGER.info("Trickle synced {} files for {}.", uploaded, instance.getUuid());
+                }
+            }
+        } catch (Throwable ex) {
+            // Everything is uploaded by the exit sync anyway.
+            if (!token.isCanceled()) {
+                LOGGER.warn("Trickle sync round failed for {}.", instance.getUuid(), ex);
+            }
+        }
+    }
+
+    /**
+     * Find the files which differ from the sync index, preferring the dirty tracker over walking the instance.
+     */
+    private List<String> findCandidates(SyncIndex index) throws IOException {
+        DirtyTracker tracker = saveManager.getDirtyTracker(instance);
+        Set<String> changed = tracker != null ? tracker.peek() : null;
+        List<String> candidates = new ArrayList<>();
+        if (changed == null) {
+            walk(root, index, candidates);
+        } else {
+            for (String relPath : changed) {
+                Path path = root.resolve(relPath);
+                if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                    walk(path, index, candidates);
+                }
+            }
+        }
+        // Same order as the exit sync would upload them.
+        candidates.sort(Comparator.comparingInt(TrickleSync::priority));
+        return candidates;
+    }
+
+    private void walk(Path start, SyncIndex index, List<String> candidates) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root) && CloudSyncOperation.shouldSkipFile(root.relativize(dir).toString().replace('\\', '/') + "/")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || attrs.size() > MAX_SIZE) return FileVisitResult.CONTINUE;
+
+                String relPath = root.relativize(file).toString();
+                if (CloudSyncOperation.shouldSkipFile(relPath.replace('\\', '/'))) return FileVisitResult.CONTINUE;
+                // Chunked by the exit sync, which only uploads the changed chunks anyway.
+                if (Settings.getCloudSaveChunking() && ChunkStore.shouldChunk(relPath, attrs.size())) return FileVisitResult.CONTINUE;
+
+                SyncIndex.Entry entry = index.get(relPath);
+                if (entry == null || !entry.matchesStat(attrs.size(), attrs.lastModifiedTime().toMillis())) {
+                    candidates.add(relPath);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Upload the given file, if it's stable.
+     *
+     * @return If the file was uploaded.
+     */
+    private boolean upload(String relPath, SyncIndex index) throws IOException {
+        Path file = root.resolve(relPath);
+        boolean region = REGION_EXTENSIONS.contains(extension(relPath));
+
+        BasicFileAttributes before = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        long lastModified = before.lastModifiedTime().toMillis();
+        if (System.currentTimeMillis() - lastModified < (region ? REGION_STABLE_TIME : STABLE_TIME)) return false;
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException ex) {
+            // Probably locked by the game.
+            LOGGER.debug("Failed to read {}, skipping.", file, ex);
+            return false;
+        }
+        BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (after.size() != bytes.length || after.lastModifiedTime().toMillis() != lastModified) return false;
+        if (region && !isRegionConsistent(bytes)) {
+            LOGGER.info("Region file {} looks mid-write, skipping.", file);
+            return false;
+        }
+
+        markUnfinished();
+        CloudSaveManager.UploadResult result = saveManager.uploadContents(file, bytes, lastModified, instance.getUuid() + "/" + relPath, limiter, token, null);
+        index.files.put(relPath, new SyncIndex.Entry(result.size(), result.lastModified(), result.sha256(), result.eTag(), result.chunked(), result.compression()));
+        return true;
+    }
+
+    private void markUnfinished() throws IOException {
+        if (markedUnfinished) return;
+
+        Path syncManifestFile = root.resolve("sync_manifest.json");
+        JsonUtils.write(GSON, IOUtils.makeParents(syncManifestFile), new SyncManifest(System.currentTimeMillis(), SyncManifest.State.UNFINISHED_UP));
+        saveManager.uploadFile(syncManifestFile, instance.getUuid() + "/sync_manifest.json", null);
+        markedUnfinished = true;
+    }
+
+    /**
+     * Checks that every chunk listed in a region file's header lies within the file.
+     */
+    private static boolean isRegionConsistent(byte[] bytes) {
+        if (bytes.length == 0) return true;
+        if (bytes.length < SECTOR_SIZE * 2 || bytes.length % SECTOR_SIZE != 0) return false;
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int sectors = bytes.length / SECTOR_SIZE;
+        for (int i = 0; i < 1024; i++) {
+            int location = buffer.getInt(i * 4);
+            if (location == 0) continue;
+
+            int offset = location >>> 8;
+            int count = location & 0xFF;
+            if (offset < 2 || count == 0 || offset + count > sectors) return false;
+            int length = buffer.getInt(offset * SECTOR_SIZE);
+            if (length <= 0 || length + 4 > count * SECTOR_SIZE) return false;
+        }
+        return true;
+    }
+
+    private static int priority(String relPath) {
+        String path = relPath.replace('\\', '/').toLowerCase(Locale.ROOT);
+        for (int i = 0; i < CloudSyncOperation.FILE_PRIORITIES.size(); i++) {
+            if (path.startsWith(CloudSyncOperation.FILE_PRIORITIES.get(i))) return i;
+        }
+        for (String unPrio : CloudSyncOperation.FILE_UN_PRIORITIES) {
+            if (path.startsWith(unPrio)) return Integer.MAX_VALUE;
+        }
+        return CloudSyncOperation.FILE_PRIORITIES.size();
+    }
+
+    private static String extension(String path) {
+        int dot = path.lastIndexOf('.');
+        return dot == -1 ? "" : path.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -14,7 +14,6 @@ import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
@@ -58,17 +57,7 @@ public class AssetIndexManifest {
                 )
                 .build();
 
-        if (!downloadTask.isRedundant()) {
-            try {
-                downloadTask.execute(null, null);
-            } catch (Throwable e) {
-                if (Files.exists(assetIndexFile)) {
-                    LOGGER.warn("Failed to update AssetIndexManifest. Continuing with disk cache..", e);
-                } else {
-                    throw new IOException("Failed to update AssetIndexManifest. Disk cache does not exist.", e);
-                }
-            }
-        }
+        ManifestUpdater.update("AssetIndexManifest " + assetIndex.getId(), assetIndexFile, downloadTask);
         return GsonUtils.loadJson(assetIndexFile, AssetIndexManifest.class);
     }
 
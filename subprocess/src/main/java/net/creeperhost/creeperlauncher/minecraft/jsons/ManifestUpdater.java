@@ -0,0 +1,140 @@
+package net.creeperhost.creeperlauncher.minecraft.jsons;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.covers1624.quack.io.IOUtils;
+import net.creeperhost.creeperlauncher.Settings;
+import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Handles updating remote json manifests which are cached on disk.
+ * <p>
+ * Manifests which have been checked within the configured freshness TTL are used
+ * without touching the network. Stale manifests are, if enabled, used immediately
+ * and revalidated in the background for the next time they are needed.
+ * <p>
+ * This only applies to manifests which are validated against the server with ETag or
+ * Last-Modified. Manifests pinned by hash or size are known to be wrong when they
+ * fail validation, so they are always updated before they are used.
+ */
+public class ManifestUpdater {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final ExecutorService REVALIDATE_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("Manifest Revalidation")
+            .setDaemon(true)
+            .build()
+    );
+    private static final Set<Path> PENDING_REVALIDATIONS = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Update the given manifest file if required.
+     *
+     * @param name         The name of the manifest, for logging.
+     * @param file         The file on disk.
+     * @param downloadTask The task to download or revalidate the file.
+     * @throws IOException If the file could not be updated, and does not exist on disk.
+     */
+    public static void update(String name, Path file, NewDownloadTask downloadTask) throws IOException {
+        if (downloadTask.isRedundant()) return;
+
+        if (Files.exists(file) && isValidatorOnly(downloadTask.getValidation())) {
+            if (isFresh(file)) {
+                LOGGER.debug("{} was checked recently, skipping update.", name);
+                return;
+            }
+            if (Settings.getManifestStaleWhileRevalidate()) {
+                revalidateAsync(name, file, downloadTask);
+                return;
+            }
+        }
+        forceUpdate(name, file, downloadTask);
+    }
+
+    /**
+     * Update the given manifest file, ignoring its freshness.
+     *
+     * @param name         The name of the manifest, for logging.
+     * @param file         The file on disk.
+     * @param downloadTask The task to download or revalidate the file.
+     * @throws IOException If the file could not be updated, and does not exist on disk.
+     */
+    public static void forceUpdate(String name, Path file, NewDownloadTask downloadTask) throws IOException {
+        try {
+            downloadTask.execute(null, null);
+            markChecked(file);
+        } catch (Throwable e) {
+            if (Files.exists(file)) {
+                LOGGER.warn("Failed to update {}. Continuing with disk cache..", name, e);
+            } else {
+                throw new IOException("Failed to update " + name + ". Disk cache does not exist.", e);
+            }
+        }
+    }
+
+    private static void revalidateAsync(String name, Path file, NewDownloadTask downloadTask) {
+        if (!PENDING_REVALIDATIONS.add(file)) return;
+
+        LOGGER.info("Using stale {}, revalidating in the background.", name);
+        REVALIDATE_EXECUTOR.execute(() -> {
+            try {
+                forceUpdate(name, file, downloadTask);
+            } catch (Throwable ex) {
+                LOGGER.warn("Background revalidation of {} failed.", name, ex);
+            } finally {
+                PENDING_REVALIDATIONS.remove(file);
+            }
+        });
+    }
+
+    private static boolean isValidatorOnly(NewDownloadTask.DownloadValidation validation) {
+        if (!validation.useETag && !validation.useOnlyIfModified) return false;
+        return validation.expectedHashes.isEmpty() && validation.expectedSize == -1;
+    }
+
+    private static boolean isFresh(Path file) {
+        long ttl = Settings.getManifestTtl();
+        if (ttl <= 0) return false;
+
+        Path marker = checkedMarker(file);
+        try {
+            if (Files.notExists(marker)) return false;
+            Instant lastChecked = Files.getLastModifiedTime(marker).toInstant();
+            Duration age = Duration.between(lastChecked, Instant.now());
+            return !age.isNegative() && age.getSeconds() < ttl;
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to read last checked time of {}.", file, ex);
+            return false;
+        }
+    }
+
+    private static void markChecked(Path file) {
+        Path marker = checkedMarker(file);
+        try {
+            if (Files.notExists(marker)) {
+                Files.createFile(IOUtils.makeParents(marker));
+            }
+            Files.setLastModifiedTime(marker, FileTime.from(Instant.now()));
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to mark {} as checked.", file, ex);
+        }
+    }
+
+    private static Path checkedMarker(Path file) {
+        // The file's own modified time is set from the Last-Modified header, so we need a sidecar.
+        return file.resolveSibling(file.getFileName() + ".lastcheck");
+    }
+}
@@ -41,6 +41,19 @@ public class VersionListManifest {
      * @throws JsonParseException Thrown when the Json cannot be parsed.
      */
     public static VersionListManifest update(Path versionsDir) throws IOException {
+        return update(versionsDir, false);
+    }
+
+    /**
+     * Updates the version list manifest.
+     *
+     * @param versionsDir The versions directory.
+     * @param force       If the manifest should be revalidated, regardless of its freshness.
+     * @return The {@link VersionListManifest} parsed from disk.
+     * @throws IOException        Thrown when an error occurs whilst loading the manifest.
+     * @throws JsonParseException Thrown when the Json cannot be parsed.
+     */
+    public static VersionListManifest update(Path versionsDir, boolean force) throws IOException {
         Path versionsFile = versionsDir.resolve("version_manifest.json");
         NewDownloadTask downloadTask = NewDownloadTask.builder()
                 .url(URL)
@@ -52,16 +65,10 @@ public class VersionListManifest {
                 )
                 .build();
 
-        if (!downloadTask.isRedundant()) {
-            try {
-                downloadTask.execute(null, null);
-            } catch (Throwable e) {
-                if (Files.exists(versionsFile)) {
-                    LOGGER.warn("Failed to update VersionListManifest. Continuing with disk cache..", e);
-                } else {
-                    throw new IOException("Failed to update VersionListManifest. Disk cache does not exist.", e);
-                }
-            }
+        if (force) {
+            ManifestUpdater.forceUpdate("VersionListManifest", versionsFile, downloadTask);
+        } else {
+            ManifestUpdater.update("VersionListManifest", versionsFile, downloadTask);
         }
         return GsonUtils.loadJson(versionsFile, VersionListManifest.class);
     }
@@ -78,9 +85,24 @@ public class VersionListManifest {
         return onlyOrDefault(versions.stream().filter(e -> e.id.equalsIgnoreCase(id)), null);
     }
 
+    /**
+     * Resolves the given id from the remote list.
+     * <p>
+     * If the id can't be found, the list may have been served from disk before a
+     * new version was released, so it is forcibly revalidated before giving up.
+     *
+     * @param versionsFolder The Versions folder.
+     * @param id             The id of the manifest to find.
+     * @return The found manifest, {@code null} if no manifest was found.
+     * @throws IOException If an IO Error occurs.
+     */
     @Nullable
     public VersionManifest resolve(Path versionsFolder, String id) throws IOException {
         VersionListManifest.Version version = locate(id);
+        if (version == null) {
+            LOGGER.info("Version {} not found in version list, revalidating.", id);
+            version = update(versionsFolder, true).locate(id);
+        }
         if (version == null) return null;
 
         return VersionManifest.update(versionsFolder, version);
@@ -96,13 +118,16 @@ public class VersionListManifest {
      */
     @Nullable
     public VersionManifest resolveOrLocal(Path versionsFolder, String id) throws IOException {
-        VersionManifest ret = resolve(versionsFolder, id);
-        if (ret != null) return ret;
+        Version version = locate(id);
+        if (version != null) return VersionManifest.update(versionsFolder, version);
 
-        LOGGER.info("Version {} not found on remote list, trying locally.", id);
+        // Mod loader versions are only ever local, don't revalidate the list for them.
         Path versionJson = versionsFolder.resolve(id).resolve(id + ".json");
-        if (Files.notExists(versionJson)) return null;
-        return JsonUtils.parse(VersionManifest.GSON, versionJson, VersionManifest.class);
+        if (Files.exists(versionJson)) {
+            LOGGER.info("Version {} not found on remote list, using local.", id);
+            return JsonUtils.parse(VersionManifest.GSON, versionJson, VersionManifest.class);
+        }
+        return resolve(versionsFolder, id);
     }
 
     public static class Latest {
@@ -27,7 +27,6 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.Pattern;
@@ -126,17 +125,7 @@ public class VersionManifest {
                 )
                 .build();
 
-        if (!downloadTask.isRedundant()) {
-            try {
-                downloadTask.execute(null, null);
-            } catch (Throwable e) {
-                if (Files.exists(versionFile)) {
-                    LOGGER.warn("Failed to update VersionManifest. Continuing with disk cache..", e);
-                } else {
-                    throw new IOException("Failed to update VersionManifest. Disk cache does not exist.", e);
-                }
-            }
-        }
+        ManifestUpdater.update("VersionManifest " + version.id, versionFile, downloadTask);
         return JsonUtils.parse(GSON, versionFile, VersionManifest.class);
     }
 
@@ -1,20 +1,40 @@
 package net.creeperhost.creeperlauncher.minecraft.modloader.forge;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import net.covers1624.quack.util.HashUtils;
 import net.creeperhost.creeperlauncher.Constants;
 import net.creeperhost.creeperlauncher.pack.Instance;
 import net.creeperhost.creeperlauncher.util.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.List;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 @Deprecated
 public class ForgeJarModLoader {
     private static final Logger LOGGER = LogManager.getLogger();
 
+    /**
+     * Bumped whenever the merge output changes.
+     */
+    private static final int FORMAT = 2;
+
+    /**
+     * Stores the key of the inputs merged.jar was built from, inside instmods.
+     * Contains 'merged', so it's never picked up as a jar mod.
+     */
+    private static final String MERGED_KEY = "merged.key";
+
     @Deprecated // This can be done very differently!
 	public static void prePlay(Instance instance) {
 		try {
@@ -38,68 +58,150 @@ public class ForgeJarModLoader {
             Path versionsJar = Constants.VERSIONS_FOLDER_LOC.resolve(newname).resolve(newname + ".jar");
 			FileUtils.createDirectories(versionsJar.getParent());
 
-			//Remove the forge jar that is loaded so we can build a new one, This will be required for us to load newly added core mods
-			Files.deleteIfExists(forgeVersion);
-
 			if (Files.exists(mcFile))
 			{
                 LOGGER.info("mc file exists, attempting to merge jars");
 				try
 				{
 					Path merged = instMods.resolve("merged.jar");
+                    Path keyFile = instMods.resolve(MERGED_KEY);
+
+                    List<Path> inputs = new ArrayList<>();
+                    inputs.add(mcFile);
+                    inputs.addAll(findJarMods(instMods, merged));
+                    inputs.addAll(findJarMods(jarMods, merged));
+
+                    String key = computeKey(inputs);
+                    if (Files.exists(merged) && Files.exists(keyFile) && Files.readString(keyFile).equals(key)) {
+                        LOGGER.info("Jar mods have not changed, reusing merged.jar");
+                    } else {
+                        // Remove the key first, a half built jar must never be reused.
+                        Files.deleteIfExists(keyFile);
+                        buildMerged(inputs, merged);
+                        Files.writeString(keyFile, key);
+                        LOGGER.info("All files successfully merged");
+                    }
 
-					//Remove the prebuilt jar so we can make a fresh one
-					Files.deleteIfExists(merged);
-
-					Files.copy(mcFile, merged);
-
-					FileUtils.removeMeta(merged);
-
-					List<Path> instFiles = FileUtils.listDir(instMods);
-                    List<Path> jarFiles = FileUtils.listDir(jarMods);
-
-					if (instFiles != null) {
-                        LOGGER.info("instmod folder has mods to merge, attempting to merge jars");
-						//Merge every file in the instmods folder that is not the mc jar or the merge target
-						for (Path instFile : instFiles) {
-							if (instFile != null && !instFile.equals(merged)) {
-								if (!instFile.getFileName().toString().contains("minecraft") && !instFile.getFileName().toString().contains("merged")) {
-                                    LOGGER.info("Merging {} into the merged.jar", instFile.getFileName());
-									if (!FileUtils.mergeJars(instFile, merged)) {
-                                        LOGGER.error("Filed to merge {} into merged.jar", instFile.getFileName());
-									}
-								}
-							}
-						}
-
-						if (jarFiles != null) {
-                            LOGGER.info("jarmods folder has mods to merge, attempting to merge jars");
-							//Merge every file in the instmods folder that is not the mc jar or the merge target
-							for (Path instFile : jarFiles) {
-								if (!instFile.equals(merged)) {
-									if (!instFile.getFileName().toString().contains("minecraft") && !instFile.getFileName().toString().contains("merged")) {
-                                        LOGGER.info("Merging {} into the merged.jar", instFile.getFileName());
-										if (!FileUtils.mergeJars(instFile, merged)) {
-                                            LOGGER.error("Filed to merge {} into merged.jar", instFile.getFileName());
-										}
-									}
-								}
-							}
-						}
-					}
 					//Move the merged jar to it location in the libs folder to load
-					if (Files.exists(merged)) {
-						Files.copy(merged, versionsJar, StandardCopyOption.REPLACE_EXISTING);
-						Files.copy(merged, forgeVersion, StandardCopyOption.REPLACE_EXISTING);
-					}
-                    LOGGER.info("All files successfully merged");
+                    copyIfChanged(merged, versionsJar);
+                    copyIfChanged(merged, forgeVersion);
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
-			}
+			} else {
+                //Remove the forge jar that is loaded, there is nothing to build a new one from
+                Files.deleteIfExists(forgeVersion);
+            }
 		} catch (Exception e)
 		{
 			e.printStackTrace();
 		}
 	}
+
+    // Every file in the folder that is not the mc jar or the merge target, in the order they are merged.
+    private static List<Path> findJarMods(Path dir, Path merged) {
+        List<Path> jarMods = new ArrayList<>();
+        for (Path file : FileUtils.listDir(dir)) {
+            String name = file.getFileName().toString();
+            if (file.equals(merged) || name.contains("minecraft") || name.contains("merged")) continue;
+            if (!Files.isRegularFile(file)) continue;
+            jarMods.add(file);
+        }
+        return jarMods;
+    }
+
+    private static String computeKey(List<Path> inputs) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(FORMAT);
+        for (Path input : inputs) {
+            hasher.putString(input.getFileName().toString(), StandardCharsets.UTF_8);
+            hasher.putBytes(HashUtils.hash(Hashing.sha256(), input).asBytes());
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Builds the merged jar in a single pass.
+     * <p>
+     * Later inputs override entries from earlier inputs, and META-INF is stripped from the
+     * Minecraft jar. Entries are streamed from each input straight into the output, one at a
+     * time. Stored entries stay stored, everything else is deflated.
+     */
+    private static void buildMerged(List<Path> inputs, Path merged) throws IOException {
+        // Entry name -> the index of the input which provides it.
+        Map<String, Integer> owners = new HashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            Path input = inputs.get(i);
+            try (ZipFile zip = new ZipFile(input.toFile())) {
+                for (ZipEntry entry : Collections.list(zip.entries())) {
+                    if (entry.isDirectory()) continue;
+                    if (i == 0 && entry.getName().startsWith("META-INF/")) continue;
+                    owners.put(entry.getName(), i);
+                }
+                if (i != 0) {
+                    LOGGER.info("Merging {} into the merged.jar", input.getFileName());
+                }
+            } catch (IOException ex) {
+                LOGGER.error("Filed to merge {} into merged.jar", input.getFileName(), ex);
+            }
+        }
+        Set<Integer> owning = new HashSet<>(owners.values());
+
+        Path tempFile = merged.resolveSibling(merged.getFileName() + ".tmp");
+        Set<String> dirs = new HashSet<>();
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(tempFile))) {
+            for (int i = 0; i < inputs.size(); i++) {
+                // Unreadable, or entirely overridden by later inputs.
+                if (!owning.contains(i)) continue;
+
+                try (ZipFile zip = new ZipFile(inputs.get(i).toFile())) {
+                    for (ZipEntry entry : Collections.list(zip.entries())) {
+                        Integer owner = owners.get(entry.getName());
+                        if (entry.isDirectory() || owner == null || owner != i) continue;
+
+                        writeParents(zos, dirs, entry.getName());
+                        zos.putNextEntry(copyEntry(entry));
+                        try (InputStream is = zip.getInputStream(entry)) {
+                            is.transferTo(zos);
+                        }
+                        zos.closeEntry();
+                    }
+                }
+            }
+        }
+        Files.move(tempFile, merged, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // A fresh entry, the compressed size of a deflated entry depends on how it's deflated.
+    private static ZipEntry copyEntry(ZipEntry entry) {
+        ZipEntry copy = new ZipEntry(entry.getName());
+        if (entry.getMethod() == ZipEntry.STORED) {
+            copy.setMethod(ZipEntry.STORED);
+            copy.setSize(entry.getSize());
+            copy.setCompressedSize(entry.getSize());
+            copy.setCrc(entry.getCrc());
+        }
+        return copy;
+    }
+
+    private static void writeParents(ZipOutputStream zos, Set<String> dirs, String name) throws IOException {
+        int slash = name.lastIndexOf('/');
+        if (slash == -1) return;
+
+        String dir = name.substring(0, slash + 1);
+        if (!dirs.add(dir)) return;
+
+        writeParents(zos, dirs, dir.substring(0, dir.length() - 1));
+        zos.putNextEntry(new ZipEntry(dir));
+        zos.closeEntry();
+    }
+
+    private static void copyIfChanged(Path merged, Path dest) throws IOException {
+        if (Files.exists(dest)
+                && Files.size(dest) == Files.size(merged)
+                && Files.getLastModifiedTime(dest).equals(Files.getLastModifiedTime(merged))) {
+            return;
+        }
+        Files.copy(merged, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
 }
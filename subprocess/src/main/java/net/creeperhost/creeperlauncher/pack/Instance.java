@@ -8,6 +8,7 @@ import net.covers1624.quack.gson.JsonUtils;
 import net.covers1624.quack.platform.OperatingSystem;
 import net.covers1624.quack.util.HashUtils;
 import net.creeperhost.creeperlauncher.*;
+import net.creeperhost.creeperlauncher.api.data.instances.InstanceUpdateAvailableData;
 import net.creeperhost.creeperlauncher.data.InstanceJson;
 import net.creeperhost.creeperlauncher.data.InstanceModifications;
 import net.creeperhost.creeperlauncher.data.InstanceModifications.ModOverride;
@@ -48,12 +49,19 @@ import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 public class Instance {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
+    /**
+     * How long a launch waits for the version manifest poll, in milliseconds.
+     */
+    private static final long VERSION_POLL_DEADLINE = 500;
+
     public final Path path;
     public InstanceJson props;
     private @Nullable InstanceModifications modifications;
@@ -64,9 +72,12 @@ public class Instance {
     @Nullable
     public CancellationToken prepareToken;
     private int loadingModPort;
-    public ModpackVersionManifest versionManifest;
+    // Replaced whenever a poll completes. Launches take a single snapshot, so a poll finishing mid-launch only applies to the next one.
+    public volatile ModpackVersionManifest versionManifest;
 
     private boolean pendingCloudInstance;
+    @Nullable
+    private CompletableFuture<Void> versionPollFuture;
 
     private long startTime;
 
@@ -199,22 +210,60 @@ public class Instance {
         }
     }
 
-    public synchronized void pollVersionManifest() {
+    public void pollVersionManifest() {
         if (pendingCloudInstance) return; // Do nothing for pending cloud save instances.
         if (props.isImport) return; // Can't update manifests for imports.
         try {
+            // Query outside the lock, the API may be slow.
             Pair<ModpackManifest, ModpackVersionManifest> newManifest = ModpackVersionManifest.queryManifests(props.id, props.versionId, props._private, props.packType);
             if (newManifest == null) {
                 LOGGER.warn("Failed to update modpack version manifest for instance. This may be a private pack.");
                 return;
             }
-            versionManifest = newManifest.getRight();
-            JsonUtils.write(ModpackVersionManifest.GSON, path.resolve("version.json"), versionManifest, ModpackVersionManifest.class);
+            synchronized (this) {
+                versionManifest = newManifest.getRight();
+                JsonUtils.write(ModpackVersionManifest.GSON, path.resolve("version.json"), versionManifest, ModpackVersionManifest.class);
+            }
+            notifyUpdateAvailable(newManifest.getLeft());
         } catch (IOException ex) {
             LOGGER.warn("Failed to update manifest for modpack. This may be a private pack.", ex);
         }
     }
 
+    /**
+     * Poll the version manifest in the background.
+     * <p>
+     * If a poll is already running, its future is returned instead of starting another.
+     *
+     * @return The future for the poll. Never completes exceptionally.
+     */
+    public synchronized CompletableFuture<Void> pollVersionManifestAsync() {
+        if (versionPollFuture != null && !versionPollFuture.isDone()) return versionPollFuture;
+
+        versionPollFuture = CompletableFuture.runAsync(() -> {
+            try {
+                pollVersionManifest();
+            } catch (Throwable ex) {
+                LOGGER.warn("Failed to poll version manifest.", ex);
+            }
+        }, CreeperLauncher.INSTANCE_LAUNCHER_POOL);
+        return versionPollFuture;
+    }
+
+    private void notifyUpdateAvailable(ModpackManifest modpackManifest) {
+        ModpackManifest.Version latest = null;
+        for (ModpackManifest.Version version : modpackManifest.getVersions()) {
+            if (latest == null || version.getId() > latest.getId()) {
+                latest = version;
+            }
+        }
+        if (latest == null || latest.getId() <= props.versionId) return;
+
+        LOGGER.info("Update available for instance {}({}): {}", getName(), getUuid(), latest.getName());
+        if (Settings.webSocketAPI == null) return;
+        Settings.webSocketAPI.sendMessage(new InstanceUpdateAvailableData(getUuid(), props.versionId, latest.getId(), latest.getName(), latest.getType()));
+    }
+
     // TODO, In theory this meta should be getting added to the regular version manifest.
     //       When that happens we can nuke this.
     public @Nullable ModpackVersionModsManifest getModsManifest() {
@@ -264,13 +313,27 @@ public class Instance {
         }
         LOGGER.info("Resetting launcher..");
         launcher.reset();
+        LaunchTimeline timeline = launcher.startTimeline();
         // TODO, why do we need to do this? Can anything in here change that affects launching? Only the Java versions perhaps?
+        // The launch uses the last polled manifest from disk if the API doesn't respond quickly,
+        // the poll continues in the background and notifies the frontend of any update.
         LOGGER.info("Polling version manifest.");
-        pollVersionManifest();
+        try (LaunchTimeline.Phase ignored = timeline.begin("Poll version manifest")) {
+            pollVersionManifestAsync().get(VERSION_POLL_DEADLINE, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            LOGGER.info("Version manifest poll is taking too long, continuing with cached manifest.");
+        } catch (InterruptedException | ExecutionException ex) {
+            LOGGER.warn("Failed to wait for version manifest poll.", ex);
+        }
+
+        // The manifest for this launch, whatever the poll does from here on.
+        ModpackVersionManifest launchManifest = versionManifest;
 
         LOGGER.info("Scanning instance.");
-        InstanceScanner scanner = new InstanceScanner(path, versionManifest);
-        scanner.scan();
+        InstanceScanner scanner = new InstanceScanner(path, launchManifest);
+        try (LaunchTimeline.Phase ignored = timeline.begin("Scan instance")) {
+            scanner.scan();
+        }
         if (scanner.isPotentiallyInvalid()) {
             boolean abort = DialogUtil.confirmDialog("Potentially invalid instance", "Abort", "Launch", "Your instance appears to have duplicate mods or invalid scripts.\nIt is highly recommended that you re-install your instance.\nDo you want to abort launching?");
             if (abort) {
@@ -279,7 +342,7 @@ public class Instance {
         }
 
         LOGGER.info("Adding start/shutdown tasks..");
-        launcher.withStartTask(ctx -> {
+        launcher.withStartTask("Arguments", ctx -> {
             ctx.shellArgs.addAll(MiscUtils.splitCommand(props.shellArgs));
             
             // TODO, `extraArgs` and `jvmArgs` should be an array
@@ -298,7 +361,7 @@ public class Instance {
         });
 
         if (CreeperLauncher.CLOUD_SAVE_MANAGER.isConfigured() && props.cloudSaves) {
-            launcher.withStartTask(ctx -> {
+            launcher.withStartTask("Cloud sync", ctx -> {
                 LOGGER.info("Attempting start cloud sync..");
                 try {
                     CloudSaveManager.SyncResult result = CreeperLauncher.CLOUD_SAVE_MANAGER.requestInstanceSync(this)
@@ -316,6 +379,8 @@ public class Instance {
                 }
             });
             launcher.withExitTask(() -> {
+                // Must finish before the sync starts, they both write the sync index.
+                CreeperLauncher.CLOUD_SAVE_MANAGER.stopTrickleSync(this);
                 LOGGER.info("Attempting close cloud sync..");
                 // Don't wait on future here, just let it happen in the background.
                 CreeperLauncher.CLOUD_SAVE_MANAGER.requestInstanceSync(this);
@@ -324,17 +389,17 @@ public class Instance {
 
         if (props.hasInstMods) {
             // TODO, Jar Mods can be done differently
-            launcher.withStartTask(ctx -> {
+            launcher.withStartTask("Jar mods", ctx -> {
                 ForgeJarModLoader.prePlay(this);
             });
         }
 
-        launcher.withStartTask(ctx -> {
+        launcher.withStartTask("Analytics", ctx -> {
             Analytics.sendPlayRequest(getId(), getVersionId(), props.packType);
         });
 
         OperatingSystem os = OperatingSystem.current();
-        launcher.withStartTask(ctx -> {
+        launcher.withStartTask("Support files", ctx -> {
             // Nuke old files.
             Files.deleteIfExists(path.resolve("Log4jPatcher-1.0.1.jar"));
             Files.deleteIfExists(path.resolve("mods/launchertray-1.0.jar"));
@@ -388,7 +453,7 @@ public class Instance {
             }
         });
 
-        launcher.withStartTask(ctx -> {
+        launcher.withStartTask("Save instance", ctx -> {
             startTime = System.currentTimeMillis();
             props.lastPlayed = startTime / 1000L;
             saveJson();
@@ -399,7 +464,23 @@ public class Instance {
             saveJson();
         });
         LOGGER.info("Handing off to launcher..");
-        launcher.launch(token, offlineUsername);
+        launcher.launch(token, offlineUsername, launchManifest);
+        if (CreeperLauncher.CLOUD_SAVE_MANAGER.isConfigured() && props.cloudSaves) {
+            CreeperLauncher.CLOUD_SAVE_MANAGER.startTrickleSync(this);
+        }
+    }
+
+    /**
+     * Speculatively prepare this instance to be launched in the background.
+     *
+     * @return If pre-warming was started, {@code false} if the instance can't be pre-warmed right now.
+     * @see InstanceLauncher#prewarm()
+     */
+    public boolean prewarm() {
+        if (pendingCloudInstance || prepareFuture != null || launcher.isRunning()) return false;
+
+        launcher.prewarm();
+        return true;
     }
 
     public InstanceLauncher getLauncher() {
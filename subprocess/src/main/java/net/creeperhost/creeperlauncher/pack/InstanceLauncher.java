@@ -2,26 +2,35 @@ package net.creeperhost.creeperlauncher.pack;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.covers1624.jdkutils.JavaInstall;
 import net.covers1624.jdkutils.JavaVersion;
 import net.covers1624.quack.io.IOUtils;
-import net.covers1624.quack.maven.MavenNotation;
 import net.covers1624.quack.util.DataUtils;
 import net.covers1624.quack.util.SneakyUtils.ThrowingConsumer;
 import net.covers1624.quack.util.SneakyUtils.ThrowingRunnable;
 import net.creeperhost.creeperlauncher.Constants;
+import net.creeperhost.creeperlauncher.CreeperLauncher;
 import net.creeperhost.creeperlauncher.Settings;
 import net.creeperhost.creeperlauncher.accounts.AccountManager;
 import net.creeperhost.creeperlauncher.accounts.AccountProfile;
 import net.creeperhost.creeperlauncher.api.data.instances.LaunchInstanceData;
+import net.creeperhost.creeperlauncher.data.modpack.ModpackVersionManifest;
 import net.creeperhost.creeperlauncher.install.tasks.InstallAssetsTask;
 import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask;
+import net.creeperhost.creeperlauncher.install.tasks.ParallelTaskHelper;
+import net.creeperhost.creeperlauncher.install.tasks.ParallelTaskProgressAggregator;
+import net.creeperhost.creeperlauncher.install.tasks.Task;
 import net.creeperhost.creeperlauncher.install.tasks.TaskProgressAggregator;
 import net.creeperhost.creeperlauncher.install.tasks.TaskProgressListener;
 import net.creeperhost.creeperlauncher.minecraft.jsons.AssetIndexManifest;
 import net.creeperhost.creeperlauncher.minecraft.jsons.VersionListManifest;
 import net.creeperhost.creeperlauncher.minecraft.jsons.VersionManifest;
 import net.creeperhost.creeperlauncher.minecraft.jsons.VersionManifest.AssetIndex;
+import net.creeperhost.creeperlauncher.util.ElapsedTimer;
+import net.creeperhost.creeperlauncher.util.FileUtils;
 import net.creeperhost.creeperlauncher.util.QuackProgressAdapter;
 import net.creeperhost.creeperlauncher.util.StreamGobblerLog;
 import org.apache.commons.lang3.text.StrLookup;
@@ -33,20 +42,19 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
-import static net.covers1624.quack.collection.ColUtils.iterable;
-import static net.covers1624.quack.util.SneakyUtils.sneak;
 import static net.creeperhost.creeperlauncher.minecraft.jsons.VersionManifest.LEGACY_ASSETS_VERSION;
 import static net.creeperhost.creeperlauncher.util.Log4jMarkers.*;
 
@@ -60,13 +68,34 @@ public class InstanceLauncher {
     private static final Logger LOGGER = LogManager.getLogger();
     private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
 
+    /**
+     * Runs speculative launch preparation, at a low priority so it doesn't compete with the UI.
+     */
+    private static final ExecutorService PREWARM_POOL = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("Instance Pre-warm %d")
+            .setDaemon(true)
+            .setPriority(Thread.MIN_PRIORITY)
+            .build()
+    );
+
+    private static final NativesCache NATIVES_CACHE = new NativesCache(Constants.BIN_LOCATION.resolve("natives"));
+
+    /**
+     * Marker written into virtual asset trees once they are fully built, contains a fingerprint of the asset index.
+     */
+    private static final String VIRTUAL_ASSETS_MARKER = ".ftba_assets";
+
+    /**
+     * The resolved launch plan, stored inside the instance directory.
+     */
+    private static final String LAUNCH_PLAN_FILE = ".ftba/launch_plan.json";
+
     private static final List<String> TELEMETRY_ARGS = List.of("clientid", "auth_xuid"); // Tracking & XBox related
     
     private final Instance instance;
     private Phase phase = Phase.NOT_STARTED;
 
     private final List<VersionManifest> manifests = new ArrayList<>();
-    private final List<Path> tempDirs = new LinkedList<>();
     @Nullable
     private Thread processThread;
     @Nullable
@@ -77,7 +106,10 @@ public class InstanceLauncher {
     private boolean forceStopped;
 
     private final ProgressTracker progressTracker = new ProgressTracker();
-    private final List<ThrowingConsumer<LaunchContext, Throwable>> startTasks = new LinkedList<>();
+    private LaunchTimeline timeline = new LaunchTimeline();
+    // The latest pre-warm, swapped atomically as prewarm and cancelPrewarm may race.
+    private final AtomicReference<Prewarm> prewarm = new AtomicReference<>();
+    private final List<StartTask> startTasks = new LinkedList<>();
     private final List<ThrowingRunnable<Throwable>> exitTasks = new LinkedList<>();
 
     private static final int NUM_STEPS = 5;
@@ -89,10 +121,11 @@ public class InstanceLauncher {
     /**
      * Adds a task to execute when this Instance starts.
      *
+     * @param name The name of the task, for the launch timeline.
      * @param task The task.
      */
-    public void withStartTask(ThrowingConsumer<LaunchContext, Throwable> task) {
-        startTasks.add(task);
+    public void withStartTask(String name, ThrowingConsumer<LaunchContext, Throwable> task) {
+        startTasks.add(new StartTask(name, task));
     }
 
     /**
@@ -104,6 +137,18 @@ public class InstanceLauncher {
         exitTasks.add(task);
     }
 
+    /**
+     * Starts a new launch timeline, replacing the previous one.
+     * <p>
+     * The timeline is finished and saved once the launch has been prepared.
+     *
+     * @return The timeline.
+     */
+    public LaunchTimeline startTimeline() {
+        timeline = new LaunchTimeline();
+        return timeline;
+    }
+
     /**
      * If the instance has already been started and is currently running.
      *
@@ -127,28 +172,37 @@ public class InstanceLauncher {
      * <p>
      * It is illegal to call this method if {@link #isRunning()} returns true.
      *
+     * @param versionManifest The instance's version manifest, used for the whole launch even if a newer one is polled.
      * @throws InstanceLaunchException If there was a direct error preparing the instance to be launched.
      */
-    public synchronized void launch(CancellationToken token, @Nullable String offlineUsername) throws InstanceLaunchException {
+    public synchronized void launch(CancellationToken token, @Nullable String offlineUsername, ModpackVersionManifest versionManifest) throws InstanceLaunchException {
         assert !isRunning();
         LOGGER.info("Attempting to launch instance {}({})", instance.getName(), instance.getUuid());
         setPhase(Phase.INITIALIZING);
-        progressTracker.reset(NUM_STEPS);
+        progressTracker.reset(NUM_STEPS, false);
 
         Path assetsDir = Constants.BIN_LOCATION.resolve("assets");
         Path versionsDir = Constants.BIN_LOCATION.resolve("versions");
         Path librariesDir = Constants.BIN_LOCATION.resolve("libraries");
 
-        Set<String> features = new HashSet<>();
-        if (instance.props.width != 0 && instance.props.height != 0) {
-            features.add("has_custom_resolution");
-        }
+        Set<String> features = collectFeatures();
 
         Set<String> privateTokens = new HashSet<>();
 
         // This is run outside the future, as whatever is calling this method should immediately handle any errors
         // preparing the instance to be launched. It is not fun to propagate exceptions/errors across threads.
-        ProcessBuilder builder = prepareProcess(token, offlineUsername, assetsDir, versionsDir, librariesDir, features, privateTokens);
+        ProcessBuilder builder;
+        String result = "failed";
+        try (LaunchTimeline.Phase ignored = timeline.begin("Prepare process")) {
+            builder = prepareProcess(token, offlineUsername, versionManifest, assetsDir, versionsDir, librariesDir, features, privateTokens);
+            result = "success";
+        } catch (CancellationToken.Cancellation ex) {
+            result = "cancelled";
+            throw ex;
+        } finally {
+            timeline.finish(result);
+            LaunchTimeline.append(instance, timeline);
+        }
 
         // Start thread.
         processThread = new Thread(() -> {
@@ -230,6 +284,91 @@ public class InstanceLauncher {
         processThread.start();
     }
 
+    /**
+     * Speculatively prepares the instance to be launched in the background.
+     * <p>
+     * This validates manifests, assets, libraries and natives, and stores the resulting
+     * {@link LaunchPlan}. If nothing changes before the instance is launched, the launch
+     * will reuse the plan instead of preparing again.
+     * <p>
+     * Does nothing if the instance is running, or is already being pre-warmed.
+     * Any in progress pre-warm is cancelled by {@link #reset()}.
+     */
+    public void prewarm() {
+        if (isRunning()) return;
+        Prewarm current = prewarm.get();
+        if (current != null && !current.future().isDone()) return;
+
+        Prewarm next = new Prewarm(new CancellationToken(), new CompletableFuture<>());
+        // Lost to a concurrent prewarm or cancelPrewarm.
+        if (!prewarm.compareAndSet(current, next)) return;
+
+        PREWARM_POOL.execute(() -> {
+            try {
+                synchronized (this) {
+                    if (isRunning() || next.token().isCanceled()) return;
+                    try {
+                        doPrewarm(next.token());
+                    } catch (CancellationToken.Cancellation ignored) {
+                        LOGGER.info("Pre-warm of instance {}({}) cancelled.", instance.getName(), instance.getUuid());
+                    } catch (Throwable ex) {
+                        // Not fatal, the launch will try again and report any errors.
+                        LOGGER.warn("Failed to pre-warm instance {}({}).", instance.getName(), instance.getUuid(), ex);
+                    } finally {
+                        manifests.clear();
+                    }
+                }
+            } finally {
+                next.future().complete(null);
+            }
+        });
+    }
+
+    private void doPrewarm(CancellationToken token) throws Throwable {
+        Path assetsDir = Constants.BIN_LOCATION.resolve("assets");
+        Path versionsDir = Constants.BIN_LOCATION.resolve("versions");
+        Path librariesDir = Constants.BIN_LOCATION.resolve("libraries");
+        Set<String> features = collectFeatures();
+        // A poll finishing mid pre-warm only affects the next pre-warm or launch.
+        ModpackVersionManifest versionManifest = instance.versionManifest;
+
+        Path planFile = instance.getDir().resolve(LAUNCH_PLAN_FILE);
+        LaunchPlan plan = LaunchPlan.load(planFile);
+        if (plan != null && plan.matches(instance, versionManifest, features) && plan.isIntact()) {
+            LOGGER.info("Instance {}({}) is already warm.", instance.getName(), instance.getUuid());
+            return;
+        }
+
+        LOGGER.info("Pre-warming instance {}({})..", instance.getName(), instance.getUuid());
+        ElapsedTimer timer = new ElapsedTimer();
+        progressTracker.reset(NUM_STEPS, true);
+        LaunchTimeline prewarmTimeline = new LaunchTimeline();
+        String result = "failed";
+        try {
+            LaunchGraph graph = new LaunchGraph(token, PREWARM_POOL, prewarmTimeline);
+            // Start tasks are only run when launching, they will be accounted for by the intact check.
+            plan = resolvePlan(graph, CompletableFuture.completedFuture(null), versionManifest, instance.getDir().toAbsolutePath(), assetsDir, versionsDir, librariesDir, features);
+            plan.save(planFile);
+            result = "prewarmed";
+        } catch (CancellationToken.Cancellation ex) {
+            result = "prewarm cancelled";
+            throw ex;
+        } finally {
+            prewarmTimeline.finish(result);
+            LaunchTimeline.append(instance, prewarmTimeline);
+        }
+        LOGGER.info("Pre-warmed instance {}({}) in {}.", instance.getName(), instance.getUuid(), timer.elapsedStr());
+    }
+
+    private void cancelPrewarm() {
+        Prewarm current = prewarm.getAndSet(null);
+        if (current == null) return;
+
+        current.token().cancel();
+        // Wait for it to notice, it shares state with the launch.
+        current.future().join();
+    }
+
     /**
      * Triggers a force stop of the running instance.
      * <p>
@@ -250,6 +389,7 @@ public class InstanceLauncher {
      */
     public void reset() throws InstanceLaunchException {
         if (isRunning()) throw new InstanceLaunchException("Instance is currently running. Stop it first.");
+        cancelPrewarm();
         if (phase == Phase.NOT_STARTED) return;
 
         assert process == null;
@@ -284,90 +424,47 @@ public class InstanceLauncher {
                 LOGGER.error(SENTRY_ONLY, "Failed to execute instance exit tasks.", e);
             }
         }
-
-        for (Path tempDir : tempDirs) {
-            if (Files.notExists(tempDir)) continue;
-            LOGGER.info("Cleaning up temporary directory: {}", tempDir);
-            try (Stream<Path> files = Files.walk(tempDir)) {
-                files
-                        .filter(Files::exists)
-                        .sorted(Comparator.reverseOrder())
-                        .forEach(sneak(Files::delete));
-            } catch (IOException e) {
-                LOGGER.warn("Failed to delete temp directory. Scheduling for app exit.");
-                tempDir.toFile().deleteOnExit();
-            }
-        }
-        tempDirs.clear();
     }
 
-    private ProcessBuilder prepareProcess(CancellationToken token, String offlineUsername, Path assetsDir, Path versionsDir, Path librariesDir, Set<String> features, Set<String> privateTokens) throws InstanceLaunchException {
+    private ProcessBuilder prepareProcess(CancellationToken token, String offlineUsername, ModpackVersionManifest versionManifest, Path assetsDir, Path versionsDir, Path librariesDir, Set<String> features, Set<String> privateTokens) throws InstanceLaunchException {
         try {
-            progressTracker.startStep("Pre-Start Tasks"); // TODO locale support.
             Path gameDir = instance.getDir().toAbsolutePath();
             LaunchContext context = new LaunchContext();
-            for (ThrowingConsumer<LaunchContext, Throwable> startTask : startTasks) {
-                startTask.accept(context);
-            }
-            progressTracker.finishStep();
-
-            token.throwIfCancelled();
-
-            progressTracker.startStep("Validate Java Runtime");
-            Path javaExecutable;
-            if (instance.props.embeddedJre) {
-                String javaTarget = instance.versionManifest.getTargetVersion("runtime");
-                Path javaHome;
-                if (javaTarget == null) {
-                    LOGGER.warn("VersionManifest does not specify java runtime version. Falling back to Vanilla major version, latest.");
-                    JavaVersion version = getJavaVersion();
-                    javaHome = Constants.getJdkManager().provisionJdk(
-                            version,
-                            null,
-                            true,
-                            new QuackProgressAdapter(progressTracker.listenerForStep(true))
-                    );
+            LaunchGraph graph = new LaunchGraph(token, CreeperLauncher.INSTANCE_LAUNCHER_POOL, timeline);
+
+            // Start tasks may modify the instance, the client jar and libraries (Jar mods),
+            // anything which touches those must wait for them.
+            CompletableFuture<Void> startTasksStep = graph.step("Pre-Start Tasks", (t, p) -> {
+                ProgressTracker.Step step = progressTracker.startStep("Pre-Start Tasks"); // TODO locale support.
+                for (StartTask startTask : startTasks) {
+                    t.throwIfCancelled();
+                    try (LaunchTimeline.Phase ignored = timeline.begin("Start task: " + startTask.name())) {
+                        startTask.task().accept(context);
+                    }
+                }
+                step.finish();
+                return null;
+            });
+            Path planFile = instance.getDir().resolve(LAUNCH_PLAN_FILE);
+            LaunchPlan plan = LaunchPlan.load(planFile);
+            if (plan != null && plan.matches(instance, versionManifest, features)) {
+                // Start tasks always run, and may change files the plan references. Check it afterwards.
+                graph.await();
+                if (plan.isIntact()) {
+                    LOGGER.info("Using cached launch plan.");
+                    timeline.usedCachedPlan = true;
                 } else {
-                    javaHome = Constants.getJdkManager().provisionJdk(
-                            javaTarget,
-                            true,
-                            new QuackProgressAdapter(progressTracker.listenerForStep(true))
-                    );
+                    plan = null;
                 }
-                javaExecutable = JavaInstall.getJavaExecutable(javaHome, true);
             } else {
-                javaExecutable = instance.props.jrePath;
+                plan = null;
+            }
+            if (plan == null) {
+                LOGGER.info("Resolving launch plan..");
+                LaunchPlan.invalidate(planFile);
+                plan = resolvePlan(graph, startTasksStep, versionManifest, gameDir, assetsDir, versionsDir, librariesDir, features);
+                plan.save(planFile);
             }
-            progressTracker.finishStep();
-
-            prepareManifests(token, versionsDir);
-
-            token.throwIfCancelled();
-
-            progressTracker.startStep("Validate assets");
-            Pair<AssetIndex, AssetIndexManifest> assetPair = checkAssets(token, versionsDir);
-            Path virtualAssets = buildVirtualAssets(assetPair.getLeft(), assetPair.getRight(), gameDir, assetsDir);
-            progressTracker.finishStep();
-
-            token.throwIfCancelled();
-
-            List<VersionManifest.Library> libraries = collectLibraries(features);
-            // Mojang may change libraries mid version.
-
-            progressTracker.startStep("Validate libraries");
-            validateLibraries(token, librariesDir, libraries);
-            progressTracker.finishStep();
-
-            token.throwIfCancelled();
-
-            progressTracker.startStep("Validate client");
-            validateClient(token, versionsDir);
-            progressTracker.finishStep();
-
-            token.throwIfCancelled();
-
-            Path nativesDir = versionsDir.resolve(instance.props.modLoader).resolve(instance.props.modLoader + "-natives-" + System.nanoTime());
-            extractNatives(nativesDir, librariesDir, libraries);
 
             Map<String, String> subMap = new HashMap<>();
             AccountProfile profile = AccountManager.get().getActiveProfile();
@@ -403,30 +500,25 @@ public class InstanceLauncher {
             subMap.put("version_name", instance.props.modLoader);
             subMap.put("game_directory", gameDir.toString());
             subMap.put("assets_root", assetsDir.toAbsolutePath().toString());
-            subMap.put("game_assets", virtualAssets.toAbsolutePath().toString());
-            subMap.put("assets_index_name", manifests.get(0).assets);
-            subMap.put("version_type", manifests.get(0).type);
+            subMap.put("game_assets", plan.virtualAssets.toString());
+            subMap.put("assets_index_name", plan.assetsIndexName);
+            subMap.put("version_type", plan.versionType);
 
             subMap.put("launcher_name", "FTBApp");
             subMap.put("launcher_version", Constants.APPVERSION);
-            subMap.put("primary_jar", getGameJar(versionsDir).toAbsolutePath().toString());
+            subMap.put("primary_jar", plan.primaryJar.toString());
             subMap.put("memory", String.valueOf(instance.props.memory));
 
             subMap.put("resolution_width", String.valueOf(instance.props.width));
             subMap.put("resolution_height", String.valueOf(instance.props.height));
 
-            subMap.put("natives_directory", nativesDir.toAbsolutePath().toString());
-            List<Path> classpath = collectClasspath(librariesDir, versionsDir, libraries);
-            subMap.put("classpath", classpath.stream().distinct().map(e -> e.toAbsolutePath().toString()).collect(Collectors.joining(File.pathSeparator)));
+            subMap.put("natives_directory", plan.nativesDir.toString());
+            subMap.put("classpath", plan.classpath.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator)));
             subMap.put("classpath_separator", File.pathSeparator);
             subMap.put("library_directory", librariesDir.toAbsolutePath().toString());
 
-            AssetIndexManifest.AssetObject icon = assetPair.getRight().objects.get("icons/minecraft.icns");
-            if (icon != null) {
-                Path path = Constants.BIN_LOCATION.resolve("assets")
-                        .resolve("objects")
-                        .resolve(icon.getPath());
-                subMap.put("minecraft_icon", path.toAbsolutePath().toString());
+            if (plan.minecraftIcon != null) {
+                subMap.put("minecraft_icon", plan.minecraftIcon.toString());
             }
 
             StrSubstitutor sub = new StrSubstitutor(new StrLookup<>() {
@@ -445,16 +537,16 @@ public class InstanceLauncher {
                 }
             });
 
-            List<String> jvmArgs = VersionManifest.collectJVMArgs(manifests, features).stream()
+            List<String> jvmArgs = plan.jvmArgs.stream()
                     .map(sub::replace)
                     .collect(Collectors.toList());
-            List<String> progArgs = VersionManifest.collectProgArgs(manifests, features).stream()
+            List<String> progArgs = plan.progArgs.stream()
                     .map(sub::replace)
                     .collect(Collectors.toList());
 
             List<String> command = new ArrayList<>(jvmArgs.size() + progArgs.size() + 2);
             command.addAll(context.shellArgs);
-            command.add(javaExecutable.toAbsolutePath().toString());
+            command.add(plan.javaExecutable.toString());
             command.addAll(jvmArgs);
             command.addAll(context.extraJVMArgs);
             // TODO, these should be the defaults inside the app, not added here.
@@ -463,7 +555,7 @@ public class InstanceLauncher {
             }
             command.add("-Duser.language=en");
             command.add("-Duser.country=US");
-            command.add(getMainClass());
+            command.add(plan.mainClass);
             command.addAll(progArgs);
             command.addAll(context.extraProgramArgs);
             if (instance.props.fullscreen) {
@@ -488,6 +580,120 @@ public class InstanceLauncher {
         }
     }
 
+    /**
+     * Resolves everything required to launch the instance, validating and downloading as required.
+     *
+     * @param graph           The graph to add steps to.
+     * @param startTasksStep  The step running the instance's start tasks.
+     * @param versionManifest The instance's version manifest, as of the launch.
+     * @return The resolved plan.
+     */
+    private LaunchPlan resolvePlan(LaunchGraph graph, CompletableFuture<Void> startTasksStep, ModpackVersionManifest versionManifest, Path gameDir, Path assetsDir, Path versionsDir, Path librariesDir, Set<String> features) throws Throwable {
+        CompletableFuture<Void> manifestsStep = graph.step("Manifests", (t, p) -> {
+            prepareManifests(t, versionsDir);
+            return null;
+        });
+        // We only need the manifests if the modpack doesn't tell us which runtime to use.
+        String javaTarget = versionManifest.getTargetVersion("runtime");
+        boolean javaNeedsManifests = instance.props.embeddedJre && javaTarget == null;
+        CompletableFuture<Path> javaStep = graph.step("Java", (t, p) -> prepareJava(javaTarget), javaNeedsManifests ? new CompletableFuture<?>[] { manifestsStep } : new CompletableFuture<?>[0]);
+        CompletableFuture<Pair<AssetIndex, AssetIndexManifest>> assetsStep = graph.step("Assets", (t, p) -> {
+            ProgressTracker.Step step = progressTracker.startStep("Validate assets");
+            Pair<AssetIndex, AssetIndexManifest> assetPair = checkAssets(t, versionsDir, step, p);
+            step.finish();
+            return assetPair;
+        }, manifestsStep);
+        CompletableFuture<Path> virtualAssetsStep = graph.step("Virtual assets", (t, p) -> {
+            Pair<AssetIndex, AssetIndexManifest> assetPair = assetsStep.join();
+            return buildVirtualAssets(assetPair.getLeft(), assetPair.getRight(), gameDir, assetsDir, p);
+        }, assetsStep, startTasksStep);
+        // Mojang may change libraries mid version.
+        CompletableFuture<List<VersionManifest.Library>> collectLibrariesStep = graph.step("Collect libraries", (t, p) -> collectLibraries(features), manifestsStep);
+        CompletableFuture<Map<VersionManifest.Library, Path>> librariesStep = graph.step("Libraries", (t, p) -> {
+            ProgressTracker.Step step = progressTracker.startStep("Validate libraries");
+            Map<VersionManifest.Library, Path> resolved = validateLibraries(t, librariesDir, collectLibrariesStep.join(), step, p);
+            step.finish();
+            return resolved;
+        }, collectLibrariesStep, startTasksStep);
+        CompletableFuture<Void> clientStep = graph.step("Client", (t, p) -> {
+            ProgressTracker.Step step = progressTracker.startStep("Validate client");
+            validateClient(t, versionsDir, step, p);
+            step.finish();
+            return null;
+        }, manifestsStep, startTasksStep);
+        CompletableFuture<Path> nativesStep = graph.step("Natives", (t, p) -> {
+            NativesCache.cleanupLegacy(versionsDir.resolve(instance.props.modLoader));
+            return NATIVES_CACHE.prepare(instance.getUuid(), librariesDir, collectLibrariesStep.join(), p);
+        }, librariesStep);
+        graph.await();
+
+        Pair<AssetIndex, AssetIndexManifest> assetPair = assetsStep.join();
+        LaunchPlan plan = new LaunchPlan();
+        for (VersionManifest manifest : manifests) {
+            plan.manifestFiles.add(versionsDir.resolve(manifest.id).resolve(manifest.id + ".json"));
+        }
+        plan.manifestFiles.add(assetsDir.resolve("indexes").resolve(assetPair.getLeft().getId() + ".json"));
+        plan.fingerprint = plan.computeFingerprint(instance, versionManifest, features);
+
+        plan.javaExecutable = javaStep.join().toAbsolutePath();
+        plan.mainClass = getMainClass();
+        plan.primaryJar = getGameJar(versionsDir).toAbsolutePath();
+        plan.assetsIndexName = manifests.get(0).assets;
+        plan.versionType = manifests.get(0).type;
+        plan.virtualAssets = virtualAssetsStep.join().toAbsolutePath();
+        plan.nativesDir = nativesStep.join().toAbsolutePath();
+
+        AssetIndexManifest.AssetObject icon = assetPair.getRight().objects.get("icons/minecraft.icns");
+        if (icon != null) {
+            plan.minecraftIcon = assetsDir.resolve("objects").resolve(icon.getPath()).toAbsolutePath();
+        }
+
+        List<Path> classpath = collectClasspath(librariesDir, versionsDir, collectLibrariesStep.join(), librariesStep.join());
+        for (Path path : classpath) {
+            Path absolute = path.toAbsolutePath();
+            if (plan.classpath.contains(absolute)) continue;
+            plan.classpath.add(absolute);
+            plan.require(absolute);
+        }
+        Path marker = plan.virtualAssets.resolve(VIRTUAL_ASSETS_MARKER);
+        if (Files.exists(marker)) {
+            plan.require(marker);
+        }
+
+        plan.jvmArgs = VersionManifest.collectJVMArgs(manifests, features);
+        plan.progArgs = VersionManifest.collectProgArgs(manifests, features);
+        return plan;
+
+    }
+
+    private Path prepareJava(@Nullable String javaTarget) throws IOException {
+        ProgressTracker.Step step = progressTracker.startStep("Validate Java Runtime");
+        if (!instance.props.embeddedJre) {
+            step.finish();
+            return instance.props.jrePath;
+        }
+
+        Path javaHome;
+        if (javaTarget == null) {
+            LOGGER.warn("VersionManifest does not specify java runtime version. Falling back to Vanilla major version, latest.");
+            JavaVersion version = getJavaVersion();
+            javaHome = Constants.getJdkManager().provisionJdk(
+                    version,
+                    null,
+                    true,
+                    new QuackProgressAdapter(step.listener(true))
+            );
+        } else {
+            javaHome = Constants.getJdkManager().provisionJdk(
+                    javaTarget,
+                    true,
+                    new QuackProgressAdapter(step.listener(true))
+            );
+        }
+        step.finish();
+        return JavaInstall.getJavaExecutable(javaHome, true);
+    }
+
     private void prepareManifests(CancellationToken token, Path versionsDir) throws IOException, InstanceLaunchException {
         manifests.clear();
         VersionListManifest versions = VersionListManifest.update(versionsDir);
@@ -507,7 +713,7 @@ public class InstanceLauncher {
         }
     }
 
-    private Pair<AssetIndex, AssetIndexManifest> checkAssets(CancellationToken token, Path versionsDir) throws IOException, InstanceLaunchException {
+    private Pair<AssetIndex, AssetIndexManifest> checkAssets(CancellationToken token, Path versionsDir, ProgressTracker.Step step, LaunchTimeline.Phase phase) throws IOException, InstanceLaunchException {
         assert !manifests.isEmpty();
 
         LOGGER.info("Updating assets..");
@@ -528,9 +734,13 @@ public class InstanceLauncher {
         }
 
         InstallAssetsTask assetsTask = new InstallAssetsTask(index);
+        // Building the task validates every existing asset object.
+        phase.bytesHashed.addAndGet(assetsTask.getValidatedBytes());
+        phase.cacheHits.addAndGet(assetsTask.getValidatedCount());
+        phase.networkRequests.addAndGet(assetsTask.getPendingCount());
         if (!assetsTask.isRedundant()) {
             try {
-                assetsTask.execute(token, progressTracker.listenerForStep(true));
+                assetsTask.execute(token, step.listener(true));
             } catch (Throwable ex) {
                 throw new IOException("Failed to execute asset update task.", ex);
             }
@@ -538,102 +748,153 @@ public class InstanceLauncher {
         return Pair.of(index, assetsTask.getResult());
     }
 
-    private Path buildVirtualAssets(AssetIndex index, AssetIndexManifest assetManifest, Path gameDir, Path assetsDir) throws IOException {
+    private Path buildVirtualAssets(AssetIndex index, AssetIndexManifest assetManifest, Path gameDir, Path assetsDir, LaunchTimeline.Phase phase) throws IOException {
         Path objects = assetsDir.resolve("objects");
         Path virtual = assetsDir.resolve("virtual").resolve(index.getId());
         Path resourcesDir = gameDir.resolve("resources");
 
         if (assetManifest.virtual || assetManifest.mapToResources) {
             Path vAssets = assetManifest.virtual ? virtual : resourcesDir;
+            Path markerFile = vAssets.resolve(VIRTUAL_ASSETS_MARKER);
+            String fingerprint = virtualAssetsFingerprint(index, assetManifest);
+            if (isVirtualAssetsIntact(vAssets, markerFile, fingerprint, assetManifest)) {
+                LOGGER.info("Virtual assets in {} are up to date.", vAssets);
+                phase.cacheHits.incrementAndGet();
+                return vAssets;
+            }
+
             LOGGER.info("Building virtual assets into {}..", vAssets);
+            Files.deleteIfExists(markerFile);
+            FileUtils.LinkType linkType = FileUtils.LinkType.HARD;
             for (Map.Entry<String, AssetIndexManifest.AssetObject> entry : assetManifest.objects.entrySet()) {
                 String name = entry.getKey();
                 AssetIndexManifest.AssetObject object = entry.getValue();
 
                 Path virtualPath = vAssets.resolve(name);
                 Path objectPath = objects.resolve(object.getPath());
-                if (Files.exists(objectPath)) {
-                    Files.copy(objectPath, IOUtils.makeParents(virtualPath), StandardCopyOption.REPLACE_EXISTING);
+                if (Files.notExists(objectPath)) continue;
+
+                // Links from a previous build can be left alone.
+                if (Files.exists(virtualPath) && Files.isSameFile(virtualPath, objectPath)) continue;
+
+                FileUtils.LinkType used = FileUtils.linkOrCopy(objectPath, virtualPath, linkType);
+                if (used != linkType) {
+                    LOGGER.info("Filesystem does not support {} links, using {}.", linkType, used);
+                    linkType = used;
                 }
             }
+            Files.writeString(IOUtils.makeParents(markerFile), fingerprint, StandardCharsets.UTF_8);
             return vAssets;
         }
         return virtual;
     }
 
-    private void validateClient(CancellationToken token, Path versionsDir) throws IOException {
+    private static boolean isVirtualAssetsIntact(Path vAssets, Path markerFile, String fingerprint, AssetIndexManifest assetManifest) {
+        try {
+            if (Files.notExists(markerFile) || !Files.readString(markerFile, StandardCharsets.UTF_8).equals(fingerprint)) return false;
+            for (String name : assetManifest.objects.keySet()) {
+                if (Files.notExists(vAssets.resolve(name))) return false;
+            }
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to check virtual assets marker.", ex);
+            return false;
+        }
+    }
+
+    private static String virtualAssetsFingerprint(AssetIndex index, AssetIndexManifest assetManifest) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(index.getId(), StandardCharsets.UTF_8);
+        for (String name : new TreeSet<>(assetManifest.objects.keySet())) {
+            hasher.putString(name, StandardCharsets.UTF_8);
+            hasher.putBytes(assetManifest.objects.get(name).getHash().asBytes());
+        }
+        return hasher.hash().toString();
+    }
+
+    private void validateClient(CancellationToken token, Path versionsDir, ProgressTracker.Step step, LaunchTimeline.Phase phase) throws IOException {
         VersionManifest vanillaManifest = manifests.get(0);
         NewDownloadTask task = vanillaManifest.getClientDownload(versionsDir, getClientId());
         if (task != null) {
             LOGGER.info("Validating client download for {}", vanillaManifest.id);
-            task.execute(token, progressTracker.listenerForStep(true));
+            if (Files.exists(task.getDest())) {
+                phase.bytesHashed.addAndGet(Files.size(task.getDest()));
+            }
+            if (task.isRedundant()) {
+                phase.cacheHits.incrementAndGet();
+                return;
+            }
+            phase.networkRequests.incrementAndGet();
+            task.execute(token, step.listener(true));
         }
     }
 
-    private void validateLibraries(CancellationToken token, Path librariesDir, List<VersionManifest.Library> libraries) throws IOException {
+    private Map<VersionManifest.Library, Path> validateLibraries(CancellationToken token, Path librariesDir, List<VersionManifest.Library> libraries, ProgressTracker.Step step, LaunchTimeline.Phase phase) throws IOException {
         LOGGER.info("Validating minecraft libraries...");
-        List<NewDownloadTask> tasks = new LinkedList<>();
+        // Hashing every library jar and HEAD requesting unknown sizes is slow when done one at a time,
+        // these are all independent, so we fan them out over the task pool.
+        List<CompletableFuture<LibraryValidation>> futures = new ArrayList<>(libraries.size());
         for (VersionManifest.Library library : libraries) {
-            NewDownloadTask task = library.createDownloadTask(librariesDir, true);
-            if (task != null && !task.isRedundant()) {
-                tasks.add(task);
-            }
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                token.throwIfCancelled();
+                NewDownloadTask task = library.createDownloadTask(librariesDir, true);
+                if (task == null) return new LibraryValidation(library, null, false, 0);
+                // Returns 0 if the file does not exist.
+                phase.bytesHashed.addAndGet(task.getDest().toFile().length());
+                if (task.isRedundant()) {
+                    phase.cacheHits.incrementAndGet();
+                    return new LibraryValidation(library, task, true, 0);
+                }
+
+                long size = task.getValidation().expectedSize;
+                if (size == -1) {
+                    // Try and HEAD request the content length.
+                    phase.networkRequests.incrementAndGet();
+                    size = NewDownloadTask.getContentLength(task.getUrl());
+                }
+                return new LibraryValidation(library, task, false, size);
+            }, Task.TASK_POOL));
         }
 
-        long totalLen = tasks.stream()
-                .mapToLong(e -> {
-                    if (e.getValidation().expectedSize == -1) {
-                        // Try and HEAD request the content length.
-                        return NewDownloadTask.getContentLength(e.getUrl());
-                    }
-                    return e.getValidation().expectedSize;
-                })
-                .sum();
+        Map<VersionManifest.Library, Path> resolved = new HashMap<>();
+        List<NewDownloadTask> tasks = new LinkedList<>();
+        long totalLen = 0;
+        for (CompletableFuture<LibraryValidation> future : futures) {
+            LibraryValidation validation = joinValidation(token, future);
+            if (validation.task() == null) continue;
+
+            resolved.put(validation.library(), validation.task().getDest());
+            if (!validation.valid()) {
+                tasks.add(validation.task());
+                totalLen += validation.size();
+            }
+        }
 
-        TaskProgressListener rootListener = progressTracker.listenerForStep(true);
+        TaskProgressListener rootListener = step.listener(true);
         rootListener.start(totalLen);
-        TaskProgressAggregator progressAggregator = new TaskProgressAggregator(rootListener);
+        TaskProgressAggregator progressAggregator = new ParallelTaskProgressAggregator(rootListener);
         if (!tasks.isEmpty()) {
             LOGGER.info("{} dependencies failed to validate or were missing.", tasks.size());
-            for (NewDownloadTask task : tasks) {
-                token.throwIfCancelled();
-                LOGGER.info("Downloading {}", task.getUrl());
-                task.execute(token, progressAggregator);
-            }
+            phase.networkRequests.addAndGet(tasks.size());
+            token.throwIfCancelled();
+            ParallelTaskHelper.executeInParallel(token, Task.TASK_POOL, tasks, progressAggregator);
         }
         rootListener.finish(progressAggregator.getProcessed());
         LOGGER.info("Libraries validated!");
+        return resolved;
     }
 
-    private void extractNatives(Path nativesDir, Path librariesDir, List<VersionManifest.Library> libraries) throws IOException {
-        LOGGER.info("Extracting natives...");
-        tempDirs.add(nativesDir);
-        VersionManifest.OS current = VersionManifest.OS.current();
-        for (VersionManifest.Library library : libraries) {
-            if (library.natives == null) continue;
-            String classifier = library.natives.get(current);
-            if (classifier == null) continue;
-            MavenNotation notation = library.name.withClassifier(classifier);
-            Path nativesJar = notation.toPath(librariesDir);
-            if (Files.notExists(nativesJar)) {
-                LOGGER.warn("Missing natives jar! " + nativesJar.toAbsolutePath());
-                continue;
-            }
-            LOGGER.info(" Extracting from '{}'.", nativesJar);
-            // TODO: move to NIO File system for zip?
-            try (ZipFile zipFile = new ZipFile(nativesJar.toFile())) {
-                for (ZipEntry entry : iterable(zipFile.entries())) {
-                    if (entry.isDirectory()) continue;
-                    if (library.extract != null && !library.extract.shouldExtract(entry.getName())) continue;
-                    Path dest = nativesDir.resolve(entry.getName());
-                    if (Files.notExists(dest.getParent())) {
-                        Files.createDirectories(dest.getParent());
-                    }
-                    try (OutputStream out = Files.newOutputStream(dest)) {
-                        IOUtils.copy(zipFile.getInputStream(entry), out);
-                    }
-                }
+    private static LibraryValidation joinValidation(CancellationToken token, CompletableFuture<LibraryValidation> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            token.throwIfCancelled();
+            throw new IOException("Interrupted whilst validating libraries.", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof CancellationToken.Cancellation cancellation) {
+                throw cancellation;
             }
+            throw new IOException("Failed to validate library.", ex.getCause());
         }
     }
 
@@ -657,6 +918,14 @@ public class InstanceLauncher {
         return ret;
     }
 
+    private Set<String> collectFeatures() {
+        Set<String> features = new HashSet<>();
+        if (instance.props.width != 0 && instance.props.height != 0) {
+            features.add("has_custom_resolution");
+        }
+        return features;
+    }
+
     private List<VersionManifest.Library> collectLibraries(Set<String> features) {
         // Reverse list, as last on manifest list gets put on the classpath first.
         return Lists.reverse(manifests)
@@ -665,10 +934,10 @@ public class InstanceLauncher {
                 .collect(Collectors.toList());
     }
 
-    private List<Path> collectClasspath(Path librariesDir, Path versionsDir, List<VersionManifest.Library> libraries) {
+    private List<Path> collectClasspath(Path librariesDir, Path versionsDir, List<VersionManifest.Library> libraries, Map<VersionManifest.Library, Path> resolvedLibraries) {
         List<Path> classpath = libraries.stream()
                 .filter(e -> e.natives == null)
-                .map(e -> e.name.toPath(librariesDir))
+                .map(e -> resolvedLibraries.getOrDefault(e, e.name.toPath(librariesDir)))
                 .collect(Collectors.toList());
         classpath.add(getGameJar(versionsDir));
         return classpath;
@@ -688,6 +957,20 @@ public class InstanceLauncher {
         return manifests.get(manifests.size() - 1).id;
     }
 
+    /**
+     * The result of validating a single library.
+     *
+     * @param library The library.
+     * @param task    The download task for the library, {@code null} if the library is not a remote resource.
+     * @param valid   If the library already exists on disk and passed validation.
+     * @param size    The expected download size if the library needs to be downloaded.
+     */
+    private record LibraryValidation(VersionManifest.Library library, @Nullable NewDownloadTask task, boolean valid, long size) { }
+
+    private record StartTask(String name, ThrowingConsumer<LaunchContext, Throwable> task) { }
+
+    private record Prewarm(CancellationToken token, CompletableFuture<Void> future) { }
+
     public static class LaunchContext {
         public final List<String> extraJVMArgs = new ArrayList<>();
         public final List<String> extraProgramArgs = new ArrayList<>();
@@ -722,72 +1005,48 @@ public class InstanceLauncher {
         ERRORED,
     }
 
+    /**
+     * Tracks launch progress.
+     * <p>
+     * Multiple steps may be active at once, the frontend is shown every active step
+     * with their combined progress.
+     */
     private static class ProgressTracker {
 
         private static final boolean DEBUG = Boolean.getBoolean("InstanceLauncher.ProgressTracker.debug");
 
         private int totalSteps = 0;
-        private int currStep = 0;
+        private int finishedSteps = 0;
+        private final List<Step> activeSteps = new ArrayList<>();
+        private String lastDesc = "";
 
-        private String stepDesc = "";
-
-        private float stepProgress;
-        private String humanDesc = null;
         private long lastNonImportant = -1;
+        // Set when preparing in the background, nothing is sent to the UI.
+        private boolean silent;
 
-        public void reset(int totalSteps) {
+        public synchronized void reset(int totalSteps, boolean silent) {
             this.totalSteps = totalSteps;
-            currStep = 0;
-            stepDesc = "";
-            stepProgress = 0.0F;
+            this.silent = silent;
+            finishedSteps = 0;
+            activeSteps.clear();
+            lastDesc = "";
         }
 
-        public void startStep(String stepDesc) {
-            currStep++;
-            this.stepDesc = stepDesc;
-            humanDesc = null;
+        public synchronized Step startStep(String stepDesc) {
+            Step step = new Step(stepDesc);
+            activeSteps.add(step);
             sendUpdate(true);
+            return step;
         }
 
-        public void updateDesc(String desc) {
-            this.stepDesc = desc;
-            sendUpdate(true);
-        }
-
-        public TaskProgressListener listenerForStep(boolean isDownload) {
-            return new TaskProgressListener() {
-                private long total;
-
-                @Override
-                public void start(long total) {
-                    this.total = total;
-                }
-
-                @Override
-                public void update(long processed) {
-                    stepProgress = (float) ((double) processed / (double) total);
-                    if (stepProgress == Float.NEGATIVE_INFINITY || stepProgress == Float.POSITIVE_INFINITY) {
-                        // Wat?
-                        stepProgress = 0;
-                    }
-                    if (isDownload) {
-                        humanDesc = DataUtils.humanSize(processed) + " / " + DataUtils.humanSize(total);
-                    }
-                    sendUpdate(false);
-                }
-
-                @Override
-                public void finish(long total) {
-                }
-            };
-        }
-
-        public void finishStep() {
-            stepProgress = 1.0F;
+        private synchronized void finishStep(Step step) {
+            if (!activeSteps.remove(step)) return;
+            finishedSteps++;
+            lastDesc = step.desc;
             sendUpdate(true);
         }
 
-        private void sendUpdate(boolean important) {
+        private synchronized void sendUpdate(boolean important) {
             if (!important) {
                 // Rate limit non-important messages to every 100 millis
                 if (lastNonImportant != -1 && System.currentTimeMillis() - 100 < lastNonImportant) {
@@ -797,13 +1056,81 @@ public class InstanceLauncher {
             } else {
                 lastNonImportant = -1;
             }
+
+            int currStep = Math.min(finishedSteps + Math.max(activeSteps.size(), 1), totalSteps);
+            String stepDesc = lastDesc;
+            float stepProgress = 1.0F;
+            String humanDesc = null;
+            if (!activeSteps.isEmpty()) {
+                stepDesc = activeSteps.stream().map(e -> e.desc).collect(Collectors.joining(", "));
+                stepProgress = 0;
+                long processed = 0;
+                long total = 0;
+                for (Step step : activeSteps) {
+                    stepProgress += step.progress / activeSteps.size();
+                    if (step.isDownload) {
+                        processed += step.processed;
+                        total += step.total;
+                    }
+                }
+                if (total > 0) {
+                    humanDesc = DataUtils.humanSize(processed) + " / " + DataUtils.humanSize(total);
+                }
+            }
             if (DEBUG) {
                 LOGGER.info("Progress [{}/{}] {}: {} {}", currStep, totalSteps, stepProgress, stepDesc, humanDesc);
             }
 
-            if (Settings.webSocketAPI == null) return;
+            if (silent || Settings.webSocketAPI == null) return;
             Settings.webSocketAPI.sendMessage(new LaunchInstanceData.Status(currStep, totalSteps, stepProgress, stepDesc, humanDesc));
         }
+
+        private class Step {
+
+            private final String desc;
+            private float progress;
+            private boolean isDownload;
+            private long processed;
+            private long total;
+
+            private Step(String desc) {
+                this.desc = desc;
+            }
+
+            public TaskProgressListener listener(boolean isDownload) {
+                return new TaskProgressListener() {
+                    @Override
+                    public void start(long total) {
+                        synchronized (ProgressTracker.this) {
+                            Step.this.isDownload = isDownload;
+                            Step.this.total = total;
+                        }
+                    }
+
+                    @Override
+                    public void update(long processed) {
+                        synchronized (ProgressTracker.this) {
+                            progress = (float) ((double) processed / (double) total);
+                            if (progress == Float.NEGATIVE_INFINITY || progress == Float.POSITIVE_INFINITY || Float.isNaN(progress)) {
+                                // Wat?
+                                progress = 0;
+                            }
+                            Step.this.processed = processed;
+                            sendUpdate(false);
+                        }
+                    }
+
+                    @Override
+                    public void finish(long total) {
+                    }
+                };
+            }
+
+            public void finish() {
+                progress = 1.0F;
+                finishStep(this);
+            }
+        }
     }
 
     private class LogThread extends Thread {
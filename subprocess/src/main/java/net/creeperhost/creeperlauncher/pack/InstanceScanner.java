@@ -4,10 +4,12 @@ import com.electronwill.nightconfig.core.UnmodifiableConfig;
 import com.electronwill.nightconfig.core.file.FileConfig;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.reflect.TypeToken;
 import net.covers1624.quack.gson.JsonUtils;
 import net.covers1624.quack.io.IOUtils;
 import net.covers1624.quack.util.SneakyUtils;
@@ -18,6 +20,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.lang.reflect.Type;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -42,12 +45,22 @@ public class InstanceScanner {
             "kubejs"
     );
 
+    private static final Gson GSON = new Gson();
+    private static final Type INDEX_TYPE = new TypeToken<Map<String, ModEntry>>() { }.getType();
+
+    /**
+     * Caches the metadata extracted from each mod jar, so unchanged jars don't need to be opened.
+     */
+    public static final String INDEX_FILE = ".ftba/mod_scan_index.json";
+
     private final Path instanceDir;
     private final ModpackVersionManifest manifest;
     private final Map<String, ModpackFile> modpackFiles = new HashMap<>();
 
     private final Set<Path> invalidSizedMods = Collections.newSetFromMap(new ConcurrentHashMap<>());
     private final Set<Path> invalidSizedScripts = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // Populated from the parallel walk, aggregated afterwards.
+    private final Map<Path, ModEntry> scannedMods = new ConcurrentHashMap<>();
     private final Multimap<String, Path> foundMods = HashMultimap.create();
 
     private boolean hasLegacyJavaFixer;
@@ -91,19 +104,27 @@ public class InstanceScanner {
 
     public void scan() {
         Path modsDir = instanceDir.resolve("mods");
+        Path indexFile = instanceDir.resolve(INDEX_FILE);
+        Map<String, ModEntry> index = loadIndex(indexFile);
 
         try {
             parallelWalk(modsDir, false, file -> {
                 String fileName = file.getFileName().toString();
                 if (!fileName.endsWith(".jar") && !fileName.endsWith(".zip")) return;
                 String relPath = instanceDir.relativize(file).toString();
+                long size = Files.size(file);
                 ModpackFile modpackFile = modpackFiles.get(relPath);
-                if (modpackFile != null && modpackFile.getSize() != 0 && modpackFile.getSize() != Files.size(file)) {
+                if (modpackFile != null && modpackFile.getSize() != 0 && modpackFile.getSize() != size) {
                     invalidSizedMods.add(file);
                     return;
                 }
 
-                investigateMod(file);
+                long lastModified = Files.getLastModifiedTime(file).toMillis();
+                ModEntry entry = index.get(relPath);
+                if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+                    entry = investigateMod(file, size, lastModified);
+                }
+                scannedMods.put(file, entry);
             });
             for (String dirName : SCRIPTS_DIRS) {
                 Path dir = instanceDir.resolve(dirName);
@@ -121,34 +142,71 @@ public class InstanceScanner {
         } catch (IOException ex) {
             LOGGER.warn("Failed to scan.", ex);
         }
+
+        Map<String, ModEntry> newIndex = new HashMap<>();
+        for (Map.Entry<Path, ModEntry> entry : scannedMods.entrySet()) {
+            Path mod = entry.getKey();
+            ModEntry modEntry = entry.getValue();
+            for (String modId : modEntry.modIds) {
+                foundMods.put(modId, mod);
+            }
+            hasLegacyJavaFixer |= modEntry.legacyJavaFixer;
+            if (!modEntry.failed) {
+                newIndex.put(instanceDir.relativize(mod).toString(), modEntry);
+            }
+        }
+        if (!newIndex.equals(index)) {
+            saveIndex(indexFile, newIndex);
+        }
     }
 
-    private void investigateMod(Path mod) {
+    private ModEntry investigateMod(Path mod, long size, long lastModified) {
+        ModEntry entry = new ModEntry(size, lastModified);
         try (FileSystem fs = IOUtils.getJarFileSystem(mod, true)) {
-            if (!hasLegacyJavaFixer) {
-                for (String ljfClass : LJF_CLASSES) {
-                    if (Files.exists(fs.getPath(ljfClass))) {
-                        hasLegacyJavaFixer = true;
-                        break;
-                    }
+            for (String ljfClass : LJF_CLASSES) {
+                if (Files.exists(fs.getPath(ljfClass))) {
+                    entry.legacyJavaFixer = true;
+                    break;
                 }
             }
             Path modsToml = fs.getPath("/META-INF/mods.toml");
             Path mcmodInfo = fs.getPath("/mcmod.info");
             Path fabricModJson = fs.getPath("/fabric.mod.json");
             if (Files.exists(modsToml)) {
-                handleModsToml(mod, modsToml);
+                handleModsToml(entry, modsToml);
             } else if (Files.exists(mcmodInfo)) {
-                handleMCModInfo(mod, mcmodInfo);
+                handleMCModInfo(entry, mcmodInfo);
             } else if (Files.exists(fabricModJson)) {
-                handleFabricModJson(mod, fabricModJson);
+                handleFabricModJson(entry, fabricModJson);
             }
         } catch (Throwable ex) {
             LOGGER.warn("Failed to scan mod '{}'.", mod, ex);
+            // Don't cache failures, try again next scan.
+            entry.failed = true;
+        }
+        return entry;
+    }
+
+    private static Map<String, ModEntry> loadIndex(Path indexFile) {
+        if (Files.notExists(indexFile)) return Map.of();
+        try {
+            Map<String, ModEntry> index = JsonUtils.parse(GSON, indexFile, INDEX_TYPE);
+            return index != null ? index : Map.of();
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to load mod scan index. Rescanning all mods.", ex);
+            return Map.of();
         }
     }
 
-    private void handleModsToml(Path mod, Path path) throws IOException {
+    private static void saveIndex(Path indexFile, Map<String, ModEntry> index) {
+        try {
+            JsonUtils.write(GSON, IOUtils.makeParents(indexFile), index, INDEX_TYPE);
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to save mod scan index.", ex);
+        }
+    }
+
+    private void handleModsToml(ModEntry entry, Path path) throws IOException {
         try (FileConfig config = FileConfig.builder(path).build()) {
             config.load();
             List<UnmodifiableConfig> modConfigs = config.get("mods");
@@ -158,33 +216,62 @@ public class InstanceScanner {
                 String modId = modConfig.get("modId");
                 if (modId == null) continue;
 
-                foundMods.put(modId, mod);
+                entry.modIds.add(modId);
             }
         }
     }
 
-    private void handleMCModInfo(Path mod, Path path) throws IOException {
+    private void handleMCModInfo(ModEntry entry, Path path) throws IOException {
         JsonElement element = JsonUtils.parseRaw(path);
         if (element.isJsonArray()) {
             JsonArray array = element.getAsJsonArray();
             for (JsonElement elm : array) {
-                consumeMCModInfoEntry(mod, elm.getAsJsonObject());
+                consumeMCModInfoEntry(entry, elm.getAsJsonObject());
             }
         } else {
-            consumeMCModInfoEntry(mod, element.getAsJsonObject());
+            consumeMCModInfoEntry(entry, element.getAsJsonObject());
         }
     }
 
-    private void consumeMCModInfoEntry(Path mod, JsonObject obj) {
+    private void consumeMCModInfoEntry(ModEntry entry, JsonObject obj) {
         JsonPrimitive primitive = JsonUtils.getAsPrimitiveOrNull(obj, "modid");
         if (primitive != null && primitive.isString()) {
-            foundMods.put(primitive.getAsString(), mod);
+            entry.modIds.add(primitive.getAsString());
         }
     }
 
-    private void handleFabricModJson(Path mod, Path json) throws IOException {
+    private void handleFabricModJson(ModEntry entry, Path json) throws IOException {
         JsonObject obj = JsonUtils.parseRaw(json).getAsJsonObject();
-        foundMods.put(JsonUtils.getString(obj, "id"), mod);
+        entry.modIds.add(JsonUtils.getString(obj, "id"));
+    }
+
+    /**
+     * The metadata extracted from a single mod jar.
+     */
+    private static class ModEntry {
+
+        public long size;
+        public long lastModified;
+        public List<String> modIds = new ArrayList<>();
+        public boolean legacyJavaFixer;
+        public transient boolean failed;
+
+        public ModEntry(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ModEntry other)) return false;
+            return size == other.size && lastModified == other.lastModified && legacyJavaFixer == other.legacyJavaFixer && modIds.equals(other.modIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, modIds, legacyJavaFixer);
+        }
     }
 
     private static void parallelWalk(Path dir, boolean nested, ThrowingConsumer<Path, Throwable> consumer) throws IOException {
@@ -0,0 +1,113 @@
+package net.creeperhost.creeperlauncher.pack;
+
+import net.creeperhost.creeperlauncher.util.ElapsedTimer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A dependency graph of launch preparation steps.
+ * <p>
+ * Each step is started as soon as all of its dependencies have completed, allowing
+ * independent steps to run concurrently. If any step fails, every other step is
+ * cancelled through the {@link CancellationToken} provided to it, and steps which
+ * have not started yet are skipped.
+ */
+public class LaunchGraph {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final CancellationToken parent;
+    private final CancellationToken token;
+    private final Executor executor;
+    private final LaunchTimeline timeline;
+    private final List<CompletableFuture<?>> steps = new ArrayList<>();
+
+    private Throwable failure;
+
+    /**
+     * @param parent   The token which cancels the whole launch.
+     * @param executor The executor to run steps on. Steps block on IO and
+     *                 sub-tasks, this should not be a bounded task pool.
+     * @param timeline The timeline to record each step into.
+     */
+    public LaunchGraph(CancellationToken parent, Executor executor, LaunchTimeline timeline) {
+        this.parent = parent;
+        this.executor = executor;
+        this.timeline = timeline;
+        token = new CancellationToken() {
+            @Override
+            public boolean isCanceled() {
+                return super.isCanceled() || parent.isCanceled();
+            }
+        };
+    }
+
+    /**
+     * Adds a step to the graph.
+     *
+     * @param name         The name of the step, for logging.
+     * @param action       The action to run.
+     * @param dependencies The steps which must complete before this step is started.
+     * @return The future for the step's result.
+     */
+    public <T> CompletableFuture<T> step(String name, StepAction<T> action, CompletableFuture<?>... dependencies) {
+        CompletableFuture<T> future = CompletableFuture.allOf(dependencies).thenApplyAsync(v -> {
+            token.throwIfCancelled();
+            ElapsedTimer timer = new ElapsedTimer();
+            try (LaunchTimeline.Phase phase = timeline.begin(name)) {
+                T result = action.run(token, phase);
+                LOGGER.info("Launch step '{}' finished in {}.", name, timer.elapsedStr());
+                return result;
+            } catch (Throwable ex) {
+                if (!(ex instanceof CancellationToken.Cancellation)) {
+                    LOGGER.error("Launch step '{}' failed.", name);
+                    fail(ex);
+                }
+                throw new CompletionException(ex);
+            }
+        }, executor);
+        steps.add(future);
+        return future;
+    }
+
+    /**
+     * Waits for every step in the graph to complete.
+     * <p>
+     * When a step fails, this still waits for the remaining steps to notice
+     * and stop, so nothing is left running in the background.
+     *
+     * @throws Throwable The first failure, with any others suppressed.
+     */
+    public void await() throws Throwable {
+        try {
+            CompletableFuture.allOf(steps.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException | CancellationException ignored) {
+            // allOf only completes once every step has, failures are collected below.
+        }
+        parent.throwIfCancelled();
+        synchronized (this) {
+            if (failure != null) throw failure;
+        }
+    }
+
+    private synchronized void fail(Throwable ex) {
+        if (failure == null) {
+            failure = ex;
+        } else {
+            failure.addSuppressed(ex);
+        }
+        token.cancel();
+    }
+
+    public interface StepAction<T> {
+
+        T run(CancellationToken token, LaunchTimeline.Phase phase) throws Throwable;
+    }
+}
@@ -0,0 +1,193 @@
+package net.creeperhost.creeperlauncher.pack;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.gson.PathTypeAdapter;
+import net.covers1624.quack.io.IOUtils;
+import net.creeperhost.creeperlauncher.Constants;
+import net.creeperhost.creeperlauncher.data.modpack.ModpackVersionManifest;
+import net.creeperhost.creeperlauncher.minecraft.jsons.VersionManifest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The resolved result of preparing an instance to launch.
+ * <p>
+ * Resolving the VersionManifest chain, libraries, assets and natives is expensive, and
+ * its result rarely changes between launches. The plan is persisted alongside the instance
+ * and reused as long as its fingerprint matches and every file it references is still intact.
+ * <p>
+ * Arguments are stored as templates, before token substitution. Substituted arguments
+ * contain account tokens and must never be written to disk.
+ */
+public class LaunchPlan {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new GsonBuilder()
+            .setPrettyPrinting()
+            .registerTypeHierarchyAdapter(Path.class, new PathTypeAdapter())
+            .create();
+
+    /**
+     * Bumped whenever the format or the semantics of the plan change.
+     */
+    private static final int FORMAT = 1;
+
+    // Null if the plan's inputs could not be fingerprinted, such a plan never matches.
+    @Nullable
+    public String fingerprint;
+    public List<Path> manifestFiles = new ArrayList<>();
+
+    public Path javaExecutable;
+    public String mainClass;
+    public Path primaryJar;
+    public String assetsIndexName;
+    public String versionType;
+    public Path virtualAssets;
+    public Path nativesDir;
+    @Nullable
+    public Path minecraftIcon;
+    public List<Path> classpath = new ArrayList<>();
+    public List<String> jvmArgs = new ArrayList<>();
+    public List<String> progArgs = new ArrayList<>();
+
+    /**
+     * Files which must exist with the given size for the plan to be usable.
+     */
+    public Map<Path, Long> requiredFiles = new HashMap<>();
+
+    /**
+     * Load the plan from disk.
+     *
+     * @param file The file to load from.
+     * @return The plan, or {@code null} if it does not exist or could not be read.
+     */
+    @Nullable
+    public static LaunchPlan load(Path file) {
+        if (Files.notExists(file)) return null;
+        try {
+            return JsonUtils.parse(GSON, file, LaunchPlan.class);
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to read launch plan {}. Ignoring.", file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the plan from disk, if it exists.
+     *
+     * @param file The file the plan is stored in.
+     */
+    public static void invalidate(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to delete launch plan {}.", file, ex);
+        }
+    }
+
+    public void save(Path file) {
+        try {
+            JsonUtils.write(GSON, IOUtils.makeParents(file), this, LaunchPlan.class);
+        } catch (IOException ex) {
+            // Not fatal, we just won't have a plan next launch.
+            LOGGER.warn("Failed to save launch plan {}.", file, ex);
+        }
+    }
+
+    /**
+     * Records the given file as required, with its current size.
+     *
+     * @param file The file.
+     * @throws IOException If an IO error occurs.
+     */
+    public void require(Path file) throws IOException {
+        requiredFiles.put(file, Files.size(file));
+    }
+
+    /**
+     * Cheaply checks that every file this plan references still exists.
+     * <p>
+     * This does not hash anything, it only checks existence and sizes.
+     *
+     * @return If the plan can be used.
+     */
+    public boolean isIntact() {
+        try {
+            if (Files.notExists(javaExecutable)) return false;
+            if (!Files.isDirectory(nativesDir)) return false;
+            for (Map.Entry<Path, Long> entry : requiredFiles.entrySet()) {
+                Path file = entry.getKey();
+                if (Files.notExists(file) || Files.size(file) != entry.getValue()) {
+                    LOGGER.info("Launch plan is stale, {} has changed.", file);
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to check launch plan.", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Checks if this plan was built from the instance's current inputs.
+     * <p>
+     * A missing or empty stored fingerprint never matches.
+     *
+     * @param instance        The instance.
+     * @param versionManifest The instance's version manifest, as of the launch.
+     * @param features        The enabled features.
+     * @return If the plan's fingerprint matches.
+     * @throws IOException If an IO error occurs.
+     */
+    public boolean matches(Instance instance, ModpackVersionManifest versionManifest, Set<String> features) throws IOException {
+        if (fingerprint == null || fingerprint.isEmpty()) return false;
+        return fingerprint.equals(computeFingerprint(instance, versionManifest, features));
+    }
+
+    /**
+     * Computes the fingerprint for this plan's inputs.
+     * <p>
+     * The fingerprint covers the instance properties which affect the plan, and the size and
+     * modified time of every VersionManifest in the chain the plan was built from.
+     *
+     * @param instance        The instance.
+     * @param versionManifest The instance's version manifest, as of the launch.
+     * @param features        The enabled features.
+     * @return The fingerprint, or {@code null} if any VersionManifest does not exist.
+     * @throws IOException If an IO error occurs.
+     */
+    @Nullable
+    public String computeFingerprint(Instance instance, ModpackVersionManifest versionManifest, Set<String> features) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(FORMAT);
+        hasher.putString(Constants.APPVERSION, StandardCharsets.UTF_8);
+        hasher.putString(instance.getDir().toAbsolutePath().toString(), StandardCharsets.UTF_8);
+        hasher.putString(instance.props.modLoader, StandardCharsets.UTF_8);
+        hasher.putBoolean(instance.props.embeddedJre);
+        hasher.putString(String.valueOf(instance.props.jrePath), StandardCharsets.UTF_8);
+        hasher.putString(String.valueOf(versionManifest.getTargetVersion("runtime")), StandardCharsets.UTF_8);
+        hasher.putString(VersionManifest.OS.current().name(), StandardCharsets.UTF_8);
+        for (String feature : new TreeSet<>(features)) {
+            hasher.putString(feature, StandardCharsets.UTF_8);
+        }
+        for (Path file : manifestFiles) {
+            if (Files.notExists(file)) return null;
+            hasher.putString(file.toAbsolutePath().toString(), StandardCharsets.UTF_8);
+            hasher.putLong(Files.size(file));
+            hasher.putLong(Files.getLastModifiedTime(file).toMillis());
+        }
+        return hasher.hash().toString();
+    }
+}
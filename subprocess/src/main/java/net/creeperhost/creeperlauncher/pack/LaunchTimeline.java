@@ -0,0 +1,141 @@
+package net.creeperhost.creeperlauncher.pack;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.io.IOUtils;
+import net.creeperhost.creeperlauncher.Constants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A structured timeline of a single launch, used to see where launch time goes.
+ * <p>
+ * Each phase records when it started relative to the start of the launch, how long it took,
+ * and any work it knows it did. Phases may overlap, as launch steps run concurrently.
+ * <p>
+ * The last {@link #MAX_HISTORY} timelines are stored per instance.
+ */
+public class LaunchTimeline {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Type HISTORY_TYPE = new TypeToken<List<LaunchTimeline>>() { }.getType();
+
+    /**
+     * The timeline history, stored inside the instance directory.
+     */
+    public static final String HISTORY_FILE = ".ftba/launch_timelines.json";
+    public static final int MAX_HISTORY = 10;
+
+    private final transient long startNanos = System.nanoTime();
+
+    public final String appVersion = Constants.APPVERSION;
+    public final long startedAt = System.currentTimeMillis();
+    // In milliseconds, -1 if the launch has not finished.
+    public long duration = -1;
+    public String result = "running";
+    public boolean usedCachedPlan;
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * Start a new phase.
+     *
+     * @param name The name of the phase.
+     * @return The phase, which must be closed once it finishes.
+     */
+    public Phase begin(String name) {
+        Phase phase = new Phase(name, elapsedMillis());
+        synchronized (phases) {
+            phases.add(phase);
+        }
+        return phase;
+    }
+
+    /**
+     * Mark this timeline as finished.
+     *
+     * @param result The result of the launch.
+     */
+    public void finish(String result) {
+        this.result = result;
+        duration = elapsedMillis();
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Load the timeline history for the given instance.
+     *
+     * @param instance The instance.
+     * @return The timelines, oldest first.
+     */
+    public static List<LaunchTimeline> load(Instance instance) {
+        Path file = instance.getDir().resolve(HISTORY_FILE);
+        if (Files.notExists(file)) return new ArrayList<>();
+        try {
+            List<LaunchTimeline> history = JsonUtils.parse(GSON, file, HISTORY_TYPE);
+            return history != null ? new ArrayList<>(history) : new ArrayList<>();
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to read launch timelines {}.", file, ex);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Append the given timeline to the instance's history, dropping the oldest
+     * timelines over {@link #MAX_HISTORY}.
+     *
+     * @param instance The instance.
+     * @param timeline The timeline.
+     */
+    public static synchronized void append(Instance instance, LaunchTimeline timeline) {
+        List<LaunchTimeline> history = load(instance);
+        history.add(timeline);
+        while (history.size() > MAX_HISTORY) {
+            history.remove(0);
+        }
+        try {
+            JsonUtils.write(GSON, IOUtils.makeParents(instance.getDir().resolve(HISTORY_FILE)), history, HISTORY_TYPE);
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to save launch timelines for {}.", instance.getUuid(), ex);
+        }
+    }
+
+    public static class Phase implements AutoCloseable {
+
+        private final transient long startNanos = System.nanoTime();
+
+        public final String name;
+        // Milliseconds since the start of the launch.
+        public final long start;
+        // In milliseconds, -1 if the phase did not finish.
+        public long duration = -1;
+
+        public final AtomicLong bytesHashed = new AtomicLong();
+        public final AtomicLong networkRequests = new AtomicLong();
+        public final AtomicLong cacheHits = new AtomicLong();
+
+        private Phase(String name, long start) {
+            this.name = name;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+    }
+}
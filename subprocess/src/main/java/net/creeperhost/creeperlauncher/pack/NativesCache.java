@@ -0,0 +1,237 @@
+package net.creeperhost.creeperlauncher.pack;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import net.covers1624.quack.gson.JsonUtils;
+import net.covers1624.quack.io.IOUtils;
+import net.covers1624.quack.maven.MavenNotation;
+import net.covers1624.quack.util.HashUtils;
+import net.creeperhost.creeperlauncher.Instances;
+import net.creeperhost.creeperlauncher.minecraft.jsons.VersionManifest;
+import net.creeperhost.creeperlauncher.util.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static net.covers1624.quack.collection.ColUtils.iterable;
+
+/**
+ * A persistent, content-addressed cache of extracted natives.
+ * <p>
+ * Natives are extracted once into a directory named after the hash of the native jars
+ * and their extract rules. Each instance holds a reference to the directory it last launched
+ * with, any directory no longer referenced by an instance is cleaned up.
+ */
+public class NativesCache {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Type REFS_TYPE = new TypeToken<Map<UUID, String>>() { }.getType();
+    private static final Type CONTENTS_TYPE = new TypeToken<Map<String, Long>>() { }.getType();
+
+    /**
+     * Written inside each natives directory once extraction completes, maps each extracted file to its size.
+     */
+    private static final String CONTENTS_FILE = ".contents.json";
+
+    private final Path cacheDir;
+    private final Path refsFile;
+
+    public NativesCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+        refsFile = cacheDir.resolve("references.json");
+    }
+
+    /**
+     * Get or extract the natives directory for the given libraries.
+     *
+     * @param owner        The instance requesting the natives.
+     * @param librariesDir The libraries directory.
+     * @param libraries    The libraries to extract natives from.
+     * @param phase        The launch timeline phase to record work into.
+     * @return The natives directory.
+     * @throws IOException If an IO error occurs.
+     */
+    public synchronized Path prepare(UUID owner, Path librariesDir, List<VersionManifest.Library> libraries, LaunchTimeline.Phase phase) throws IOException {
+        List<NativeJar> jars = collectJars(librariesDir, libraries);
+        String key = computeKey(jars);
+        for (NativeJar jar : jars) {
+            phase.bytesHashed.addAndGet(Files.size(jar.path()));
+        }
+        Path nativesDir = cacheDir.resolve(key);
+
+        if (isIntact(nativesDir)) {
+            LOGGER.info("Reusing extracted natives {}.", nativesDir);
+            phase.cacheHits.incrementAndGet();
+        } else {
+            extract(nativesDir, jars);
+        }
+
+        Map<UUID, String> refs = loadRefs();
+        refs.put(owner, key);
+        pruneRefs(refs);
+        JsonUtils.write(GSON, IOUtils.makeParents(refsFile), refs, REFS_TYPE);
+        cleanup(refs);
+        return nativesDir;
+    }
+
+    private static List<NativeJar> collectJars(Path librariesDir, List<VersionManifest.Library> libraries) {
+        VersionManifest.OS current = VersionManifest.OS.current();
+        List<NativeJar> jars = new ArrayList<>();
+        for (VersionManifest.Library library : libraries) {
+            if (library.natives == null) continue;
+            String classifier = library.natives.get(current);
+            if (classifier == null) continue;
+            MavenNotation notation = library.name.withClassifier(classifier);
+            Path nativesJar = notation.toPath(librariesDir);
+            if (Files.notExists(nativesJar)) {
+                LOGGER.warn("Missing natives jar! " + nativesJar.toAbsolutePath());
+                continue;
+            }
+            jars.add(new NativeJar(notation, nativesJar, library.extract));
+        }
+        return jars;
+    }
+
+    private static String computeKey(List<NativeJar> jars) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (NativeJar jar : jars) {
+            hasher.putString(jar.notation().toString(), StandardCharsets.UTF_8);
+            hasher.putBytes(HashUtils.hash(Hashing.sha1(), jar.path()).asBytes());
+            if (jar.extract() != null && jar.extract().exclude != null) {
+                for (String exclude : jar.extract().exclude) {
+                    hasher.putString(exclude, StandardCharsets.UTF_8);
+                }
+            }
+            // Separate each jar, so exclude rules can't bleed into the next notation.
+            hasher.putByte((byte) 0);
+        }
+        HashCode hash = hasher.hash();
+        return hash.toString();
+    }
+
+    /**
+     * Cheaply checks that a natives directory was fully extracted, and still contains
+     * every file at its expected size.
+     */
+    private static boolean isIntact(Path nativesDir) {
+        Path contentsFile = nativesDir.resolve(CONTENTS_FILE);
+        if (Files.notExists(contentsFile)) return false;
+
+        try {
+            Map<String, Long> contents = JsonUtils.parse(GSON, contentsFile, CONTENTS_TYPE);
+            for (Map.Entry<String, Long> entry : contents.entrySet()) {
+                Path file = nativesDir.resolve(entry.getKey());
+                if (Files.notExists(file) || Files.size(file) != entry.getValue()) {
+                    LOGGER.warn("Extracted natives {} failed integrity check on {}.", nativesDir, entry.getKey());
+                    return false;
+                }
+            }
+            return true;
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to read natives contents for {}.", nativesDir, ex);
+            return false;
+        }
+    }
+
+    private static void extract(Path nativesDir, List<NativeJar> jars) throws IOException {
+        LOGGER.info("Extracting natives into {}..", nativesDir);
+        Path tempDir = nativesDir.resolveSibling(nativesDir.getFileName() + "__tmp");
+        FileUtils.deleteDirectory(tempDir);
+        Files.createDirectories(tempDir);
+
+        Map<String, Long> contents = new LinkedHashMap<>();
+        for (NativeJar jar : jars) {
+            LOGGER.info(" Extracting from '{}'.", jar.path());
+            try (ZipFile zipFile = new ZipFile(jar.path().toFile())) {
+                for (ZipEntry entry : iterable(zipFile.entries())) {
+                    if (entry.isDirectory()) continue;
+                    if (jar.extract() != null && !jar.extract().shouldExtract(entry.getName())) continue;
+                    Path dest = tempDir.resolve(entry.getName());
+                    try (OutputStream out = Files.newOutputStream(IOUtils.makeParents(dest))) {
+                        IOUtils.copy(zipFile.getInputStream(entry), out);
+                    }
+                    contents.put(entry.getName(), Files.size(dest));
+                }
+            }
+        }
+        // Written last, its presence marks the directory as complete.
+        JsonUtils.write(GSON, tempDir.resolve(CONTENTS_FILE), contents, CONTENTS_TYPE);
+
+        // Either a previous extraction was damaged, or never finished.
+        FileUtils.deleteDirectory(nativesDir);
+        if (Files.exists(nativesDir)) {
+            throw new IOException("Failed to remove damaged natives directory " + nativesDir + ". Is it in use?");
+        }
+        Files.move(tempDir, nativesDir);
+    }
+
+    private Map<UUID, String> loadRefs() {
+        if (Files.notExists(refsFile)) return new HashMap<>();
+        try {
+            Map<UUID, String> refs = JsonUtils.parse(GSON, refsFile, REFS_TYPE);
+            return refs != null ? new HashMap<>(refs) : new HashMap<>();
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to load natives references. Rebuilding.", ex);
+            return new HashMap<>();
+        }
+    }
+
+    private static void pruneRefs(Map<UUID, String> refs) {
+        // If instances haven't been loaded, we can't tell which ones are gone.
+        if (Instances.allInstances().isEmpty()) return;
+
+        refs.keySet().removeIf(uuid -> Instances.getInstance(uuid) == null);
+    }
+
+    private void cleanup(Map<UUID, String> refs) {
+        Set<String> referenced = new HashSet<>(refs.values());
+        for (Path dir : FileUtils.listDir(cacheDir)) {
+            if (!Files.isDirectory(dir)) continue;
+            if (referenced.contains(dir.getFileName().toString())) continue;
+
+            LOGGER.info("Removing unreferenced natives directory {}.", dir);
+            try {
+                FileUtils.deleteDirectory(dir);
+            } catch (Throwable ex) {
+                // Most likely still in use by another running game, we will get it next time.
+                LOGGER.warn("Failed to remove natives directory {}.", dir, ex);
+            }
+        }
+    }
+
+    /**
+     * Removes leftover per-launch natives directories from before natives were cached.
+     *
+     * @param versionDir The version directory to clean.
+     */
+    public static void cleanupLegacy(Path versionDir) {
+        String prefix = versionDir.getFileName() + "-natives-";
+        for (Path dir : FileUtils.listDir(versionDir)) {
+            if (!Files.isDirectory(dir) || !dir.getFileName().toString().startsWith(prefix)) continue;
+
+            LOGGER.info("Removing legacy natives directory {}.", dir);
+            try {
+                FileUtils.deleteDirectory(dir);
+            } catch (Throwable ex) {
+                LOGGER.warn("Failed to remove legacy natives directory {}.", dir, ex);
+            }
+        }
+    }
+
+    private record NativeJar(MavenNotation notation, Path path, @Nullable VersionManifest.Extract extract) { }
+}
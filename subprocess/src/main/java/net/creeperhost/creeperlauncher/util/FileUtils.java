@@ -312,6 +312,48 @@ public class FileUtils
         }
     }
 
+    /**
+     * Materializes {@code target} at {@code dest}, preferring the cheapest method available.
+     * <p>
+     * A hard link is tried first, then a symbolic link, falling back to a copy. Once a method
+     * fails it is not retried, the returned {@link LinkType} should be passed to the next call
+     * so trees of files don't fail the same way thousands of times.
+     *
+     * @param target    The existing file.
+     * @param dest      Where the file should appear.
+     * @param preferred The cheapest method to try.
+     * @return The method which succeeded.
+     * @throws IOException If the file could not be copied either.
+     */
+    public static LinkType linkOrCopy(Path target, Path dest, LinkType preferred) throws IOException {
+        Files.createDirectories(dest.toAbsolutePath().getParent());
+        Files.deleteIfExists(dest);
+        if (preferred == LinkType.HARD) {
+            try {
+                Files.createLink(dest, target);
+                return LinkType.HARD;
+            } catch (IOException | UnsupportedOperationException | SecurityException ex) {
+                LOGGER.debug("Unable to hard link {}, trying symbolic links.", dest, ex);
+            }
+        }
+        if (preferred != LinkType.COPY) {
+            try {
+                Files.createSymbolicLink(dest, target.toAbsolutePath());
+                return LinkType.SYMBOLIC;
+            } catch (IOException | UnsupportedOperationException | SecurityException ex) {
+                LOGGER.debug("Unable to symlink {}, falling back to copy.", dest, ex);
+            }
+        }
+        Files.copy(target, dest, REPLACE_EXISTING);
+        return LinkType.COPY;
+    }
+
+    public enum LinkType {
+        HARD,
+        SYMBOLIC,
+        COPY,
+    }
+
     /**
      * Sanitize filename or path segment name to not include problematic
      * characters for some filesystems (eg: Windows)
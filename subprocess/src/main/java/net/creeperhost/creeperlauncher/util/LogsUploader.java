@@ -12,6 +12,7 @@ import net.creeperhost.creeperlauncher.Instances;
 import net.creeperhost.creeperlauncher.data.InstanceJson;
 import net.creeperhost.creeperlauncher.os.OS;
 import net.creeperhost.creeperlauncher.pack.Instance;
+import net.creeperhost.creeperlauncher.pack.LaunchTimeline;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -79,6 +80,7 @@ public class LogsUploader {
         logs.put("runtimes.json", uploadIfNotEmpty(getRuntimes()));
         logs.put("instances.log", uploadIfNotEmpty(getInstances()));
         logs.put("instances-memory.json", uploadIfNotEmpty(getInstancesFromMemory()));
+        logs.put("launch-timelines.json", uploadIfNotEmpty(getLaunchTimelines()));
         
         return logs;
     }
@@ -201,6 +203,19 @@ public class LogsUploader {
         );
     }
     
+    private static String getLaunchTimelines() {
+        Map<String, List<LaunchTimeline>> timelines = new HashMap<>();
+        for (Instance instance : Instances.allInstances()) {
+            List<LaunchTimeline> history = LaunchTimeline.load(instance);
+            if (history.isEmpty()) continue;
+
+            timelines.put(instance.getName() + " (" + instance.getUuid() + ")", history);
+        }
+        if (timelines.isEmpty()) return "";
+
+        return GSON.toJson(timelines);
+    }
+    
     private static String pathToString(Path path) {
         // Ensure it's a directory and exists
         if (!Files.isDirectory(path) || !Files.exists(path)) return "";
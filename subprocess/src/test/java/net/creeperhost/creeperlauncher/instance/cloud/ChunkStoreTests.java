@@ -0,0 +1,86 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.google.common.hash.Hashing;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudTestUtils.genData;
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudTestUtils.writeTemp;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkStoreTests {
+
+    private static final int MIN_SIZE = 8 * 1024;
+    private static final int MAX_SIZE = 128 * 1024;
+
+    @Test
+    public void testChunksCoverFile() throws IOException {
+        byte[] data = genData(2 * 1024 * 1024, 1);
+        ChunkStore.Chunking chunking = ChunkStore.chunk(writeTemp(data));
+
+        assertEquals(Hashing.sha256().hashBytes(data), chunking.sha256());
+        List<ChunkStore.Chunk> chunks = chunking.chunks();
+        long offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkStore.Chunk chunk = chunks.get(i);
+            assertEquals(offset, chunk.offset());
+            assertTrue(chunk.size() <= MAX_SIZE);
+            if (i != chunks.size() - 1) {
+                assertTrue(chunk.size() > MIN_SIZE);
+            }
+            assertEquals(Hashing.sha256().hashBytes(data, (int) chunk.offset(), chunk.size()).toString(), chunk.sha256());
+            offset += chunk.size();
+        }
+        assertEquals(data.length, offset);
+    }
+
+    @Test
+    public void testChunkingIsDeterministic() throws IOException {
+        byte[] data = genData(1024 * 1024, 2);
+
+        assertEquals(ChunkStore.chunk(writeTemp(data)).chunks(), ChunkStore.chunk(writeTemp(data)).chunks());
+    }
+
+    @Test
+    public void testBoundariesSurviveInsert() throws IOException {
+        byte[] data = genData(2 * 1024 * 1024, 3);
+        // Insert a few bytes near the start, every boundary after it shifts.
+        byte[] edited = new byte[data.length + 100];
+        System.arraycopy(data, 0, edited, 0, 300_000);
+        System.arraycopy(genData(100, 4), 0, edited, 300_000, 100);
+        System.arraycopy(data, 300_000, edited, 300_100, data.length - 300_000);
+
+        List<ChunkStore.Chunk> before = ChunkStore.chunk(writeTemp(data)).chunks();
+        List<ChunkStore.Chunk> after = ChunkStore.chunk(writeTemp(edited)).chunks();
+
+        Set<String> afterHashes = new HashSet<>();
+        after.forEach(e -> afterHashes.add(e.sha256()));
+        int changed = 0;
+        for (ChunkStore.Chunk chunk : before) {
+            if (!afterHashes.contains(chunk.sha256())) {
+                changed++;
+                // Chunks entirely before the insert are untouched.
+                assertTrue(chunk.offset() + chunk.size() > 300_000);
+            }
+        }
+        // Only the chunks around the insert change, the rest resynchronize.
+        assertTrue(changed >= 1);
+        assertTrue(changed <= 4, "Expected boundaries to resynchronize, " + changed + " of " + before.size() + " chunks changed.");
+    }
+
+    @Test
+    public void testSmallAndEmptyFiles() throws IOException {
+        byte[] small = genData(MIN_SIZE - 1, 5);
+        ChunkStore.Chunking chunking = ChunkStore.chunk(writeTemp(small));
+        assertEquals(1, chunking.chunks().size());
+        assertEquals(small.length, chunking.chunks().get(0).size());
+
+        ChunkStore.Chunking empty = ChunkStore.chunk(writeTemp(new byte[0]));
+        assertTrue(empty.chunks().isEmpty());
+        assertEquals(Hashing.sha256().hashBytes(new byte[0]), empty.sha256());
+    }
+}
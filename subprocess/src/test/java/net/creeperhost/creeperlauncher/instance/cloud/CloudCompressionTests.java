@@ -0,0 +1,74 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CloudCompressionTests {
+
+    @Test
+    public void testShouldTry() {
+        assertTrue(CloudCompression.shouldTry(Path.of("config/mod.toml"), 4096));
+        assertTrue(CloudCompression.shouldTry(Path.of("saves/world/level.dat"), 4096));
+        // Too small, or too large.
+        assertFalse(CloudCompression.shouldTry(Path.of("config/mod.toml"), 100));
+        assertFalse(CloudCompression.shouldTry(Path.of("logs/latest.log"), 64 * 1024 * 1024));
+        // Already compressed.
+        assertFalse(CloudCompression.shouldTry(Path.of("saves/world/region/r.0.0.mca"), 4096));
+        assertFalse(CloudCompression.shouldTry(Path.of("screenshots/shot.PNG"), 4096));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] raw = genText();
+        byte[] compressed = CloudCompression.compress(Path.of("config/mod.toml"), raw);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < raw.length);
+
+        try (InputStream is = CloudCompression.decompress(new ByteArrayInputStream(compressed), CloudCompression.GZIP)) {
+            assertArrayEquals(raw, is.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testSkipsCompressedMagic() throws IOException {
+        byte[] raw = genText();
+        // A gzipped NBT file, regardless of its extension.
+        raw[0] = 0x1F;
+        raw[1] = (byte) 0x8B;
+        assertNull(CloudCompression.compress(Path.of("saves/world/level.dat"), raw));
+        assertNull(CloudCompression.compress(Path.of("config/mod.toml"), raw));
+    }
+
+    @Test
+    public void testSkipsRandomData() throws IOException {
+        byte[] raw = new byte[64 * 1024];
+        new Random(1).nextBytes(raw);
+        // Rejected by the entropy check.
+        assertNull(CloudCompression.compress(Path.of("saves/world/data.dat"), raw));
+        // Text extensions skip the entropy check, but it does not compress well enough.
+        assertNull(CloudCompression.compress(Path.of("config/mod.toml"), raw));
+    }
+
+    @Test
+    public void testDecompress() throws IOException {
+        InputStream is = new ByteArrayInputStream(new byte[0]);
+        assertSame(is, CloudCompression.decompress(is, null));
+        assertThrows(IOException.class, () -> CloudCompression.decompress(is, "zstd"));
+    }
+
+    private static byte[] genText() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("option").append(i).append(" = ").append(i % 7 == 0).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
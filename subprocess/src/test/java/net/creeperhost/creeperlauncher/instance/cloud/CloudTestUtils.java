@@ -0,0 +1,38 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Helpers shared by the cloud save tests.
+ */
+public class CloudTestUtils {
+
+    /**
+     * Generate random, incompressible data.
+     *
+     * @param len  The length.
+     * @param seed The seed, the same seed always generates the same data.
+     * @return The data.
+     */
+    public static byte[] genData(int len, long seed) {
+        byte[] bytes = new byte[len];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Write the given bytes to a temp file, deleted on exit.
+     *
+     * @param bytes The bytes.
+     * @return The file.
+     */
+    public static Path writeTemp(byte[] bytes) throws IOException {
+        Path file = Files.createTempFile("cloud", ".dat");
+        file.toFile().deleteOnExit();
+        Files.write(file, bytes);
+        return file;
+    }
+}
@@ -0,0 +1,199 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.google.common.hash.Hashing;
+import fi.iki.elonen.NanoHTTPD;
+import net.covers1624.quack.util.SneakyUtils;
+import net.creeperhost.creeperlauncher.util.MiscUtils;
+import net.creeperhost.creeperlauncher.util.s3.OkHTTPS3HttpClient;
+import okhttp3.OkHttpClient;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough of S3's object and multipart upload APIs, path-style.
+ */
+class FakeS3Server extends NanoHTTPD implements AutoCloseable {
+
+    public static final String BUCKET = "bucket";
+    private static final String XMLNS = "http://s3.amazonaws.com/doc/2006-03-01/";
+
+    // Upload id -> parts.
+    public final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    public final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    // Key -> user metadata of the object, without the x-amz-meta- prefix.
+    public final Map<String, Map<String, String>> objectMetadata = new ConcurrentHashMap<>();
+    // Key -> parts the object was completed from.
+    public final Map<String, Map<Integer, byte[]>> completedParts = new ConcurrentHashMap<>();
+    public final List<Integer> uploadedParts = Collections.synchronizedList(new ArrayList<>());
+    // Plain PutObject requests.
+    public final AtomicInteger puts = new AtomicInteger();
+    public final AtomicInteger created = new AtomicInteger();
+    public final AtomicInteger aborted = new AtomicInteger();
+    public volatile int failPart = -1;
+
+    private final AtomicInteger nextId = new AtomicInteger();
+    // Upload id -> user metadata the upload was created with.
+    private final Map<String, Map<String, String>> uploadMetadata = new ConcurrentHashMap<>();
+
+    public FakeS3Server() throws IOException {
+        super(MiscUtils.getRandomEphemeralPort());
+        start();
+    }
+
+    public S3Client client() {
+        OkHttpClient httpClient = new OkHttpClient();
+        return S3Client.builder()
+                .endpointOverride(URI.create("http://localhost:" + getListeningPort()))
+                .region(Region.US_WEST_1)
+                .serviceConfiguration(S3Configuration.builder()
+                        .pathStyleAccessEnabled(true)
+                        // Plain bodies, instead of aws-chunked.
+                        .chunkedEncodingEnabled(false)
+                        .checksumValidationEnabled(false)
+                        .build()
+                )
+                .overrideConfiguration(e -> e.retryPolicy(RetryPolicy.none()))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .httpClient(new OkHTTPS3HttpClient(() -> httpClient))
+                .build();
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    @Override
+    public Response serve(IHTTPSession session) {
+        return SneakyUtils.sneaky(() -> serveInternal(session));
+    }
+
+    @SuppressWarnings ("deprecation")
+    private Response serveInternal(IHTTPSession session) throws Throwable {
+        String key = session.getUri().substring(("/" + BUCKET + "/").length());
+        Map<String, String> params = session.getParms();
+        byte[] body = readBody(session);
+        Method method = session.getMethod();
+
+        if (method == Method.POST && params.containsKey("uploads")) {
+            String uploadId = "upload-" + nextId.incrementAndGet();
+            uploads.put(uploadId, new ConcurrentHashMap<>());
+            uploadMetadata.put(uploadId, userMetadata(session));
+            created.incrementAndGet();
+            return xml("<InitiateMultipartUploadResult xmlns=\"" + XMLNS + "\">"
+                    + "<Bucket>" + BUCKET + "</Bucket><Key>" + key + "</Key><UploadId>" + uploadId + "</UploadId>"
+                    + "</InitiateMultipartUploadResult>");
+        }
+
+        String uploadId = params.get("uploadId");
+        if (uploadId == null) {
+            switch (method) {
+                case PUT -> {
+                    objects.put(key, body);
+                    objectMetadata.put(key, userMetadata(session));
+                    puts.incrementAndGet();
+                    Response resp = newFixedLengthResponse(Response.Status.OK, null, "");
+                    resp.addHeader("ETag", eTag(body));
+                    return resp;
+                }
+                case GET -> {
+                    byte[] object = objects.get(key);
+                    if (object == null) return error(Response.Status.NOT_FOUND, "NoSuchKey");
+                    Response resp = newFixedLengthResponse(Response.Status.OK, "application/octet-stream", new ByteArrayInputStream(object), object.length);
+                    resp.addHeader("ETag", eTag(object));
+                    return resp;
+                }
+                default -> {
+                    return error(Response.Status.BAD_REQUEST, "InvalidRequest");
+                }
+            }
+        }
+        Map<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) return error(Response.Status.NOT_FOUND, "NoSuchUpload");
+
+        switch (method) {
+            case PUT -> {
+                int partNumber = Integer.parseInt(params.get("partNumber"));
+                if (partNumber == failPart) return error(Response.Status.BAD_REQUEST, "InvalidRequest");
+                parts.put(partNumber, body);
+                uploadedParts.add(partNumber);
+                Response resp = newFixedLengthResponse(Response.Status.OK, null, "");
+                resp.addHeader("ETag", eTag(body));
+                return resp;
+            }
+            case GET -> {
+                StringBuilder sb = new StringBuilder("<ListPartsResult xmlns=\"" + XMLNS + "\">");
+                sb.append("<Bucket>").append(BUCKET).append("</Bucket><Key>").append(key).append("</Key>");
+                sb.append("<UploadId>").append(uploadId).append("</UploadId><IsTruncated>false</IsTruncated>");
+                for (Map.Entry<Integer, byte[]> entry : new TreeMap<>(parts).entrySet()) {
+                    sb.append("<Part><PartNumber>").append(entry.getKey()).append("</PartNumber>");
+                    sb.append("<ETag>").append(eTag(entry.getValue()).replace("\"", "&quot;")).append("</ETag>");
+                    sb.append("<Size>").append(entry.getValue().length).append("</Size></Part>");
+                }
+                return xml(sb.append("</ListPartsResult>").toString());
+            }
+            case POST -> {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                for (byte[] part : new TreeMap<>(parts).values()) {
+                    bos.write(part);
+                }
+                uploads.remove(uploadId);
+                objects.put(key, bos.toByteArray());
+                objectMetadata.put(key, uploadMetadata.remove(uploadId));
+                completedParts.put(key, parts);
+                return xml("<CompleteMultipartUploadResult xmlns=\"" + XMLNS + "\">"
+                        + "<Bucket>" + BUCKET + "</Bucket><Key>" + key + "</Key>"
+                        + "<ETag>" + eTag(bos.toByteArray()).replace("\"", "&quot;") + "</ETag>"
+                        + "</CompleteMultipartUploadResult>");
+            }
+            case DELETE -> {
+                uploads.remove(uploadId);
+                aborted.incrementAndGet();
+                return newFixedLengthResponse(Response.Status.NO_CONTENT, null, "");
+            }
+            default -> {
+                return error(Response.Status.BAD_REQUEST, "InvalidRequest");
+            }
+        }
+    }
+
+    private static byte[] readBody(IHTTPSession session) throws IOException {
+        String contentLength = session.getHeaders().get("content-length");
+        if (contentLength == null) return new byte[0];
+        return session.getInputStream().readNBytes(Integer.parseInt(contentLength));
+    }
+
+    private static Map<String, String> userMetadata(IHTTPSession session) {
+        Map<String, String> metadata = new HashMap<>();
+        session.getHeaders().forEach((k, v) -> {
+            if (k.startsWith("x-amz-meta-")) {
+                metadata.put(k.substring("x-amz-meta-".length()), v);
+            }
+        });
+        return metadata;
+    }
+
+    private static String eTag(byte[] bytes) {
+        return "\"" + Hashing.sha256().hashBytes(bytes) + "\"";
+    }
+
+    private static Response xml(String body) {
+        return newFixedLengthResponse(Response.Status.OK, "application/xml", body);
+    }
+
+    private static Response error(Response.Status status, String code) {
+        return newFixedLengthResponse(status, "application/xml", "<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>");
+    }
+}
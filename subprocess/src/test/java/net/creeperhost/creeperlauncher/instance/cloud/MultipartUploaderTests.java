@@ -0,0 +1,183 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import com.google.common.hash.Hashing;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudTestUtils.genData;
+import static net.creeperhost.creeperlauncher.instance.cloud.CloudTestUtils.writeTemp;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultipartUploaderTests {
+
+    private static final String KEY = "instance/saves/world/data.dat";
+    private static final int PART_SIZE = 64 * 1024;
+    private static final long LAST_MODIFIED = 1000;
+
+    @Test
+    public void testPartSize() {
+        long minPartSize = 16 * 1024 * 1024;
+        assertEquals(minPartSize, MultipartUploader.partSize(64 * 1024 * 1024, minPartSize));
+
+        // Too many parts at the minimum size, parts grow to stay within S3's limit.
+        long huge = 5L * 1024 * 1024 * 1024 * 1024;
+        long partSize = MultipartUploader.partSize(huge, minPartSize);
+        assertTrue(partSize > minPartSize);
+        assertTrue((huge + partSize - 1) / partSize <= 10000);
+    }
+
+    @Test
+    public void testUploadParts() throws Throwable {
+        try (FakeS3Server server = new FakeS3Server(); S3Client client = server.client()) {
+            byte[] data = genData(PART_SIZE * 3 + 123, 1);
+            Path file = writeTemp(data);
+            MultipartUploader uploader = new MultipartUploader(client, FakeS3Server.BUCKET, stateFile(), PART_SIZE);
+
+            MultipartUploader.Result result = uploader.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED, null);
+
+            assertEquals(Hashing.sha256().hashBytes(data), result.sha256());
+            assertArrayEquals(data, server.objects.get(KEY));
+            assertEquals(List.of(1, 2, 3, 4), sorted(server.uploadedParts));
+            Map<Integer, byte[]> parts = server.completedParts.get(KEY);
+            assertEquals(PART_SIZE, parts.get(1).length);
+            assertEquals(PART_SIZE, parts.get(3).length);
+            assertEquals(123, parts.get(4).length);
+        }
+    }
+
+    @Test
+    public void testResume() throws Throwable {
+        try (FakeS3Server server = new FakeS3Server(); S3Client client = server.client()) {
+            byte[] data = genData(PART_SIZE * 5, 2);
+            Path file = writeTemp(data);
+            Path stateFile = stateFile();
+
+            server.failPart = 3;
+            MultipartUploader first = new MultipartUploader(client, FakeS3Server.BUCKET, stateFile, PART_SIZE);
+            assertThrows(IOException.class, () -> first.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED, null));
+            Set<Integer> uploaded = new HashSet<>(server.uploadedParts);
+            assertFalse(uploaded.contains(3));
+
+            server.failPart = -1;
+            server.uploadedParts.clear();
+            // A new uploader, as if the launcher restarted.
+            MultipartUploader second = new MultipartUploader(client, FakeS3Server.BUCKET, stateFile, PART_SIZE);
+            MultipartUploader.Result result = second.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED, null);
+
+            assertEquals(1, server.created.get());
+            assertTrue(server.uploadedParts.contains(3));
+            for (int part : server.uploadedParts) {
+                assertFalse(uploaded.contains(part), "Part " + part + " was uploaded again.");
+            }
+            assertArrayEquals(data, server.objects.get(KEY));
+            assertEquals(Hashing.sha256().hashBytes(data), result.sha256());
+        }
+    }
+
+    @Test
+    public void testResumeUploadsChangedParts() throws Throwable {
+        try (FakeS3Server server = new FakeS3Server(); S3Client client = server.client()) {
+            byte[] data = genData(PART_SIZE * 5, 3);
+            Path file = writeTemp(data);
+            MultipartUploader uploader = new MultipartUploader(client, FakeS3Server.BUCKET, stateFile(), PART_SIZE);
+
+            server.failPart = 3;
+            assertThrows(IOException.class, () -> uploader.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED, null));
+            assertTrue(server.uploadedParts.contains(1));
+
+            // Same size and modified time, different content in the first part.
+            data[10] ^= 0xFF;
+            Files.write(file, data);
+            server.failPart = -1;
+            server.uploadedParts.clear();
+            uploader.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED, null);
+
+            assertEquals(1, server.created.get());
+            assertTrue(server.uploadedParts.contains(1));
+            assertTrue(server.uploadedParts.contains(3));
+            assertArrayEquals(data, server.objects.get(KEY));
+        }
+    }
+
+    @Test
+    public void testAbort() throws Throwable {
+        try (FakeS3Server server = new FakeS3Server(); S3Client client = server.client()) {
+            byte[] data = genData(PART_SIZE * 4, 4);
+            Path file = writeTemp(data);
+            MultipartUploader uploader = new MultipartUploader(client, FakeS3Server.BUCKET, stateFile(), PART_SIZE);
+
+            server.failPart = 2;
+            assertThrows(IOException.class, () -> uploader.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED, null));
+            assertEquals(1, server.uploads.size());
+
+            uploader.abortPending(KEY);
+            assertEquals(1, server.aborted.get());
+            assertTrue(server.uploads.isEmpty());
+
+            // Nothing left to resume.
+            server.failPart = -1;
+            uploader.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED, null);
+            assertEquals(2, server.created.get());
+            assertArrayEquals(data, server.objects.get(KEY));
+        }
+    }
+
+    @Test
+    public void testChangedFileAbortsUpload() throws Throwable {
+        try (FakeS3Server server = new FakeS3Server(); S3Client client = server.client()) {
+            byte[] data = genData(PART_SIZE * 4, 5);
+            Path file = writeTemp(data);
+            MultipartUploader uploader = new MultipartUploader(client, FakeS3Server.BUCKET, stateFile(), PART_SIZE);
+
+            server.failPart = 2;
+            assertThrows(IOException.class, () -> uploader.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED, null));
+
+            server.failPart = -1;
+            uploader.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED + 1, null);
+            assertEquals(1, server.aborted.get());
+            assertEquals(2, server.created.get());
+            assertTrue(server.uploads.isEmpty());
+            assertArrayEquals(data, server.objects.get(KEY));
+        }
+    }
+
+    @Test
+    public void testResumeWithNewMetadataRestarts() throws Throwable {
+        try (FakeS3Server server = new FakeS3Server(); S3Client client = server.client()) {
+            byte[] data = genData(PART_SIZE * 4, 6);
+            Path file = writeTemp(data);
+            MultipartUploader uploader = new MultipartUploader(client, FakeS3Server.BUCKET, stateFile(), PART_SIZE);
+
+            // Started before the hash was known.
+            server.failPart = 2;
+            assertThrows(IOException.class, () -> uploader.upload(file, KEY, null, Map.of(), data.length, LAST_MODIFIED, null));
+
+            server.failPart = -1;
+            String sha256 = Hashing.sha256().hashBytes(data).toString();
+            uploader.upload(file, KEY, null, Map.of(CloudSaveManager.HASH_METADATA, sha256), data.length, LAST_MODIFIED, null);
+
+            assertEquals(1, server.aborted.get());
+            assertEquals(2, server.created.get());
+            assertArrayEquals(data, server.objects.get(KEY));
+            assertEquals(sha256, server.objectMetadata.get(KEY).get(CloudSaveManager.HASH_METADATA));
+        }
+    }
+
+    private static List<Integer> sorted(Collection<Integer> parts) {
+        List<Integer> list = new ArrayList<>(parts);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static Path stateFile() throws IOException {
+        Path file = Files.createTempFile("cloud_uploads", ".json");
+        file.toFile().deleteOnExit();
+        Files.delete(file);
+        return file;
+    }
+}
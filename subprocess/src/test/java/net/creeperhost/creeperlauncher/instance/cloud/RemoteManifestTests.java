@@ -0,0 +1,161 @@
+package net.creeperhost.creeperlauncher.instance.cloud;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RemoteManifestTests {
+
+    private static final String SHA256 = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Test
+    public void testValidEntry() {
+        RemoteManifest manifest = new RemoteManifest(Map.of("saves/level.dat", new SyncIndex.Entry(10, 1000, SHA256, "\"abc\"")));
+
+        SyncIndex.Entry entry = manifest.getValid("saves/level.dat", object("\"abc\"", 10));
+        assertNotNull(entry);
+        assertEquals(SHA256, entry.sha256);
+    }
+
+    @Test
+    public void testMissingEntry() {
+        RemoteManifest manifest = new RemoteManifest(Map.of("saves/level.dat", new SyncIndex.Entry(10, 1000, SHA256, "\"abc\"")));
+
+        assertNull(manifest.getValid("saves/other.dat", object("\"abc\"", 10)));
+    }
+
+    @Test
+    public void testETagMismatch() {
+        RemoteManifest manifest = new RemoteManifest(Map.of("options.txt", new SyncIndex.Entry(10, 1000, SHA256, "\"abc\"")));
+
+        assertNull(manifest.getValid("options.txt", object("\"def\"", 10)));
+    }
+
+    @Test
+    public void testMissingETagOrHash() {
+        RemoteManifest manifest = new RemoteManifest(Map.of(
+                "noETag.txt", new SyncIndex.Entry(10, 1000, SHA256, null),
+                "noHash.txt", new SyncIndex.Entry(10, 1000, null, "\"abc\"")
+        ));
+
+        assertNull(manifest.getValid("noETag.txt", object("\"abc\"", 10)));
+        assertNull(manifest.getValid("noHash.txt", object("\"abc\"", 10)));
+    }
+
+    @Test
+    public void testSizeMismatch() {
+        RemoteManifest manifest = new RemoteManifest(Map.of("options.txt", new SyncIndex.Entry(10, 1000, SHA256, "\"abc\"")));
+
+        assertNull(manifest.getValid("options.txt", object("\"abc\"", 11)));
+    }
+
+    @Test
+    public void testChunkedAndCompressedIgnoreSize() {
+        RemoteManifest manifest = new RemoteManifest(Map.of(
+                "region/r.0.0.mca", new SyncIndex.Entry(4 * 1024 * 1024, 1000, SHA256, "\"abc\"", true, null),
+                "config/mod.toml", new SyncIndex.Entry(8192, 1000, SHA256, "\"def\"", false, CloudCompression.GZIP)
+        ));
+
+        // The objects are a recipe and a gzipped file, both smaller than the files they describe.
+        assertNotNull(manifest.getValid("region/r.0.0.mca", object("\"abc\"", 512)));
+        assertNotNull(manifest.getValid("config/mod.toml", object("\"def\"", 1024)));
+        // Still checked against the ETag.
+        assertNull(manifest.getValid("region/r.0.0.mca", object("\"xyz\"", 512)));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        RemoteManifest manifest = new RemoteManifest(Map.of(
+                "options.txt", new SyncIndex.Entry(10, 1000, SHA256, "\"abc\""),
+                "region/r.0.0.mca", new SyncIndex.Entry(4 * 1024 * 1024, 2000, SHA256, "\"def\"", true, null),
+                "config/mod.toml", new SyncIndex.Entry(8192, 3000, SHA256, "\"ghi\"", false, CloudCompression.GZIP)
+        ));
+
+        RemoteManifest parsed = RemoteManifest.parse(manifest.toBytes());
+        assertNotNull(parsed);
+        assertEquals(manifest.files.keySet(), parsed.files.keySet());
+        for (Map.Entry<String, SyncIndex.Entry> e : manifest.files.entrySet()) {
+            SyncIndex.Entry expected = e.getValue();
+            SyncIndex.Entry actual = parsed.files.get(e.getKey());
+            assertEquals(expected.size, actual.size);
+            assertEquals(expected.lastModified, actual.lastModified);
+            assertEquals(expected.sha256, actual.sha256);
+            assertEquals(expected.eTag, actual.eTag);
+            assertEquals(expected.chunked, actual.chunked);
+            assertEquals(expected.compression, actual.compression);
+        }
+    }
+
+    @Test
+    public void testParseRejectsOtherFormats() {
+        assertNull(RemoteManifest.parse("{\"format\":2,\"files\":{}}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(RemoteManifest.parse("not json".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testEntryEquality() {
+        SyncIndex.Entry entry = new SyncIndex.Entry(10, 1000, SHA256, "\"abc\"", true, CloudCompression.GZIP);
+
+        assertEquals(entry, new SyncIndex.Entry(10, 1000, SHA256, "\"abc\"", true, CloudCompression.GZIP));
+        assertEquals(entry.hashCode(), new SyncIndex.Entry(10, 1000, SHA256, "\"abc\"", true, CloudCompression.GZIP).hashCode());
+        assertNotEquals(entry, new SyncIndex.Entry(10, 1000, SHA256, "\"def\"", true, CloudCompression.GZIP));
+        assertNotEquals(entry, new SyncIndex.Entry(10, 1000, SHA256, "\"abc\"", false, CloudCompression.GZIP));
+    }
+
+    @Test
+    public void testUnchangedManifestNotUploaded() throws Throwable {
+        try (FakeS3Server server = new FakeS3Server(); S3Client client = server.client()) {
+            Map<String, SyncIndex.Entry> files = Map.of(
+                    "options.txt", new SyncIndex.Entry(10, 1000, SHA256, "\"abc\""),
+                    "region/r.0.0.mca", new SyncIndex.Entry(4 * 1024 * 1024, 2000, SHA256, "\"def\"", true, null)
+            );
+
+            // First sync, no remote manifest yet.
+            assertTrue(RemoteManifest.uploadIfChanged(null, files, bytes -> putManifest(client, bytes)));
+            assertEquals(1, server.puts.get());
+
+            // Second sync with no changes, against the manifest the first one uploaded.
+            RemoteManifest remote = getManifest(client);
+            assertNotNull(remote);
+            assertFalse(RemoteManifest.uploadIfChanged(remote, new HashMap<>(files), bytes -> putManifest(client, bytes)));
+            assertEquals(1, server.puts.get());
+        }
+    }
+
+    @Test
+    public void testStaleManifestReplaced() throws Throwable {
+        try (FakeS3Server server = new FakeS3Server(); S3Client client = server.client()) {
+            putManifest(client, new RemoteManifest(Map.of("options.txt", new SyncIndex.Entry(10, 1000, SHA256, "\"abc\""))).toBytes());
+
+            Map<String, SyncIndex.Entry> files = Map.of("options.txt", new SyncIndex.Entry(12, 3000, SHA256, "\"xyz\""));
+            assertTrue(RemoteManifest.uploadIfChanged(getManifest(client), files, bytes -> putManifest(client, bytes)));
+            assertEquals(2, server.puts.get());
+
+            RemoteManifest replaced = getManifest(client);
+            assertNotNull(replaced);
+            assertEquals(files, replaced.files);
+        }
+    }
+
+    private static void putManifest(S3Client client, byte[] bytes) {
+        client.putObject(e -> e.bucket(FakeS3Server.BUCKET).key(RemoteManifest.KEY).contentLength((long) bytes.length), RequestBody.fromBytes(bytes));
+    }
+
+    private static RemoteManifest getManifest(S3Client client) {
+        return RemoteManifest.parse(client.getObjectAsBytes(e -> e.bucket(FakeS3Server.BUCKET).key(RemoteManifest.KEY)).asByteArray());
+    }
+
+    private static S3Object object(String eTag, long size) {
+        return S3Object.builder()
+                .eTag(eTag)
+                .size(size)
+                .build();
+    }
+}
@@ -0,0 +1,193 @@
+package net.creeperhost.creeperlauncher.minecraft.jsons;
+
+import com.google.common.hash.Hashing;
+import fi.iki.elonen.NanoHTTPD;
+import net.covers1624.quack.util.MultiHasher.HashFunc;
+import net.covers1624.quack.util.SneakyUtils;
+import net.creeperhost.creeperlauncher.Settings;
+import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask;
+import net.creeperhost.creeperlauncher.install.tasks.NewDownloadTask.DownloadValidation;
+import net.creeperhost.creeperlauncher.util.MiscUtils;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static fi.iki.elonen.NanoHTTPD.Response.Status.NOT_MODIFIED;
+import static fi.iki.elonen.NanoHTTPD.Response.Status.OK;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ManifestUpdaterTests {
+
+    @AfterEach
+    public void resetSettings() {
+        Settings.settings.remove("manifestTtl");
+        Settings.settings.remove("manifestStaleWhileRevalidate");
+    }
+
+    @Test
+    public void testFreshManifestIsNotChecked() throws Throwable {
+        setSettings(3600, true);
+        try (ManifestTestWebServer server = new ManifestTestWebServer("{\"a\":1}")) {
+            Path file = tempFile();
+
+            ManifestUpdater.update("test", file, server.task(file));
+            assertEquals(1, server.requests.get());
+            assertArrayEquals(server.bytes, Files.readAllBytes(file));
+
+            // Within the TTL, no request is made.
+            ManifestUpdater.update("test", file, server.task(file));
+            assertEquals(1, server.requests.get());
+        }
+    }
+
+    @Test
+    public void testStaleManifestIsUpdated() throws Throwable {
+        setSettings(0, false);
+        try (ManifestTestWebServer server = new ManifestTestWebServer("{\"a\":1}")) {
+            Path file = tempFile();
+
+            ManifestUpdater.update("test", file, server.task(file));
+            server.bytes = "{\"a\":2}".getBytes(StandardCharsets.UTF_8);
+
+            ManifestUpdater.update("test", file, server.task(file));
+            assertEquals(2, server.requests.get());
+            assertArrayEquals(server.bytes, Files.readAllBytes(file));
+        }
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Throwable {
+        setSettings(0, true);
+        try (ManifestTestWebServer server = new ManifestTestWebServer("{\"a\":1}")) {
+            Path file = tempFile();
+
+            ManifestUpdater.update("test", file, server.task(file));
+            byte[] oldBytes = server.bytes;
+            byte[] newBytes = "{\"a\":2}".getBytes(StandardCharsets.UTF_8);
+            server.bytes = newBytes;
+
+            // Requests block until released, update must not wait for them.
+            CountDownLatch gate = new CountDownLatch(1);
+            server.gate = gate;
+            try {
+                assertTimeoutPreemptively(Duration.ofSeconds(10), () -> ManifestUpdater.update("test", file, server.task(file)));
+                assertArrayEquals(oldBytes, Files.readAllBytes(file));
+            } finally {
+                gate.countDown();
+            }
+            awaitContents(file, newBytes);
+        }
+    }
+
+    @Test
+    public void testHashPinnedManifestIgnoresFreshness() throws Throwable {
+        setSettings(3600, true);
+        try (ManifestTestWebServer server = new ManifestTestWebServer("{\"a\":1}")) {
+            Path file = tempFile();
+            // Recently checked, but the wrong file.
+            Files.writeString(file, "{\"a\":0}");
+            Files.createFile(file.resolveSibling(file.getFileName() + ".lastcheck")).toFile().deleteOnExit();
+
+            NewDownloadTask task = NewDownloadTask.builder()
+                    .url(server.getAddr() + "/manifest.json")
+                    .dest(file)
+                    .withValidation(DownloadValidation.of()
+                            .withHash(HashFunc.SHA1, Hashing.sha1().hashBytes(server.bytes))
+                            .withUseETag(true)
+                    )
+                    .build();
+            ManifestUpdater.update("test", file, task);
+
+            // Updated before update returned.
+            assertEquals(1, server.requests.get());
+            assertArrayEquals(server.bytes, Files.readAllBytes(file));
+        }
+    }
+
+    private static void setSettings(long ttl, boolean staleWhileRevalidate) {
+        Settings.settings.put("manifestTtl", String.valueOf(ttl));
+        Settings.settings.put("manifestStaleWhileRevalidate", String.valueOf(staleWhileRevalidate));
+    }
+
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("manifest", ".json");
+        file.toFile().deleteOnExit();
+        Files.delete(file);
+        return file;
+    }
+
+    private static void awaitContents(Path file, byte[] expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                if (Arrays.equals(expected, Files.readAllBytes(file))) return;
+            } catch (IOException ignored) {
+                // Being replaced.
+            }
+            Thread.sleep(50);
+        }
+        fail("Manifest was not revalidated in the background.");
+    }
+
+    static class ManifestTestWebServer extends NanoHTTPD implements AutoCloseable {
+
+        public final AtomicInteger requests = new AtomicInteger();
+        public volatile byte[] bytes;
+        @Nullable
+        public volatile CountDownLatch gate;
+
+        public ManifestTestWebServer(String contents) throws IOException {
+            super(MiscUtils.getRandomEphemeralPort());
+            bytes = contents.getBytes(StandardCharsets.UTF_8);
+            start();
+        }
+
+        public String getAddr() {
+            return "http://localhost:" + getListeningPort();
+        }
+
+        public NewDownloadTask task(Path dest) {
+            return NewDownloadTask.builder()
+                    .url(getAddr() + "/manifest.json")
+                    .dest(dest)
+                    .withValidation(DownloadValidation.of().withUseETag(true))
+                    .build();
+        }
+
+        @Override
+        public Response serve(IHTTPSession session) {
+            return SneakyUtils.sneaky(() -> serveInternal(session));
+        }
+
+        private Response serveInternal(IHTTPSession session) throws Throwable {
+            requests.incrementAndGet();
+            CountDownLatch gate = this.gate;
+            if (gate != null) {
+                gate.await();
+            }
+            byte[] bytes = this.bytes;
+            String eTag = "\"" + Hashing.sha1().hashBytes(bytes) + "\"";
+            if (eTag.equals(session.getHeaders().get("if-none-match"))) {
+                return newFixedLengthResponse(NOT_MODIFIED, null, null);
+            }
+            Response resp = newFixedLengthResponse(OK, "application/json", new ByteArrayInputStream(bytes), bytes.length);
+            resp.addHeader("ETag", eTag);
+            return resp;
+        }
+
+        @Override
+        public void close() {
+            stop();
+        }
+    }
+}